@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.mock;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory servlet response which counts the body bytes instead of keeping them.
+ * {@link #reset()} makes it reusable across benchmark invocations.
+ */
+public class MockHttpServletResponse extends HttpServletResponseWrapper {
+
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private int status = SC_OK;
+    private long bodyLength;
+    private boolean committed;
+
+    private final ServletOutputStream output = new ServletOutputStream() {
+        @Override
+        public void write(int b) {
+            bodyLength++;
+            committed = true;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bodyLength += len;
+            committed = true;
+        }
+    };
+
+    public MockHttpServletResponse() {
+        super(Unsupported.of(HttpServletResponse.class));
+    }
+
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    @Override
+    public void reset() {
+        headers.clear();
+        status = SC_OK;
+        bodyLength = 0;
+        committed = false;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void sendError(int sc) {
+        status = sc;
+        committed = true;
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+        sendError(sc);
+    }
+
+    @Override
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        List<String> values = new ArrayList<>(1);
+        values.add(value);
+        headers.put(name, values);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        setHeader(name, Integer.toString(value));
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setIntHeader("Content-Length", len);
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public void flushBuffer() {
+        committed = true;
+    }
+}
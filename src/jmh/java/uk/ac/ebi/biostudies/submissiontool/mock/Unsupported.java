@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.mock;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates implementations of the servlet interfaces which throw on every call, for the mocks to wrap;
+ * a benchmark calling something that isn't mocked fails instead of measuring a no-op.
+ */
+final class Unsupported {
+
+    private Unsupported() {
+    }
+
+    static <T> T of(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+                }));
+    }
+}
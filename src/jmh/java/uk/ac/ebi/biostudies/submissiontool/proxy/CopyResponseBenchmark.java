@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletRequest;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying of a backend response body to the client, with and without gzip compression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CopyResponseBenchmark {
+
+    @Param({"1024", "65536", "1048576", "8388608"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private RemoteProxy proxy;
+    private Route route;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private HttpResponse backendResponse;
+    private Header[] headers;
+
+    @Setup
+    public void setUp() {
+        proxy = new RemoteProxy(null, null, null,
+                new ResponseCompression(1024, Collections.singleton("application/json"), 4), false, null, null);
+        route = new Route("/", new BackendPool(
+                Collections.singletonList(new Backend(URI.create("http://localhost:8080"), 1, null)),
+                BalancingStrategy.ROUND_ROBIN, 0, 0),
+                null, new BufferPool(64 * 1024, 4), null);
+        request = new MockHttpServletRequest("GET", "/proxy", "/raw", "/proxy/raw/submissions", null)
+                .addHeader("Accept-Encoding", "gzip");
+        response = new MockHttpServletResponse();
+
+        backendResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        backendResponse.setEntity(new ByteArrayEntity(json(size), ContentType.APPLICATION_JSON));
+        headers = backendResponse.getAllHeaders();
+    }
+
+    /**
+     * @return a json array of submission-like records, which compresses about as well as the real responses
+     */
+    private static byte[] json(int size) {
+        StringBuilder sb = new StringBuilder(size + 128).append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("{\"accno\":\"S-BSST").append(i).append("\",\"title\":\"Submission ").append(i * 7919)
+                    .append("\",\"rtime\":").append(1500000000L + i * 86400L).append(",\"released\":")
+                    .append(i % 3 == 0).append("},");
+        }
+        sb.setLength(size - 1);
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long copyResponseContent() throws IOException {
+        response.reset();
+        return proxy.copyResponseContent(request, response, route, backendResponse, headers, null, null, compress);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletRequest;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwarding of browser request headers to the backend, and filtering of typical backend response headers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeaderPolicyBenchmark {
+
+    private MockHttpServletRequest request;
+    private HeaderPolicy policy;
+    private Header[] responseHeaders;
+
+    @Setup
+    public void setUp() {
+        request = new MockHttpServletRequest("GET", "/proxy", "/raw", "/proxy/raw/submissions", null)
+                .addHeader("Host", "www.ebi.ac.uk")
+                .addHeader("Connection", "keep-alive")
+                .addHeader("Accept", "application/json, text/plain, */*")
+                .addHeader("X-Session-Token", "b0b7e5d2c0a94f4c9f0c7e2a1d3e4f5a")
+                .addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)")
+                .addHeader("Referer", "https://www.ebi.ac.uk/biostudies/submissions/")
+                .addHeader("Accept-Encoding", "gzip, deflate, br")
+                .addHeader("Accept-Language", "en-GB,en;q=0.9")
+                .addHeader("Cookie", "JSESSIONID=9A8B7C6D5E4F; _ga=GA1.3.123456789.1500000000; BIOSTD-SESS=abc");
+        policy = new HeaderPolicy(Arrays.asList("JSESSIONID"));
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("Date", "Tue, 15 Nov 2016 08:12:31 GMT");
+        response.addHeader("Server", "Apache-Coyote/1.1");
+        response.addHeader("Connection", "keep-alive");
+        response.addHeader("Keep-Alive", "timeout=5, max=100");
+        response.addHeader("Content-Type", "application/json;charset=UTF-8");
+        response.addHeader("Transfer-Encoding", "chunked");
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Set-Cookie", "a=1; Path=/");
+        response.addHeader("Set-Cookie", "b=2; Path=/");
+        responseHeaders = response.getAllHeaders();
+    }
+
+    @Benchmark
+    public HttpGet forwardRequestHeaders() {
+        HttpGet get = new HttpGet();
+        policy.forwardRequestHeaders(request, get);
+        return get;
+    }
+
+    @Benchmark
+    public Header[] filterResponseHeaders() {
+        return HeaderPolicy.filterResponseHeaders(responseHeaders);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletRequest;
+
+import javax.servlet.ServletException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuilding of a multipart upload for the backend: the buffered variant parses all the parts first, the
+ * streaming one copies the parts while the entity is written. Both write the whole entity, as it would be
+ * sent to the backend.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartBenchmark {
+
+    @Param({"1024", "1048576", "4194304"})
+    public int fileSize;
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private RemoteProxy proxy;
+    private BufferPool buffers;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        proxy = new RemoteProxy(null, null, null, null, true, null, null);
+        buffers = new BufferPool(64 * 1024, 4);
+
+        byte[] file = new byte[fileSize];
+        new Random(42).nextBytes(file);
+        HttpEntity entity = MultipartEntityBuilder.create()
+                .addTextBody("path", "/user/uploads", ContentType.TEXT_PLAIN)
+                .addBinaryBody("file", file, ContentType.APPLICATION_OCTET_STREAM, "sample.bin")
+                .build();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(fileSize + 1024);
+        entity.writeTo(body);
+
+        request = new MockHttpServletRequest("POST", "/proxy", "/raw", "/proxy/raw/files/upload", null)
+                .setBody(entity.getContentType().getValue(), body.toByteArray());
+    }
+
+    @Benchmark
+    public HttpPost bufferedMultipart() throws ServletException, IOException {
+        HttpPost post = new HttpPost();
+        proxy.handleMultipartPost(post, request);
+        post.getEntity().writeTo(DISCARD);
+        return post;
+    }
+
+    @Benchmark
+    public HttpPost streamingMultipart() throws ServletException, IOException {
+        HttpPost post = new HttpPost();
+        proxy.handleStreamingMultipartPost(post, request, buffers);
+        post.getEntity().writeTo(DISCARD);
+        return post;
+    }
+}
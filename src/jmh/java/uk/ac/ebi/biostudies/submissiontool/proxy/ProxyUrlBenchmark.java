@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletRequest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of a client request to the backend url: extracting the request path, matching the route and
+ * building the proxied url.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProxyUrlBenchmark {
+
+    private static final String PATH = "/submissions/S-BSST123/files/raw%20data/sample_01.fastq.gz";
+    private static final String QUERY = "offset=100&limit=50&sort=name";
+
+    private MockHttpServletRequest request;
+    private RouteTable routes;
+    private Backend backend;
+
+    @Setup
+    public void setUp() {
+        request = new MockHttpServletRequest("GET", "/proxy", "/raw", "/proxy/raw" + PATH, QUERY);
+        backend = new Backend(URI.create("http://backend.example.org:8080/biostudies"), 1, null);
+
+        List<Route> routeList = new ArrayList<>();
+        for (String prefix : new String[]{"/", "/files", "/submissions", "/submissions/drafts", "/auth"}) {
+            routeList.add(new Route(prefix,
+                    new BackendPool(Collections.singletonList(backend), BalancingStrategy.ROUND_ROBIN, 0, 0),
+                    null, new BufferPool(8192, 1), null));
+        }
+        routes = new RouteTable(routeList);
+    }
+
+    @Benchmark
+    public String requestPath() {
+        return RemoteProxy.getRequestPath(request);
+    }
+
+    @Benchmark
+    public Route matchRoute() {
+        return routes.match(PATH);
+    }
+
+    @Benchmark
+    public URI proxyUrl() {
+        return backend.proxyUrl(PATH, QUERY);
+    }
+
+    @Benchmark
+    public StringBuilder asPath() {
+        StringBuilder url = new StringBuilder(128);
+        Backend.asPath(url, PATH);
+        return url;
+    }
+
+    @Benchmark
+    public URI requestToProxyUrl() {
+        String path = RemoteProxy.getRequestPath(request);
+        Route route = routes.match(path);
+        return route == null ? null : backend.proxyUrl(path, request.getQueryString());
+    }
+}
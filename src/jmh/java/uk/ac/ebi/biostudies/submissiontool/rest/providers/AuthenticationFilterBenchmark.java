@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.providers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.mock.MockHttpServletRequest;
+
+import javax.annotation.security.RolesAllowed;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ResourceInfo;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication of a request to a resource method requiring a role, with and without a session token, in the
+ * default (session) mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthenticationFilterBenchmark {
+
+    public static class Resource {
+        @RolesAllowed("AUTHENTICATED")
+        public void secured() {
+        }
+    }
+
+    private AuthenticationFilter authenticated;
+    private AuthenticationFilter anonymous;
+    private ContainerRequestContext requestContext;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException, IOException {
+        Method method = Resource.class.getMethod("secured");
+        ResourceInfo resourceInfo = new ResourceInfo() {
+            @Override
+            public Method getResourceMethod() {
+                return method;
+            }
+
+            @Override
+            public Class<?> getResourceClass() {
+                return Resource.class;
+            }
+        };
+        // the default config; it is the only servlet context attribute the filter reads in the session mode
+        AppConfig config = AppConfig.loadConfig(new ByteArrayInputStream(new byte[0]));
+        ServletContext context = (ServletContext) Proxy.newProxyInstance(
+                ServletContext.class.getClassLoader(), new Class<?>[]{ServletContext.class},
+                (proxy, m, args) -> {
+                    if (m.getName().equals("getAttribute") && "config".equals(args[0])) {
+                        return config;
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+        authenticated = createFilter(resourceInfo, context,
+                new MockHttpServletRequest("GET", "/proxy", "/api", "/proxy/api/fileUpload", null)
+                        .addHeader("X-Session-Token", "b0b7e5d2c0a94f4c9f0c7e2a1d3e4f5a"));
+        anonymous = createFilter(resourceInfo, context,
+                new MockHttpServletRequest("GET", "/proxy", "/api", "/proxy/api/fileUpload", null));
+
+        // abortWith() is the only call the filter makes
+        requestContext = (ContainerRequestContext) Proxy.newProxyInstance(
+                ContainerRequestContext.class.getClassLoader(), new Class<?>[]{ContainerRequestContext.class},
+                (proxy, m, args) -> {
+                    if (m.getName().equals("abortWith")) {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+    }
+
+    /**
+     * Sets the fields which Jersey injects through {@code @Context}.
+     */
+    private static AuthenticationFilter createFilter(ResourceInfo resourceInfo, ServletContext context,
+                                                     HttpServletRequest request)
+            throws ReflectiveOperationException {
+        AuthenticationFilter filter = new AuthenticationFilter();
+        set(filter, "resourceInfo", resourceInfo);
+        set(filter, "context", context);
+        set(filter, "request", request);
+        return filter;
+    }
+
+    private static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Benchmark
+    public void authenticated() throws IOException {
+        authenticated.filter(requestContext);
+    }
+
+    @Benchmark
+    public void anonymous() throws IOException {
+        anonymous.filter(requestContext);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.servlet.ServletContainer;
+import uk.ac.ebi.biostudies.submissiontool.AppContextListener;
+import uk.ac.ebi.biostudies.submissiontool.HttpsFilter;
+import uk.ac.ebi.biostudies.submissiontool.admission.AdmissionFilter;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimitFilter;
+import uk.ac.ebi.biostudies.submissiontool.proxy.ProxyServlet;
+import uk.ac.ebi.biostudies.submissiontool.rest.RESTApp;
+
+import javax.servlet.DispatcherType;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * The web application in an embedded Jetty, set up as web.xml and the servlet annotations do it in Tomcat.
+ * Context parameters override config.properties in the same way as in a deployed WAR.
+ */
+class EmbeddedApp {
+
+    static final String CONTEXT_PATH = "/proxy";
+
+    private final Server server;
+
+    EmbeddedApp(Map<String, String> contextParams) {
+        server = new Server(new InetSocketAddress("127.0.0.1", 0));
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath(CONTEXT_PATH);
+        contextParams.forEach(context::setInitParameter);
+        context.addEventListener(new AppContextListener());
+
+        FilterHolder https = new FilterHolder(new HttpsFilter());
+        https.setAsyncSupported(true);
+        context.addFilter(https, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+
+        FilterHolder rateLimit = new FilterHolder(new RateLimitFilter());
+        rateLimit.setAsyncSupported(true);
+        context.addFilter(rateLimit, "/raw/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addFilter(rateLimit, "/api/*", EnumSet.of(DispatcherType.REQUEST));
+
+        FilterHolder admission = new FilterHolder(new AdmissionFilter());
+        admission.setAsyncSupported(true);
+        context.addFilter(admission, "/raw/*", EnumSet.of(DispatcherType.REQUEST));
+        context.addFilter(admission, "/api/*", EnumSet.of(DispatcherType.REQUEST));
+
+        ServletHolder proxy = new ServletHolder(new ProxyServlet());
+        proxy.setAsyncSupported(true);
+        proxy.setInitOrder(1);
+        context.addServlet(proxy, "/raw/*");
+
+        ServletHolder rest = new ServletHolder(new ServletContainer(new RESTApp()));
+        rest.setAsyncSupported(true);
+        rest.setInitOrder(1);
+        context.addServlet(rest, "/api/*");
+
+        server.setHandler(context);
+    }
+
+    void start() throws Exception {
+        server.start();
+    }
+
+    void stop() throws Exception {
+        server.stop();
+    }
+
+    URI getUrl() {
+        int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return URI.create("http://127.0.0.1:" + port + CONTEXT_PATH);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Response times of one operation as seen by one worker thread. All the samples are kept, so the reported
+ * percentiles are exact; recorders of the workers are merged after the run.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[4096];
+    private int count;
+    private long errors;
+
+    void record(long nanos, boolean ok) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (!ok) {
+            errors++;
+        }
+    }
+
+    void add(LatencyRecorder other) {
+        if (count + other.count > samples.length) {
+            samples = Arrays.copyOf(samples, Math.max(samples.length * 2, count + other.count));
+        }
+        System.arraycopy(other.samples, 0, samples, count, other.count);
+        count += other.count;
+        errors += other.errors;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the response time percentiles in nanoseconds; the recorder must not be updated any more
+     */
+    long[] percentiles(double... percentiles) {
+        Arrays.sort(samples, 0, count);
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            int rank = (int) Math.ceil(percentiles[i] / 100 * count);
+            values[i] = count == 0 ? 0 : samples[Math.max(0, Math.min(count - 1, rank - 1))];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Sends requests from a fixed number of threads, each waiting for its response before sending the next one
+ * (a closed loop), so the concurrency stays constant. Operations are picked at random by their weights.
+ */
+class LoadDriver {
+
+    private final URI base;
+    private final int concurrency;
+    private final Map<Operation, Integer> mix;
+    private final Operation.Payloads payloads;
+
+    private volatile boolean recording;
+    private volatile boolean stopped;
+
+    LoadDriver(URI base, int concurrency, Map<Operation, Integer> mix, Operation.Payloads payloads) {
+        this.base = base;
+        this.concurrency = concurrency;
+        this.mix = mix;
+        this.payloads = payloads;
+    }
+
+    /**
+     * Runs the warm-up and then the measured period.
+     *
+     * @return the response times per operation, measured after the warm-up
+     */
+    Map<Operation, LatencyRecorder> run(long warmupMillis, long durationMillis, Runnable onMeasurementStart)
+            throws InterruptedException, IOException {
+        List<Map<Operation, LatencyRecorder>> results = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .build()) {
+            for (int i = 0; i < concurrency; i++) {
+                Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+                for (Operation op : mix.keySet()) {
+                    recorders.put(op, new LatencyRecorder());
+                }
+                results.add(recorders);
+                Thread worker = new Thread(() -> {
+                    try {
+                        work(client, recorders, new Random());
+                    } finally {
+                        done.countDown();
+                    }
+                }, "load-" + i);
+                worker.setDaemon(true);
+                worker.start();
+            }
+
+            Thread.sleep(warmupMillis);
+            onMeasurementStart.run();
+            recording = true;
+            Thread.sleep(durationMillis);
+            recording = false;
+            stopped = true;
+            done.await();
+        }
+
+        Map<Operation, LatencyRecorder> merged = new EnumMap<>(Operation.class);
+        for (Map<Operation, LatencyRecorder> recorders : results) {
+            recorders.forEach((op, recorder) -> merged.computeIfAbsent(op, o -> new LatencyRecorder()).add(recorder));
+        }
+        return merged;
+    }
+
+    private void work(CloseableHttpClient client, Map<Operation, LatencyRecorder> recorders, Random random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        while (!stopped) {
+            Operation op = pick(random.nextInt(total));
+            HttpUriRequest request = op.request(base, random, payloads);
+            // the proxy only accepts https, which it is told by the front end
+            request.setHeader("X-Forwarded-Proto", "https");
+            long start = System.nanoTime();
+            boolean ok;
+            try (CloseableHttpResponse response = client.execute(request)) {
+                EntityUtils.consume(response.getEntity());
+                ok = response.getStatusLine().getStatusCode() < 400;
+            } catch (IOException e) {
+                ok = false;
+            }
+            long time = System.nanoTime() - start;
+            if (recording) {
+                recorders.get(op).record(time, ok);
+            }
+        }
+    }
+
+    private Operation pick(int n) {
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            n -= entry.getValue();
+            if (n < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("empty mix");
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: boots the web application in an embedded container, points it at an in-process stub
+ * backend and drives a mix of requests through the proxy at a fixed concurrency. Reports the throughput and
+ * response time percentiles per operation, and the heap and GC activity of the (shared) JVM.
+ * <p>
+ * Settings are given as name=value arguments:
+ * <ul>
+ * <li>duration, warmup - the measured and the warm-up period in seconds (60, 10)</li>
+ * <li>concurrency - the number of requests in flight (32)</li>
+ * <li>mix - the operation weights (get:80,put:15,upload:5)</li>
+ * <li>getSize, putSize, uploadSize - body sizes in bytes (16384, 4096, 10485760)</li>
+ * <li>backendLatency - the stub backend delay in milliseconds (0)</li>
+ * </ul>
+ * Any other argument in upper case (e.g. PROXY_ASYNC_ENABLED=true) is passed to the application as a
+ * context parameter, overriding config.properties.
+ */
+public class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>();
+        Map<String, String> contextParams = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("name=value expected: " + arg);
+            }
+            String name = arg.substring(0, eq);
+            (name.equals(name.toUpperCase()) ? contextParams : settings).put(name, arg.substring(eq + 1));
+        }
+        long duration = TimeUnit.SECONDS.toMillis(getInt(settings, "duration", 60));
+        long warmup = TimeUnit.SECONDS.toMillis(getInt(settings, "warmup", 10));
+        int concurrency = getInt(settings, "concurrency", 32);
+        Map<Operation, Integer> mix = parseMix(settings.getOrDefault("mix", "get:80,put:15,upload:5"));
+
+        StubBackend backend = new StubBackend(getInt(settings, "getSize", 16384),
+                getInt(settings, "backendLatency", 0), concurrency * 2);
+        backend.start();
+        contextParams.put("BS_SERVER_URL", backend.getUrl().toString());
+        contextParams.putIfAbsent("HTTPS_FILTER_DISABLED", "false");
+        // all the driver's requests come from one anonymous client
+        contextParams.putIfAbsent("PROXY_RATE_LIMITS", "/=0");
+        contextParams.putIfAbsent("PROXY_STORE_DIR", Files.createTempDirectory("loadtest-store-").toString());
+
+        EmbeddedApp app = new EmbeddedApp(contextParams);
+        app.start();
+        try {
+            System.out.printf("proxy %s -> backend %s, concurrency %d, mix %s%n",
+                    app.getUrl(), backend.getUrl(), concurrency, mix);
+            LoadDriver driver = new LoadDriver(app.getUrl(), concurrency, mix, new Operation.Payloads(
+                    getInt(settings, "putSize", 4096), getInt(settings, "uploadSize", 10 * 1024 * 1024)));
+
+            JvmStats stats = new JvmStats();
+            Map<Operation, LatencyRecorder> results = driver.run(warmup, duration, stats::start);
+            stats.stop();
+            report(results, duration, stats);
+        } finally {
+            app.stop();
+            backend.stop();
+        }
+    }
+
+    private static void report(Map<Operation, LatencyRecorder> results, long duration, JvmStats stats) {
+        System.out.printf("%n%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "op", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        LatencyRecorder all = new LatencyRecorder();
+        for (Map.Entry<Operation, LatencyRecorder> entry : results.entrySet()) {
+            all.add(entry.getValue());
+            printRow(entry.getKey().name().toLowerCase(), entry.getValue(), duration);
+        }
+        printRow("total", all, duration);
+        System.out.printf("%nheap: %d MB used at the end, %d MB peak, %d MB max%n",
+                stats.heapUsed >> 20, stats.heapPeak >> 20, Runtime.getRuntime().maxMemory() >> 20);
+        System.out.printf("gc: %d collections, %d ms (%.1f%% of the run)%n",
+                stats.gcCount, stats.gcTime, 100.0 * stats.gcTime / duration);
+        System.out.println("(heap and gc include the stub backend and the load driver running in the same JVM)");
+    }
+
+    private static void printRow(String name, LatencyRecorder recorder, long duration) {
+        long[] p = recorder.percentiles(PERCENTILES);
+        System.out.printf("%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, recorder.getCount(), recorder.getErrors(), recorder.getCount() * 1000.0 / duration,
+                p[0] / 1e6, p[1] / 1e6, p[2] / 1e6, p[3] / 1e6, p[4] / 1e6);
+    }
+
+    private static int getInt(Map<String, String> settings, String name, int defaultValue) {
+        String value = settings.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight > 0) {
+                mix.put(Operation.forName(parts[0]), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("No operations in the mix: " + value);
+        }
+        return mix;
+    }
+
+    /**
+     * Heap use and GC activity during the measured period.
+     */
+    private static class JvmStats {
+        private long gcCountStart;
+        private long gcTimeStart;
+        long gcCount;
+        long gcTime;
+        long heapUsed;
+        long heapPeak;
+
+        void start() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            gcCountStart = gcCount();
+            gcTimeStart = gcTime();
+        }
+
+        void stop() {
+            gcCount = gcCount() - gcCountStart;
+            gcTime = gcTime() - gcTimeStart;
+            heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heapPeak += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+
+        private static long gcCount() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(n -> n > 0).sum();
+        }
+
+        private static long gcTime() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(n -> n > 0).sum();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+
+import java.net.URI;
+import java.util.Random;
+
+/**
+ * The kinds of requests in the load mix; each builds a new request for the proxy at the given base url.
+ */
+enum Operation {
+
+    GET {
+        @Override
+        HttpUriRequest request(URI base, Random random, Payloads payloads) {
+            return new HttpGet(base + "/raw/submissions?offset=" + random.nextInt(1000) + "&limit=20");
+        }
+    },
+
+    PUT {
+        @Override
+        HttpUriRequest request(URI base, Random random, Payloads payloads) {
+            HttpPut put = new HttpPut(base + "/raw/submissions/S-BSST" + random.nextInt(1000));
+            put.setEntity(payloads.json);
+            return put;
+        }
+    },
+
+    UPLOAD {
+        @Override
+        HttpUriRequest request(URI base, Random random, Payloads payloads) {
+            HttpPost post = new HttpPost(base + "/raw/files/upload");
+            post.setEntity(payloads.multipart.build());
+            return post;
+        }
+    };
+
+    /**
+     * Request bodies, created once and shared by all the requests.
+     */
+    static class Payloads {
+        private final ByteArrayEntity json;
+        private final MultipartEntityBuilder multipart;
+
+        Payloads(int jsonSize, int uploadSize) {
+            json = new ByteArrayEntity(StubBackend.json(jsonSize), ContentType.APPLICATION_JSON);
+            byte[] file = new byte[uploadSize];
+            new Random(42).nextBytes(file);
+            multipart = MultipartEntityBuilder.create()
+                    .addTextBody("path", "/loadtest", ContentType.TEXT_PLAIN)
+                    .addBinaryBody("file", file, ContentType.APPLICATION_OCTET_STREAM, "upload.bin");
+        }
+    }
+
+    abstract HttpUriRequest request(URI base, Random random, Payloads payloads);
+
+    static Operation forName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for the BioStudies backend: GET requests get a json body of a fixed size, PUT and
+ * POST requests have their body read and get a short json reply. An optional delay simulates the backend
+ * processing time.
+ */
+class StubBackend {
+
+    private static final byte[] REPLY = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] body;
+    private final long latency;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /**
+     * @param latency the delay of every response in milliseconds
+     */
+    StubBackend(int bodySize, long latency, int threads) throws IOException {
+        this.body = json(bodySize);
+        this.latency = latency;
+        // the headers and the body are written separately, so with Nagle's algorithm every response would
+        // wait for the client's delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    URI getUrl() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/backend");
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (InputStream input = exchange.getRequestBody(); OutputStream output = exchange.getResponseBody()) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int n; (n = input.read(buffer)) >= 0; ) {
+                bytesReceived.add(n);
+            }
+            if (latency > 0) {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            }
+            byte[] reply = exchange.getRequestMethod().equals("GET") ? body : REPLY;
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, reply.length);
+            output.write(reply);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static byte[] json(int size) {
+        StringBuilder sb = new StringBuilder(size + 128).append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("{\"accno\":\"S-BSST").append(i).append("\",\"title\":\"Submission ").append(i * 7919)
+                    .append("\",\"rtime\":").append(1500000000L + i * 86400L).append("},");
+        }
+        sb.setLength(Math.max(1, size - 1));
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
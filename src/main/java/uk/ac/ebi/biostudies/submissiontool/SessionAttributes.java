@@ -28,12 +28,28 @@ public class SessionAttributes {
 
     public static final String USER_SESSION = "userSession";
 
+    /**
+     * @return the user session of the request, or of the servlet session when the session authentication
+     * mode is used
+     */
     public static UserSession getUserSession(HttpServletRequest req) {
-        return (UserSession) req.getSession().getAttribute(USER_SESSION);
+        UserSession userSession = (UserSession) req.getAttribute(USER_SESSION);
+        if (userSession != null) {
+            return userSession;
+        }
+        HttpSession session = req.getSession(false);
+        return session == null ? null : (UserSession) session.getAttribute(USER_SESSION);
     }
 
     public static void setUserSession(HttpServletRequest req, UserSession userSession) {
         HttpSession session = req.getSession(true);
-        session.setAttribute("userSession", userSession);
+        session.setAttribute(USER_SESSION, userSession);
+    }
+
+    /**
+     * Keeps the user session for the current request only, so no servlet session is created.
+     */
+    public static void setRequestUserSession(HttpServletRequest req, UserSession userSession) {
+        req.setAttribute(USER_SESSION, userSession);
     }
 }
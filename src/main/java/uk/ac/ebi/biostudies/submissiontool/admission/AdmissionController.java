@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.admission;
+
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Histogram;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the load of the node within its budgets: the number of requests handled at the same time and the
+ * request body bytes which may be held in memory. A request which doesn't fit is rejected before any of its
+ * body is read, instead of being queued up until the node runs out of heap or threads.
+ * <p>
+ * A request waits a short while for a free slot, so short bursts are smoothed out; the body bytes are never
+ * waited for, as an upload holding a slot while waiting for memory would only add to the pressure.
+ */
+public class AdmissionController {
+
+    /**
+     * The part of a request body which may end up on the heap; larger upload parts are spooled to disk
+     * (see the DiskFileItemFactory threshold in RemoteProxy).
+     */
+    static final long MAX_IN_MEMORY_BODY = 5 * 1024 * 1024;
+
+    public enum Rejection {
+        REQUESTS, UPLOAD_BYTES, INTERRUPTED
+    }
+
+    /**
+     * An admitted request; must be released exactly once, when the request is complete.
+     */
+    public class Ticket {
+        private final long bytes;
+        private final boolean slot;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Ticket(long bytes, boolean slot) {
+            this.bytes = bytes;
+            this.slot = slot;
+        }
+
+        public void release() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            if (slot) {
+                slots.release();
+            }
+            uploadBytes.addAndGet(-bytes);
+        }
+    }
+
+    /**
+     * A semaphore which can shrink: the permits taken away are the ones returned by the requests in flight.
+     */
+    private static class Slots extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        Slots(int permits) {
+            super(permits);
+        }
+
+        void reduce(int permits) {
+            reducePermits(permits);
+        }
+    }
+
+    private volatile int maxRequests;
+    private volatile long maxUploadBytes;
+    private volatile long maxWait;
+
+    // guards the resizing of the slots
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Slots slots;
+    private final AtomicLong uploadBytes = new AtomicLong();
+
+    private final Histogram waitTime;
+    private final Counter[] rejected = new Counter[Rejection.values().length];
+
+    /**
+     * @param maxRequests    the maximum number of requests handled at the same time, 0 for no limit
+     * @param maxUploadBytes the maximum of body bytes which may be held in memory, 0 for no limit
+     * @param maxWait        how long a request may wait for a free slot, in milliseconds
+     */
+    public AdmissionController(int maxRequests, long maxUploadBytes, long maxWait, MetricsRegistry metrics) {
+        this.maxRequests = maxRequests;
+        this.maxUploadBytes = maxUploadBytes;
+        this.maxWait = maxWait;
+        this.slots = new Slots(Math.max(maxRequests, 0));
+
+        metrics.gauge("admission_in_flight_requests", "Requests being handled", this::getInFlight);
+        metrics.gauge("admission_upload_bytes", "Request body bytes which may be held in memory",
+                uploadBytes::get);
+        waitTime = metrics.histogram("admission_wait_seconds", "Time requests waited for a free slot");
+        for (Rejection reason : Rejection.values()) {
+            rejected[reason.ordinal()] = metrics.counter("admission_rejected_total", "Requests rejected",
+                    "reason", reason.name().toLowerCase());
+        }
+    }
+
+    public int getInFlight() {
+        int max = maxRequests;
+        return max <= 0 ? 0 : max - slots.availablePermits();
+    }
+
+    /**
+     * Changes the limits at runtime. The requests in flight are not affected: when the slots are reduced, the new
+     * requests wait until enough of the running ones are complete. The requests admitted while there was no
+     * limit don't count against a limit set later.
+     */
+    public void update(int maxRequests, long maxUploadBytes, long maxWait) {
+        lock.lock();
+        try {
+            int delta = Math.max(maxRequests, 0) - Math.max(this.maxRequests, 0);
+            if (delta > 0) {
+                slots.release(delta);
+            } else if (delta < 0) {
+                slots.reduce(-delta);
+            }
+            this.maxRequests = maxRequests;
+            this.maxUploadBytes = maxUploadBytes;
+            this.maxWait = maxWait;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getUploadBytes() {
+        return uploadBytes.get();
+    }
+
+    /**
+     * The heap a request body may take: its length, up to the in-memory threshold. The length of a chunked
+     * body is not known in advance, so it is charged the full threshold.
+     *
+     * @param contentLength the Content-Length of the request, -1 if not given
+     * @param chunked       true if the body is sent with a chunked transfer encoding
+     */
+    public static long charge(long contentLength, boolean chunked) {
+        if (chunked) {
+            return MAX_IN_MEMORY_BODY;
+        }
+        return Math.min(Math.max(contentLength, 0), MAX_IN_MEMORY_BODY);
+    }
+
+    /**
+     * Admits a request, waiting up to the configured time for a free slot.
+     *
+     * @param bytes the body bytes charged to the request, see {@link #charge(long, boolean)}
+     * @return the ticket of the admitted request
+     * @throws RejectedException if the request is over the budgets
+     */
+    public Ticket admit(long bytes) throws RejectedException {
+        return admit(bytes, maxWait);
+    }
+
+    /**
+     * Admits a request only if there is a free slot right away, e.g. a sub-request of a batch, whose caller
+     * has other work to get on with.
+     *
+     * @param bytes the body bytes charged to the request, see {@link #charge(long, boolean)}
+     * @return the ticket of the admitted request
+     * @throws RejectedException if the request is over the budgets
+     */
+    public Ticket tryAdmit(long bytes) throws RejectedException {
+        return admit(bytes, 0);
+    }
+
+    private Ticket admit(long bytes, long maxWait) throws RejectedException {
+        if (bytes > 0 && !reserveBytes(bytes)) {
+            throw reject(Rejection.UPLOAD_BYTES);
+        }
+        boolean slot;
+        try {
+            slot = acquireSlot(maxWait);
+        } catch (RejectedException e) {
+            uploadBytes.addAndGet(-bytes);
+            throw e;
+        }
+        return new Ticket(bytes, slot);
+    }
+
+    private boolean reserveBytes(long bytes) {
+        long maxUploadBytes = this.maxUploadBytes;
+        if (maxUploadBytes <= 0) {
+            uploadBytes.addAndGet(bytes);
+            return true;
+        }
+        long current;
+        do {
+            current = uploadBytes.get();
+            if (current + bytes > maxUploadBytes) {
+                return false;
+            }
+        } while (!uploadBytes.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * @return true if a slot has been taken, false if there is no limit
+     */
+    private boolean acquireSlot(long maxWait) throws RejectedException {
+        if (maxRequests <= 0) {
+            return false;
+        }
+        if (slots.tryAcquire()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = maxWait > 0 && slots.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(Rejection.INTERRUPTED);
+        } finally {
+            waitTime.recordNanos(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            throw reject(Rejection.REQUESTS);
+        }
+        return true;
+    }
+
+    private RejectedException reject(Rejection reason) {
+        rejected[reason.ordinal()].inc();
+        return new RejectedException(reason);
+    }
+
+    public static class RejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final Rejection reason;
+
+        RejectedException(Rejection reason) {
+            super("request rejected: " + reason.name().toLowerCase(), null, false, false);
+            this.reason = reason;
+        }
+
+        public Rejection getReason() {
+            return reason;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController{" +
+                "inFlight=" + getInFlight() +
+                ", uploadBytes=" + uploadBytes +
+                '}';
+    }
+}
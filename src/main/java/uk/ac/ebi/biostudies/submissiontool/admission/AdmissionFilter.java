@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Admits the proxy and REST requests through the {@link AdmissionController}; requests over the budgets get
+ * 503 with Retry-After. The decision is made on the request headers alone, so a rejected upload is never read.
+ * The metrics endpoint is exempt, as it matters most when the node is overloaded.
+ */
+@WebFilter(urlPatterns = {"/raw/*", "/api/*"}, filterName = "AdmissionFilter", asyncSupported = true)
+public class AdmissionFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionFilter.class);
+
+    private AdmissionController admission;
+    private volatile String retryAfter;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        AppConfig config = AppContext.getConfig(filterConfig.getServletContext());
+        admission = AppContext.getAdmission(filterConfig.getServletContext());
+        retryAfter = Integer.toString(config.getAdmissionRetryAfter());
+        AppContext.subscribe(filterConfig.getServletContext(),
+                (previous, current) -> retryAfter = Integer.toString(current.getAdmissionRetryAfter()));
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+        if (isExempt(req)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long contentLength = contentLength(req);
+        if (contentLength == -2) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Malformed Content-Length");
+            return;
+        }
+        AdmissionController.Ticket ticket;
+        try {
+            ticket = admission.admit(
+                    AdmissionController.charge(contentLength, req.getHeader("Transfer-Encoding") != null));
+        } catch (AdmissionController.RejectedException e) {
+            logger.warn("{}: {} {}", e.getMessage(), req.getMethod(), req.getRequestURI());
+            reject(resp, contentLength);
+            return;
+        }
+
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (req.isAsyncStarted()) {
+                // the async request completes only after this dispatch returns, so the listener isn't late
+                req.getAsyncContext().addListener(new ReleasingListener(ticket));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                ticket.release();
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse resp, long contentLength) throws IOException {
+        resp.setHeader("Retry-After", retryAfter);
+        if (contentLength != 0) {
+            // otherwise the container would read (and discard) the whole body to keep the connection open
+            resp.setHeader("Connection", "close");
+        }
+        resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The server is overloaded; try again later");
+    }
+
+    private static boolean isExempt(HttpServletRequest req) {
+        return "/api".equals(req.getServletPath()) && "/metrics".equals(req.getPathInfo());
+    }
+
+    /**
+     * @return the Content-Length of the request, -1 if not given, -2 if malformed
+     */
+    private static long contentLength(HttpServletRequest req) {
+        // getContentLength() overflows on bodies over 2 GB
+        String value = req.getHeader("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(value.trim());
+            return length < 0 ? -2 : length;
+        } catch (NumberFormatException e) {
+            return -2;
+        }
+    }
+
+    private static class ReleasingListener implements AsyncListener {
+        private final AdmissionController.Ticket ticket;
+
+        ReleasingListener(AdmissionController.Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            ticket.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
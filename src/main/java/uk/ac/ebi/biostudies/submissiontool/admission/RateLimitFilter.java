@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.auth.SessionValidator;
+import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Applies the {@link RateLimiter} to the proxy and REST requests. In the stateless auth mode, requests of a
+ * validated session are keyed by its user; any other request, including one with a token not (or not yet)
+ * validated, by the client address, so made up tokens don't get fresh buckets. Only the session validation cache
+ * is consulted, the backend is never asked. In the session mode no token is ever validated by the proxy, so the
+ * requests with a token are keyed by its hash: a client changing its token gets a fresh bucket, but the clients
+ * behind one address don't share a bucket. The limit state is sent in the RateLimit-Limit, RateLimit-Remaining
+ * and RateLimit-Reset headers, and the requests over the limit get 429 with Retry-After.
+ * <p>
+ * Mapped in web.xml ahead of the {@link AdmissionFilter}, so a flood from a single client doesn't take up
+ * the admission slots.
+ */
+@WebFilter(urlPatterns = {"/raw/*", "/api/*"}, filterName = "RateLimitFilter", asyncSupported = true)
+public class RateLimitFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    private static final String SESSION_MODE = "session";
+
+    private static final String CLIENT_KEY_ATTRIBUTE = RateLimitFilter.class.getName() + ".clientKey";
+
+    private ServletContext context;
+    private RateLimiter limiter;
+    private SessionValidator validator;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        context = filterConfig.getServletContext();
+        limiter = AppContext.getRateLimiter(context);
+        validator = AppContext.getSessionValidator(context);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+
+        String path = req.getServletPath() + (req.getPathInfo() == null ? "" : req.getPathInfo());
+        String client = clientKey(req);
+        req.setAttribute(CLIENT_KEY_ATTRIBUTE, client);
+        RateLimiter.Decision decision = limiter.acquire(path, client);
+        if (decision == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        resp.setHeader("RateLimit-Limit", Long.toString(decision.getLimit()));
+        resp.setHeader("RateLimit-Remaining", Long.toString(decision.getRemaining()));
+        resp.setHeader("RateLimit-Reset", Long.toString(decision.getReset()));
+        if (decision.isAllowed()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        logger.debug("rate limit exceeded: {} {}", req.getMethod(), req.getRequestURI());
+        resp.setHeader("Retry-After", Long.toString(decision.getReset()));
+        if (req.getHeader("Content-Length") != null || req.getHeader("Transfer-Encoding") != null) {
+            // otherwise the container would read (and discard) the whole body to keep the connection open
+            resp.setHeader("Connection", "close");
+        }
+        resp.sendError(SC_TOO_MANY_REQUESTS, "Too many requests; try again later");
+    }
+
+    /**
+     * @return the client key of a request which has passed the filter, for charging the requests it makes on
+     * the client's behalf (the sub-requests of a batch); null if the request hasn't passed it
+     */
+    public static String getClientKey(ServletRequest req) {
+        return (String) req.getAttribute(CLIENT_KEY_ATTRIBUTE);
+    }
+
+    private String clientKey(HttpServletRequest req) {
+        AppConfig config = AppContext.getConfig(context);
+        String token = req.getHeader(SESSION_TOKEN_HEADER);
+        if (token != null && SESSION_MODE.equalsIgnoreCase(config.getAuthMode())) {
+            return RateLimiter.tokenKey(token);
+        }
+        UserSession session = token == null ? null : validator.peek(token);
+        return RateLimiter.clientKey(session, clientAddress(req, config.getTrustedProxies()));
+    }
+
+    /**
+     * The address of the client. X-Forwarded-For is taken into account only when the request comes from one of
+     * the trusted proxies, as anyone else can send whatever they like in it; the client is then the last address
+     * in it which is not a trusted proxy, the one the nearest trusted proxy got the request from.
+     */
+    static String clientAddress(HttpServletRequest req, List<String> trustedProxies) {
+        String address = req.getRemoteAddr();
+        String forwardedFor = req.getHeader("X-Forwarded-For");
+        if (forwardedFor == null || !trustedProxies.contains(address)) {
+            return address;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            address = hop;
+            if (!trustedProxies.contains(hop)) {
+                break;
+            }
+        }
+        return address;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.admission;
+
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client rate limits by request path prefix, so a single user (or address) can't take the capacity
+ * of the backend away from the other users.
+ * <p>
+ * Each client has a token bucket per limit, kept as the generic cell rate algorithm: the only state is the
+ * time at which the bucket will be full again, updated by compare-and-set, so there are no locks and nothing
+ * is allocated for a known client. A bucket which is full again is the same as a new one, so such buckets
+ * are simply dropped by {@link #expire()}; the memory used is bounded by the number of clients seen within the
+ * time it takes a bucket to refill.
+ * <p>
+ * Limits are declared in PROXY_RATE_LIMITS, separated by white space, each as {@code prefix=rate[:burst]},
+ * where the rate is in requests per second and the burst is the bucket size (by default the rate), e.g.
+ * {@code /raw=100:200 /raw/files=10 /api=50}. Prefixes are relative to the context path, the longest
+ * matching one applies, and a rate of 0 means no limit. There are no limits by default.
+ */
+public class RateLimiter {
+
+    /**
+     * The limit applied to a request.
+     */
+    public static class Decision {
+        private final boolean allowed;
+        private final long limit;
+        private final long remaining;
+        private final long reset;
+
+        private Decision(boolean allowed, long limit, long remaining, long reset) {
+            this.allowed = allowed;
+            this.limit = limit;
+            this.remaining = remaining;
+            this.reset = reset;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        /**
+         * @return the bucket size
+         */
+        public long getLimit() {
+            return limit;
+        }
+
+        public long getRemaining() {
+            return remaining;
+        }
+
+        /**
+         * @return the seconds until the bucket is full again if the request is allowed, otherwise the seconds
+         * until the next request would be
+         */
+        public long getReset() {
+            return reset;
+        }
+    }
+
+    static class Limit {
+        private final String prefix;
+        private final double rate;
+        private final long burst;
+        private final long interval;
+        private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private Counter limited;
+
+        Limit(String prefix, double rate, long burst) {
+            this.prefix = prefix;
+            this.rate = rate;
+            this.burst = burst;
+            this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        }
+
+        boolean matches(String path) {
+            return prefix.equals("/") || path.equals(prefix) || path.startsWith(prefix + "/");
+        }
+
+        Decision acquire(String client, long now) {
+            AtomicLong bucket = buckets.get(client);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(client, c -> new AtomicLong(now));
+            }
+            long capacity = burst * interval;
+            while (true) {
+                long full = bucket.get();
+                long next = (full - now > 0 ? full : now) + interval;
+                long debt = next - now;
+                if (debt > capacity) {
+                    limited.inc();
+                    return new Decision(false, burst, 0, seconds(debt - capacity));
+                }
+                if (bucket.compareAndSet(full, next)) {
+                    return new Decision(true, burst, (capacity - debt) / interval, seconds(debt));
+                }
+            }
+        }
+
+        private static long seconds(long nanos) {
+            return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return prefix + "=" + rate + ":" + burst;
+        }
+    }
+
+    private final MetricsRegistry metrics;
+    private volatile List<Limit> limits;
+
+    RateLimiter(List<Limit> limits, MetricsRegistry metrics) {
+        this.metrics = metrics;
+        this.limits = prepare(limits, Collections.emptyList());
+    }
+
+    /**
+     * Replaces the limits at runtime. The clients keep their buckets of the prefixes which are still limited,
+     * so a change doesn't hand out a fresh burst to everyone.
+     *
+     * @throws IllegalArgumentException if the spec is malformed; the limits are not changed then
+     */
+    public void update(String spec) {
+        limits = prepare(parse(spec), limits);
+    }
+
+    private List<Limit> prepare(List<Limit> limits, List<Limit> previous) {
+        List<Limit> sorted = new ArrayList<>(limits);
+        // the longest prefix first, so the first match is the most specific one
+        sorted.sort(Comparator.comparingInt((Limit l) -> l.prefix.length()).reversed());
+        for (Limit limit : sorted) {
+            String prefix = limit.prefix;
+            previous.stream()
+                    .filter(p -> p.prefix.equals(prefix))
+                    .findFirst()
+                    .ifPresent(p -> limit.buckets.putAll(p.buckets));
+            // the metrics of a prefix are registered once, then the same ones are returned
+            limit.limited = metrics.counter("rate_limited_total", "Requests rejected by the rate limits",
+                    "prefix", prefix);
+            metrics.gauge("rate_limit_buckets", "Clients tracked by the rate limits", () -> countBuckets(prefix),
+                    "prefix", prefix);
+        }
+        return sorted;
+    }
+
+    private int countBuckets(String prefix) {
+        for (Limit limit : limits) {
+            if (limit.prefix.equals(prefix)) {
+                return limit.buckets.size();
+            }
+        }
+        return 0;
+    }
+
+    public static RateLimiter create(String spec, MetricsRegistry metrics) {
+        return new RateLimiter(parse(spec), metrics);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    public static void validate(String spec) {
+        parse(spec);
+    }
+
+    static List<Limit> parse(String spec) {
+        List<Limit> limits = new ArrayList<>();
+        if (spec == null) {
+            return limits;
+        }
+        for (String limit : spec.trim().split("\\s+")) {
+            if (!limit.isEmpty()) {
+                limits.add(parseLimit(limit));
+            }
+        }
+        return limits;
+    }
+
+    private static Limit parseLimit(String spec) {
+        int eq = spec.indexOf('=');
+        if (eq <= 0) {
+            throw new IllegalArgumentException("Malformed rate limit (prefix=rate[:burst] expected): " + spec);
+        }
+        String prefix = spec.substring(0, eq);
+        prefix = prefix.startsWith("/") ? prefix : "/" + prefix;
+        prefix = prefix.length() > 1 && prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+
+        String[] value = spec.substring(eq + 1).split(":");
+        try {
+            double rate = Double.parseDouble(value[0]);
+            long burst = value.length > 1 ? Long.parseLong(value[1]) : (long) Math.ceil(rate);
+            if (rate < 0 || burst < 1 && rate > 0 || value.length > 2) {
+                throw new IllegalArgumentException("Malformed rate limit: " + spec);
+            }
+            return new Limit(prefix, rate, burst);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed rate limit: " + spec, e);
+        }
+    }
+
+    /**
+     * Takes a token from the client's bucket of the limit matching the path.
+     *
+     * @param path   the request path, relative to the context path
+     * @param client the client key, see {@link #clientKey(UserSession, String)} and {@link #tokenKey(String)}
+     * @return the decision, or null if the path has no limit
+     */
+    public Decision acquire(String path, String client) {
+        for (Limit limit : limits) {
+            if (limit.matches(path)) {
+                return limit.rate > 0 ? limit.acquire(client, System.nanoTime()) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param session the validated session of the request, or null
+     * @param address the client address, used when the session isn't known
+     */
+    public static String clientKey(UserSession session, String address) {
+        if (session == null) {
+            return "a:" + address;
+        }
+        return session.user() != null ? "u:" + session.user() : "s:" + session.id();
+    }
+
+    /**
+     * The key of a session token which the proxy doesn't validate itself (the session mode). The token is hashed,
+     * so the buckets don't keep tokens in memory.
+     */
+    public static String tokenKey(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return "t:" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 18));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Drops the buckets which are full again.
+     *
+     * @return the number of buckets dropped
+     */
+    public int expire() {
+        long now = System.nanoTime();
+        int expired = 0;
+        for (Limit limit : limits) {
+            int before = limit.buckets.size();
+            // a request racing with the removal may go unaccounted for, which only errs on the side of the client
+            limit.buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            expired += before - limit.buckets.size();
+        }
+        return expired;
+    }
+
+    public boolean isEmpty() {
+        return limits.stream().allMatch(l -> l.rate <= 0);
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter" + limits;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.assets;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size bounded LRU cache of the static asset contents, keyed by the file path and its modification time,
+ * so an asset replaced on disk is read again. Only the recently requested assets stay in memory.
+ */
+class AssetCache {
+
+    private final long maxSize;
+
+    // a lock rather than a monitor, so waiting virtual threads don't pin their carriers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    AssetCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String key(String file, long lastModified) {
+        return lastModified + " " + file;
+    }
+
+    byte[] get(String key) {
+        lock.lock();
+        try {
+            byte[] content = entries.get(key);
+            (content == null ? misses : hits).incrementAndGet();
+            return content;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String key, byte[] content) {
+        if (content.length > maxSize) {
+            return;
+        }
+        lock.lock();
+        try {
+            byte[] replaced = entries.put(key, content);
+            size += content.length - (replaced == null ? 0 : replaced.length);
+
+            Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                size -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.assets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getConfig;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getMetrics;
+
+/**
+ * Serves the bundled UI: the context root (index.html) and the html, js and css files, which is what the UI
+ * build ({@code ng build --prod}) puts out along with the assets directory. Everything else, and any request
+ * with a Range header, is left to the container's default servlet.
+ * <ul>
+ * <li>The gzip and brotli versions precompressed by the build ({@code app.js.gz}, {@code app.js.br}) are sent
+ * to the clients accepting them.</li>
+ * <li>Files with the content hash of the UI build in the name ({@code main.3f2a9c1d0b7e4a5f6c8d.bundle.js}) are
+ * cached by the browsers for a year as immutable; everything else (index.html) is revalidated with the strong
+ * ETag on every use.</li>
+ * <li>Small assets are kept in memory; larger ones are sent from the file, with sendfile when the container
+ * supports it (Tomcat) and a file channel transfer otherwise.</li>
+ * </ul>
+ * When the web application isn't unpacked to the file system, the requests go to the default servlet.
+ */
+@WebServlet(value = {"", "*.html", "*.js", "*.css"}, name = "StaticAssetServlet")
+public class StaticAssetServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticAssetServlet.class);
+
+    /**
+     * The names the UI build gives its output: the name, the 20 hex digits of the content hash, and for the
+     * scripts and styles a bundle or chunk suffix, e.g. main.3f2a9c1d0b7e4a5f6c8d.bundle.js.
+     */
+    private static final Pattern HASHED_NAME = Pattern.compile("[^/]+\\.[0-9a-f]{20}(\\.bundle|\\.chunk)?\\.[a-z0-9]+");
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * The content codings of the precompressed versions, in the order of preference, and their file suffixes.
+     */
+    private static final String[][] ENCODINGS = {{"br", ".br"}, {"gzip", ".gz"}};
+
+    /**
+     * The content hash of an asset file, computed once per file version.
+     */
+    private static class Digest {
+        private final long lastModified;
+        private final long size;
+        private final String hash;
+
+        private Digest(long lastModified, long size, String hash) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    private Path root;
+    private AssetCache cache;
+    private int maxEntrySize;
+    private final ConcurrentMap<Path, Digest> digests = new ConcurrentHashMap<>();
+
+    @Override
+    public void init() {
+        String realPath = getServletContext().getRealPath("/");
+        root = realPath == null ? null : Paths.get(realPath).toAbsolutePath().normalize();
+        if (root == null) {
+            logger.warn("web application isn't unpacked; static assets are served by the default servlet");
+        }
+        AppConfig config = getConfig(getServletContext());
+        maxEntrySize = config.getAssetCacheEntrySize();
+        if (config.getAssetCacheSize() > 0) {
+            AssetCache assets = new AssetCache(config.getAssetCacheSize());
+            MetricsRegistry metrics = getMetrics(getServletContext());
+            metrics.counter("asset_cache_hits_total", "Static assets served from memory", assets::getHits);
+            metrics.counter("asset_cache_misses_total", "Static assets not found in memory", assets::getMisses);
+            metrics.gauge("asset_cache_size_bytes", "Size of the static assets kept in memory", assets::getSize);
+            cache = assets;
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        serve(req, resp, true);
+    }
+
+    @Override
+    protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        serve(req, resp, false);
+    }
+
+    private void serve(HttpServletRequest req, HttpServletResponse resp, boolean withBody)
+            throws ServletException, IOException {
+        if (root == null || req.getHeader("Range") != null) {
+            RequestDispatcher dispatcher = getServletContext().getNamedDispatcher("default");
+            if (dispatcher == null) {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            } else {
+                dispatcher.forward(req, resp);
+            }
+            return;
+        }
+        String path = req.getServletPath() + (req.getPathInfo() == null ? "" : req.getPathInfo());
+        Path file = resolve(path);
+        if (file == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (Files.isDirectory(file)) {
+            if (!path.endsWith("/")) {
+                resp.sendRedirect(req.getRequestURI() + "/");
+                return;
+            }
+            file = file.resolve("index.html");
+        }
+        BasicFileAttributes attributes = attributes(file);
+        if (attributes == null || !attributes.isRegularFile()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String hash = digest(file, attributes).hash;
+
+        // a precompressed version is only used if it is at least as recent as the original
+        Path selected = file;
+        BasicFileAttributes selectedAttributes = attributes;
+        String encoding = null;
+        boolean hasVariants = false;
+        for (String[] coding : ENCODINGS) {
+            Path variant = file.resolveSibling(file.getFileName() + coding[1]);
+            BasicFileAttributes variantAttributes = attributes(variant);
+            if (variantAttributes == null || variantAttributes.lastModifiedTime().compareTo(
+                    attributes.lastModifiedTime()) < 0) {
+                continue;
+            }
+            hasVariants = true;
+            if (encoding == null && accepts(req.getHeader("Accept-Encoding"), coding[0])) {
+                selected = variant;
+                selectedAttributes = variantAttributes;
+                encoding = coding[0];
+            }
+        }
+
+        // strong ETags must differ between the encodings
+        String etag = "\"" + hash + (encoding == null ? "" : "-" + encoding) + "\"";
+        String fileName = file.getFileName().toString();
+        resp.setHeader("ETag", etag);
+        resp.setDateHeader("Last-Modified", attributes.lastModifiedTime().toMillis());
+        resp.setHeader("Cache-Control", HASHED_NAME.matcher(fileName).matches() ? IMMUTABLE : REVALIDATE);
+        if (hasVariants) {
+            resp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (isNotModified(req, etag, attributes.lastModifiedTime().toMillis())) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        String contentType = getServletContext().getMimeType(fileName);
+        resp.setContentType(contentType == null ? "application/octet-stream" : contentType);
+        if (encoding != null) {
+            resp.setHeader("Content-Encoding", encoding);
+        }
+        long size = selectedAttributes.size();
+        if (size > Integer.MAX_VALUE) {
+            resp.setHeader("Content-Length", Long.toString(size));
+        } else {
+            resp.setContentLength((int) size);
+        }
+        if (withBody) {
+            send(req, resp, selected, size, selectedAttributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    /**
+     * @return the file of the asset, or null if the path is outside the web root or protected
+     */
+    private Path resolve(String path) {
+        Path file = root.resolve(path.startsWith("/") ? path.substring(1) : path).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        Path relative = root.relativize(file);
+        String first = relative.getNameCount() == 0 ? "" : relative.getName(0).toString();
+        return first.equalsIgnoreCase("WEB-INF") || first.equalsIgnoreCase("META-INF") ? null : file;
+    }
+
+    private void send(HttpServletRequest req, HttpServletResponse resp, Path file, long size, long lastModified)
+            throws IOException {
+        if (cache != null && size <= maxEntrySize) {
+            String key = AssetCache.key(file.toString(), lastModified);
+            byte[] content = cache.get(key);
+            if (content == null) {
+                content = Files.readAllBytes(file);
+                cache.put(key, content);
+            }
+            resp.getOutputStream().write(content);
+            return;
+        }
+        if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            // the container sends the file after the servlet returns, straight from the page cache
+            req.setAttribute(SENDFILE_FILENAME, file.toString());
+            req.setAttribute(SENDFILE_START, 0L);
+            req.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream output = resp.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = 0;
+            while (position < size) {
+                long sent = channel.transferTo(position, size - position, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+            }
+            output.flush();
+        }
+    }
+
+    private Digest digest(Path file, BasicFileAttributes attributes) throws IOException {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        Digest digest = digests.get(file);
+        if (digest != null && digest.lastModified == lastModified && digest.size == attributes.size()) {
+            return digest;
+        }
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] buffer = new byte[8 * 1024];
+        try (InputStream input = Files.newInputStream(file)) {
+            int len;
+            while ((len = input.read(buffer)) >= 0) {
+                sha256.update(buffer, 0, len);
+            }
+        }
+        String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(sha256.digest(), 18));
+        digest = new Digest(lastModified, attributes.size(), hash);
+        digests.put(file, digest);
+        return digest;
+    }
+
+    private static BasicFileAttributes attributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match uses the weak comparison
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || (t.startsWith("W/") ? t.substring(2) : t).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the Accept-Encoding header allows the content coding (with a non-zero quality)
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String element : acceptEncoding.split(",")) {
+            String[] params = element.split(";");
+            if (params[0].trim().toLowerCase(Locale.ROOT).equals(coding)) {
+                for (int i = 1; i < params.length; i++) {
+                    String[] q = params[i].trim().split("=");
+                    if (q.length == 2 && q[0].trim().equals("q")) {
+                        try {
+                            return Float.parseFloat(q[1].trim()) > 0f;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Histogram;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Validates session tokens against the backend, which returns the user profile for a valid token.
+ * The results are kept in a bounded cache for a while, the rejected tokens for a shorter while, so the backend
+ * is asked about a token only once per TTL; concurrent requests with the same unknown token wait for a single
+ * backend call.
+ * <p>
+ * The profile fields are configurable (PROXY_AUTH_ROLES_FIELD, PROXY_AUTH_SUPERUSER_FIELD and
+ * PROXY_AUTH_USER_FIELDS; a dotted path reaches into nested objects). The roles of the session are the ones
+ * listed in the roles field, SUPERUSER if the superuser field is true, and AUTHENTICATED; the user name is the
+ * first user field present.
+ * <p>
+ * A 2xx response accepts the token, any other 4xx response rejects it (e.g. a check path the backend doesn't
+ * know makes every token invalid, it doesn't make the proxy unavailable); only a 5xx response or a failure to
+ * reach the backend make the check fail.
+ */
+public class SessionValidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionValidator.class);
+
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    static final String SUPERUSER = "SUPERUSER";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class Entry {
+        private final CompletableFuture<UserSession> result = new CompletableFuture<>();
+        private volatile long expires = Long.MAX_VALUE;
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final CloseableHttpClient client;
+    private final URI checkUrl;
+    private final String rolesField;
+    private final String superuserField;
+    private final List<String> userFields;
+    private volatile long ttl;
+    private volatile long negativeTtl;
+    private volatile int maxSize;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Histogram checkTime;
+
+    /**
+     * @param checkUrl    the backend url validating the tokens; null if there is no backend, so no token is valid
+     * @param ttl         how long a valid session is cached, in milliseconds
+     * @param negativeTtl how long a rejected token is cached, in milliseconds
+     * @param maxSize     the maximum number of cached tokens
+     * @param profile     the profile fields: the roles, the superuser flag and the user names
+     */
+    public SessionValidator(CloseableHttpClient client, URI checkUrl, long ttl, long negativeTtl, int maxSize,
+                            ProfileFields profile, MetricsRegistry metrics) {
+        this.client = client;
+        this.checkUrl = checkUrl;
+        this.rolesField = profile.roles;
+        this.superuserField = profile.superuser;
+        this.userFields = profile.users;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+
+        hits = metrics.counter("auth_cache_hits_total", "Session tokens found in the cache");
+        misses = metrics.counter("auth_cache_misses_total", "Session tokens validated by the backend");
+        checkTime = metrics.histogram("auth_check_seconds", "Time to validate a session token by the backend");
+        metrics.gauge("auth_cache_size", "Session tokens in the cache", entries::size);
+    }
+
+    /**
+     * Changes the cache settings at runtime; the tokens cached already keep their expiry time.
+     */
+    public void update(long ttl, long negativeTtl, int maxSize) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the user session, or null if the token is not valid
+     * @throws IOException if the token couldn't be validated, e.g. the backend is not available
+     */
+    public UserSession validate(String token) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(token);
+        if (entry != null && entry.expires <= now) {
+            entries.remove(token, entry);
+            entry = null;
+        }
+        if (entry != null) {
+            hits.inc();
+            return await(entry);
+        }
+
+        Entry created = new Entry();
+        entry = entries.putIfAbsent(token, created);
+        if (entry != null) {
+            hits.inc();
+            return await(entry);
+        }
+        misses.inc();
+        if (entries.size() > maxSize) {
+            evict(now);
+        }
+
+        UserSession session;
+        try {
+            session = check(token);
+        } catch (IOException | RuntimeException e) {
+            // failures are not cached; the next request asks the backend again
+            entries.remove(token, created);
+            created.result.completeExceptionally(e);
+            throw e;
+        }
+        created.expires = System.currentTimeMillis() + (session != null ? ttl : negativeTtl);
+        created.result.complete(session);
+        return session;
+    }
+
+    /**
+     * Looks the token up in the cache only, without asking the backend; for the callers which must not
+     * be able to make the proxy call the backend for every token they are given.
+     *
+     * @return the cached session, or null if the token isn't known to be valid
+     */
+    public UserSession peek(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null || entry.expires <= System.currentTimeMillis() || !entry.result.isDone()
+                || entry.result.isCompletedExceptionally()) {
+            return null;
+        }
+        return entry.result.getNow(null);
+    }
+
+    private static UserSession await(Entry entry) throws IOException {
+        try {
+            return entry.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the session check");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                    : new IOException("session check failed", e.getCause());
+        }
+    }
+
+    private UserSession check(String token) throws IOException {
+        if (checkUrl == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        HttpGet get = new HttpGet(checkUrl);
+        get.setHeader(SESSION_TOKEN_HEADER, token);
+        try (CloseableHttpResponse response = client.execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+                JsonNode profile = response.getEntity() == null ? null
+                        : mapper.readTree(response.getEntity().getContent());
+                return session(token, profile == null ? mapper.createObjectNode() : profile);
+            }
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                throw new IOException("session check failed with status " + status);
+            }
+            if (status != HttpStatus.SC_UNAUTHORIZED && status != HttpStatus.SC_FORBIDDEN) {
+                logger.warn("session check {} answered {}; the token is taken as invalid", checkUrl, status);
+            }
+            return null;
+        } finally {
+            checkTime.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    UserSession session(String token, JsonNode profile) {
+        Set<String> roles = new HashSet<>();
+        roles.add(UserSession.AUTHENTICATED);
+        for (JsonNode role : field(profile, rolesField)) {
+            roles.add(role.asText());
+        }
+        if (field(profile, superuserField).asBoolean(false)) {
+            roles.add(SUPERUSER);
+        }
+        for (String userField : userFields) {
+            JsonNode user = field(profile, userField);
+            if (!user.isMissingNode() && !user.isNull()) {
+                return new UserSession(token, user.asText(), roles);
+            }
+        }
+        return new UserSession(token, null, roles);
+    }
+
+    /**
+     * @param path a field name, or a dotted path of field names
+     * @return the field, a missing node if there is none
+     */
+    private static JsonNode field(JsonNode profile, String path) {
+        JsonNode node = profile;
+        for (String name : path.split("\\.")) {
+            node = node.path(name);
+        }
+        return node;
+    }
+
+    /**
+     * Drops the expired entries and, if the cache is still too large, arbitrary others.
+     */
+    private void evict(long now) {
+        expire(now);
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            if (it.next().result.isDone()) {
+                it.remove();
+            }
+        }
+        logger.debug("session cache evicted down to {} entries", entries.size());
+    }
+
+    /**
+     * Drops the expired entries.
+     *
+     * @return the number of entries dropped
+     */
+    public int expire() {
+        return expire(System.currentTimeMillis());
+    }
+
+    private int expire(long now) {
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.expires <= now);
+        return Math.max(before - entries.size(), 0);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionValidator{" +
+                "checkUrl=" + checkUrl +
+                ", size=" + entries.size() +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                '}';
+    }
+
+    /**
+     * The fields of the backend profile the user session is made of.
+     */
+    public static class ProfileFields {
+        private final String roles;
+        private final String superuser;
+        private final List<String> users;
+
+        public ProfileFields(String roles, String superuser, List<String> users) {
+            this.roles = roles;
+            this.superuser = superuser;
+            this.users = users;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.admission.AdmissionController;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Creates the admission controller shared by the proxy and the REST requests.
+ */
+class AdmissionControllerFactory implements Factory<AdmissionController> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControllerFactory.class);
+
+    @Override
+    public AdmissionController create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        AdmissionController admission = new AdmissionController(config.getAdmissionMaxRequests(),
+                config.getAdmissionMaxUploadBytes(), config.getAdmissionMaxWait(), AppContext.getMetrics(context));
+        AppContext.subscribe(context, (previous, current) -> {
+            if (current.getAdmissionMaxRequests() != previous.getAdmissionMaxRequests()
+                    || current.getAdmissionMaxUploadBytes() != previous.getAdmissionMaxUploadBytes()
+                    || current.getAdmissionMaxWait() != previous.getAdmissionMaxWait()) {
+                logger.info("admission limits changed: maxRequests={}, maxUploadBytes={}, maxWait={}",
+                        current.getAdmissionMaxRequests(), current.getAdmissionMaxUploadBytes(),
+                        current.getAdmissionMaxWait());
+                admission.update(current.getAdmissionMaxRequests(), current.getAdmissionMaxUploadBytes(),
+                        current.getAdmissionMaxWait());
+            }
+        });
+        return admission;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
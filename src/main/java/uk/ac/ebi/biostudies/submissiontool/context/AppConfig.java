@@ -18,6 +18,7 @@ package uk.ac.ebi.biostudies.submissiontool.context;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimiter;
 
 import javax.servlet.ServletContext;
 import java.io.IOException;
@@ -26,7 +27,15 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -38,6 +47,7 @@ public class AppConfig {
 
     private static class AppConfigBuilder {
         private final AppConfig config;
+        private final List<String> errors = new ArrayList<>();
 
         AppConfigBuilder() {
             this.config = new AppConfig();
@@ -51,6 +61,14 @@ public class AppConfig {
             cp.set(this, value);
         }
 
+        /**
+         * Malformed values are logged and ignored, so the default applies; a strict load fails on them.
+         */
+        void error(String message, Exception e) {
+            logger.error(message, e);
+            errors.add(message + " (" + e.getMessage() + ")");
+        }
+
         AppConfigBuilder setServerUrl(String value) {
             URI url = null;
             try {
@@ -58,7 +76,7 @@ public class AppConfig {
                     url = new URL(value).toURI();
                 }
             } catch (URISyntaxException | MalformedURLException e) {
-                logger.error("Malformed URL parameter in config", e);
+                error("Malformed URL parameter in config", e);
             }
             return setServerUrl(url);
         }
@@ -68,130 +86,1994 @@ public class AppConfig {
             return this;
         }
 
-        AppConfig build() {
-            return config;
+        AppConfigBuilder setMaxConnections(Integer value) {
+            config.maxConnections = value;
+            return this;
         }
-    }
 
-    enum ConfigProperty {
-        SERVER_URL("BS_SERVER_URL") {
-            @Override
-            void set(AppConfigBuilder builder, String value) {
-                builder.setServerUrl(value);
+        AppConfigBuilder setMaxConnectionsPerRoute(Integer value) {
+            config.maxConnectionsPerRoute = value;
+            return this;
+        }
+
+        AppConfigBuilder setConnectTimeout(Integer value) {
+            config.connectTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setSocketTimeout(Integer value) {
+            config.socketTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setConnectionRequestTimeout(Integer value) {
+            config.connectionRequestTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setIdleConnectionTimeout(Integer value) {
+            config.idleConnectionTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setKeepAliveTimeout(Integer value) {
+            config.keepAliveTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setBufferSize(Integer value) {
+            config.bufferSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setBufferPoolSize(Integer value) {
+            config.bufferPoolSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setStreamingUploads(Boolean value) {
+            config.streamingUploads = value;
+            return this;
+        }
+
+        AppConfigBuilder setAsyncEnabled(Boolean value) {
+            config.asyncEnabled = value;
+            return this;
+        }
+
+        AppConfigBuilder setAsyncThreads(Integer value) {
+            config.asyncThreads = value;
+            return this;
+        }
+
+        AppConfigBuilder setAsyncQueueSize(Integer value) {
+            config.asyncQueueSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setAsyncTimeout(Integer value) {
+            config.asyncTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setCacheSize(Integer value) {
+            config.cacheSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setCacheEntrySize(Integer value) {
+            config.cacheEntrySize = value;
+            return this;
+        }
+
+        AppConfigBuilder setCoalesceBodySize(Integer value) {
+            config.coalesceBodySize = value;
+            return this;
+        }
+
+        AppConfigBuilder setCoalesceMaxWait(Integer value) {
+            config.coalesceMaxWait = value;
+            return this;
+        }
+
+        AppConfigBuilder setCompressionEnabled(Boolean value) {
+            config.compressionEnabled = value;
+            return this;
+        }
+
+        AppConfigBuilder setCompressionMinSize(Integer value) {
+            config.compressionMinSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setCompressionTypes(List<String> value) {
+            config.compressionTypes = value;
+            return this;
+        }
+
+        AppConfigBuilder setBackends(String value) {
+            List<BackendConfig> backends = null;
+            try {
+                if (value != null && !value.trim().isEmpty()) {
+                    backends = BackendConfig.parse(value);
+                }
+            } catch (IllegalArgumentException e) {
+                error("Malformed backend list in config", e);
             }
-        };
+            return setBackends(backends);
+        }
 
-        private String name;
+        AppConfigBuilder setBackends(List<BackendConfig> value) {
+            config.backends = value;
+            return this;
+        }
 
-        ConfigProperty(String name) {
-            this.name = name;
+        AppConfigBuilder setBalancing(String value) {
+            config.balancing = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
         }
 
-        abstract void set(AppConfigBuilder builder, String value);
-    }
+        AppConfigBuilder setHealthCheckPath(String value) {
+            config.healthCheckPath = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
 
-    private static abstract class ConfigSource<T> {
-        private final T source;
+        AppConfigBuilder setHealthCheckInterval(Integer value) {
+            config.healthCheckInterval = value;
+            return this;
+        }
 
-        ConfigSource(T source) {
-            this.source = source;
+        AppConfigBuilder setOutlierFailures(Integer value) {
+            config.outlierFailures = value;
+            return this;
         }
 
-        String read(String name) {
-            return read(name, source);
+        AppConfigBuilder setOutlierEjectionTime(Integer value) {
+            config.outlierEjectionTime = value;
+            return this;
         }
 
-        abstract String read(String name, T source);
-    }
+        AppConfigBuilder setBreakerWindow(Integer value) {
+            config.breakerWindow = value;
+            return this;
+        }
 
-    private static class PropertiesConfigSource extends ConfigSource<Properties> {
+        AppConfigBuilder setBreakerMinCalls(Integer value) {
+            config.breakerMinCalls = value;
+            return this;
+        }
 
-        PropertiesConfigSource(Properties source) {
-            super(source);
+        AppConfigBuilder setBreakerFailureRate(Integer value) {
+            config.breakerFailureRate = value;
+            return this;
         }
 
-        @Override
-        public String read(String name, Properties source) {
-            String value = (String) source.get(name);
-            logger.debug("properties: " + name + "=" + value);
-            return value;
+        AppConfigBuilder setBreakerSlowCallTime(Integer value) {
+            config.breakerSlowCallTime = value;
+            return this;
         }
-    }
 
-    private static class ContextConfigSource extends ConfigSource<ServletContext> {
+        AppConfigBuilder setBreakerSlowCallRate(Integer value) {
+            config.breakerSlowCallRate = value;
+            return this;
+        }
 
-        ContextConfigSource(ServletContext source) {
-            super(source);
+        AppConfigBuilder setBreakerOpenTime(Integer value) {
+            config.breakerOpenTime = value;
+            return this;
         }
 
-        @Override
-        public String read(String name, ServletContext source) {
-            String value = source.getInitParameter(name);
-            logger.debug("context: " + name + "=" + value);
-            return value;
+        AppConfigBuilder setBreakerHalfOpenCalls(Integer value) {
+            config.breakerHalfOpenCalls = value;
+            return this;
         }
-    }
 
-    public static AppConfig loadConfig(ServletContext context) throws IOException {
-        logger.info("Loading from context...");
-        ContextConfigSource  configSource = new ContextConfigSource(context);
-        return buildConfig(configSource);
-    }
+        AppConfigBuilder setRetryAttempts(Integer value) {
+            config.retryAttempts = value;
+            return this;
+        }
 
-    public static AppConfig loadConfig(InputStream input) throws IOException {
-        logger.info("Loading from input stream...");
-        Properties props = new Properties();
-        if (input == null) {
-            throw new IOException("Config file not found");
+        AppConfigBuilder setRetryBackoff(Integer value) {
+            config.retryBackoff = value;
+            return this;
         }
-        props.load(input);
-        PropertiesConfigSource  configSource = new PropertiesConfigSource(props);
-        return buildConfig(configSource);
-    }
 
-    static <T extends ConfigSource> AppConfig buildConfig(T configSource) {
-        AppConfigBuilder builder = new AppConfigBuilder();
-        Stream.of(ConfigProperty.values())
-                .forEach(p -> {
-                    String value = configSource.read(p.name);
-                    builder.set(p, value);
-                });
-        return builder.build();
-    }
+        AppConfigBuilder setRetryDeletes(Boolean value) {
+            config.retryDeletes = value;
+            return this;
+        }
 
-    static AppConfig defaultConfig() throws IOException {
-        logger.info("Loading from classpath...");
-        URL configURL = AppConfig.class.getClassLoader().getResource("/config.properties");
-        logger.info("Config URL: " + configURL);
-        return loadConfig(configURL == null ? null : configURL.openStream());
-    }
+        AppConfigBuilder setRetryBudget(Integer value) {
+            config.retryBudget = value;
+            return this;
+        }
 
-    private AppConfig parent;
+        AppConfigBuilder setHedgeEnabled(Boolean value) {
+            config.hedgeEnabled = value;
+            return this;
+        }
 
-    private URI serverUrl;
+        AppConfigBuilder setHedgeMinDelay(Integer value) {
+            config.hedgeMinDelay = value;
+            return this;
+        }
 
-    private AppConfig() {
-    }
+        AppConfigBuilder setHedgeThreads(Integer value) {
+            config.hedgeThreads = value;
+            return this;
+        }
 
-    private AppConfig(AppConfig parent) {
-        this.parent = parent;
-    }
+        AppConfigBuilder setStrippedCookies(List<String> value) {
+            config.strippedCookies = value;
+            return this;
+        }
 
-    public URI getServerUrl() {
-        return serverUrl == null ? getServerUrl(parent) : serverUrl;
-    }
+        AppConfigBuilder setUploadDir(String value) {
+            config.uploadDir = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
 
-    private URI getServerUrl(AppConfig parent) {
-        return parent == null ? null : parent.getServerUrl();
-    }
+        AppConfigBuilder setUploadMaxSize(Long value) {
+            config.uploadMaxSize = value;
+            return this;
+        }
 
-    private void setServerUrl(URI serverUrl) {
-        this.serverUrl = serverUrl;
+        AppConfigBuilder setUploadMaxPerUser(Integer value) {
+            config.uploadMaxPerUser = value;
+            return this;
+        }
+
+        AppConfigBuilder setUploadMaxUserSize(Long value) {
+            config.uploadMaxUserSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setUploadExpiration(Integer value) {
+            config.uploadExpiration = value;
+            return this;
+        }
+
+        AppConfigBuilder setUploadForwardPath(String value) {
+            config.uploadForwardPath = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setUploadForwardThreads(Integer value) {
+            config.uploadForwardThreads = value;
+            return this;
+        }
+
+        AppConfigBuilder setStoreDir(String value) {
+            config.storeDir = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setStoreFsync(String value) {
+            config.storeFsync = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setAdmissionMaxRequests(Integer value) {
+            config.admissionMaxRequests = value;
+            return this;
+        }
+
+        AppConfigBuilder setAdmissionMaxUploadBytes(Long value) {
+            config.admissionMaxUploadBytes = value;
+            return this;
+        }
+
+        AppConfigBuilder setAdmissionMaxWait(Integer value) {
+            config.admissionMaxWait = value;
+            return this;
+        }
+
+        AppConfigBuilder setAdmissionRetryAfter(Integer value) {
+            config.admissionRetryAfter = value;
+            return this;
+        }
+
+        AppConfigBuilder setRateLimits(String value) {
+            config.rateLimits = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setTrustedProxies(List<String> value) {
+            config.trustedProxies = value;
+            return this;
+        }
+
+        AppConfigBuilder setAuthMode(String value) {
+            config.authMode = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setAuthCheckPath(String value) {
+            config.authCheckPath = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setAuthRolesField(String value) {
+            config.authRolesField = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setAuthSuperuserField(String value) {
+            config.authSuperuserField = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setAuthUserFields(List<String> value) {
+            config.authUserFields = value;
+            return this;
+        }
+
+        AppConfigBuilder setAuthCacheTtl(Long value) {
+            config.authCacheTtl = value;
+            return this;
+        }
+
+        AppConfigBuilder setAuthNegativeTtl(Long value) {
+            config.authNegativeTtl = value;
+            return this;
+        }
+
+        AppConfigBuilder setAuthCacheSize(Integer value) {
+            config.authCacheSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setRestThreads(Integer value) {
+            config.restThreads = value;
+            return this;
+        }
+
+        AppConfigBuilder setRestQueueSize(Integer value) {
+            config.restQueueSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setRestTimeout(Long value) {
+            config.restTimeout = value;
+            return this;
+        }
+
+        AppConfigBuilder setRestClientMaxConnections(Integer value) {
+            config.restClientMaxConnections = value;
+            return this;
+        }
+
+        AppConfigBuilder setMetricsAddresses(List<String> value) {
+            config.metricsAddresses = value;
+            return this;
+        }
+
+        AppConfigBuilder setVirtualThreads(Boolean value) {
+            config.virtualThreads = value;
+            return this;
+        }
+
+        AppConfigBuilder setBatchMaxItems(Integer value) {
+            config.batchMaxItems = value;
+            return this;
+        }
+
+        AppConfigBuilder setBatchParallelism(Integer value) {
+            config.batchParallelism = value;
+            return this;
+        }
+
+        AppConfigBuilder setBatchMaxItemSize(Integer value) {
+            config.batchMaxItemSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setAssetCacheSize(Long value) {
+            config.assetCacheSize = value;
+            return this;
+        }
+
+        AppConfigBuilder setAssetCacheEntrySize(Integer value) {
+            config.assetCacheEntrySize = value;
+            return this;
+        }
+
+        AppConfigBuilder setConfigFile(String value) {
+            config.configFile = value == null || value.trim().isEmpty() ? null : value.trim();
+            return this;
+        }
+
+        AppConfigBuilder setConfigReloadInterval(Integer value) {
+            config.configReloadInterval = value;
+            return this;
+        }
+
+        AppConfigBuilder setRoutes(String value) {
+            List<RouteConfig> routes = null;
+            try {
+                if (value != null && !value.trim().isEmpty()) {
+                    routes = RouteConfig.parse(value);
+                }
+            } catch (IllegalArgumentException e) {
+                error("Malformed route table in config", e);
+            }
+            return setRoutes(routes);
+        }
+
+        AppConfigBuilder setRoutes(List<RouteConfig> value) {
+            config.routes = value;
+            return this;
+        }
+
+        AppConfig build() {
+            return config;
+        }
+    }
+
+    enum ConfigProperty {
+        SERVER_URL("BS_SERVER_URL") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setServerUrl(value);
+            }
+        },
+        MAX_CONNECTIONS("PROXY_MAX_CONNECTIONS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setMaxConnections(asInteger(builder, value));
+            }
+        },
+        MAX_CONNECTIONS_PER_ROUTE("PROXY_MAX_CONNECTIONS_PER_ROUTE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setMaxConnectionsPerRoute(asInteger(builder, value));
+            }
+        },
+        CONNECT_TIMEOUT("PROXY_CONNECT_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setConnectTimeout(asInteger(builder, value));
+            }
+        },
+        SOCKET_TIMEOUT("PROXY_SOCKET_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setSocketTimeout(asInteger(builder, value));
+            }
+        },
+        CONNECTION_REQUEST_TIMEOUT("PROXY_CONNECTION_REQUEST_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setConnectionRequestTimeout(asInteger(builder, value));
+            }
+        },
+        IDLE_CONNECTION_TIMEOUT("PROXY_IDLE_CONNECTION_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setIdleConnectionTimeout(asInteger(builder, value));
+            }
+        },
+        KEEP_ALIVE_TIMEOUT("PROXY_KEEP_ALIVE_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setKeepAliveTimeout(asInteger(builder, value));
+            }
+        },
+        BUFFER_SIZE("PROXY_BUFFER_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBufferSize(asInteger(builder, value));
+            }
+        },
+        BUFFER_POOL_SIZE("PROXY_BUFFER_POOL_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBufferPoolSize(asInteger(builder, value));
+            }
+        },
+        STREAMING_UPLOADS("PROXY_STREAMING_UPLOADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setStreamingUploads(asBoolean(value));
+            }
+        },
+        ASYNC_ENABLED("PROXY_ASYNC_ENABLED") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAsyncEnabled(asBoolean(value));
+            }
+        },
+        ASYNC_THREADS("PROXY_ASYNC_THREADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAsyncThreads(asInteger(builder, value));
+            }
+        },
+        ASYNC_QUEUE_SIZE("PROXY_ASYNC_QUEUE_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAsyncQueueSize(asInteger(builder, value));
+            }
+        },
+        ASYNC_TIMEOUT("PROXY_ASYNC_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAsyncTimeout(asInteger(builder, value));
+            }
+        },
+        CACHE_SIZE("PROXY_CACHE_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCacheSize(asInteger(builder, value));
+            }
+        },
+        CACHE_ENTRY_SIZE("PROXY_CACHE_ENTRY_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCacheEntrySize(asInteger(builder, value));
+            }
+        },
+        COALESCE_BODY_SIZE("PROXY_COALESCE_BODY_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCoalesceBodySize(asInteger(builder, value));
+            }
+        },
+        COALESCE_MAX_WAIT("PROXY_COALESCE_MAX_WAIT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCoalesceMaxWait(asInteger(builder, value));
+            }
+        },
+        COMPRESSION_ENABLED("PROXY_COMPRESSION_ENABLED") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCompressionEnabled(asBoolean(value));
+            }
+        },
+        COMPRESSION_MIN_SIZE("PROXY_COMPRESSION_MIN_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCompressionMinSize(asInteger(builder, value));
+            }
+        },
+        COMPRESSION_TYPES("PROXY_COMPRESSION_TYPES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setCompressionTypes(asList(value));
+            }
+        },
+        BACKENDS("PROXY_BACKENDS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBackends(value);
+            }
+        },
+        BALANCING("PROXY_BALANCING") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBalancing(value);
+            }
+        },
+        HEALTH_CHECK_PATH("PROXY_HEALTH_CHECK_PATH") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setHealthCheckPath(value);
+            }
+        },
+        HEALTH_CHECK_INTERVAL("PROXY_HEALTH_CHECK_INTERVAL") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setHealthCheckInterval(asInteger(builder, value));
+            }
+        },
+        OUTLIER_FAILURES("PROXY_OUTLIER_FAILURES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setOutlierFailures(asInteger(builder, value));
+            }
+        },
+        OUTLIER_EJECTION_TIME("PROXY_OUTLIER_EJECTION_TIME") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setOutlierEjectionTime(asInteger(builder, value));
+            }
+        },
+        BREAKER_WINDOW("PROXY_BREAKER_WINDOW") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerWindow(asInteger(builder, value));
+            }
+        },
+        BREAKER_MIN_CALLS("PROXY_BREAKER_MIN_CALLS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerMinCalls(asInteger(builder, value));
+            }
+        },
+        BREAKER_FAILURE_RATE("PROXY_BREAKER_FAILURE_RATE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerFailureRate(asInteger(builder, value));
+            }
+        },
+        BREAKER_SLOW_CALL_TIME("PROXY_BREAKER_SLOW_CALL_TIME") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerSlowCallTime(asInteger(builder, value));
+            }
+        },
+        BREAKER_SLOW_CALL_RATE("PROXY_BREAKER_SLOW_CALL_RATE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerSlowCallRate(asInteger(builder, value));
+            }
+        },
+        BREAKER_OPEN_TIME("PROXY_BREAKER_OPEN_TIME") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerOpenTime(asInteger(builder, value));
+            }
+        },
+        BREAKER_HALF_OPEN_CALLS("PROXY_BREAKER_HALF_OPEN_CALLS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBreakerHalfOpenCalls(asInteger(builder, value));
+            }
+        },
+        RETRY_ATTEMPTS("PROXY_RETRY_ATTEMPTS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRetryAttempts(asInteger(builder, value));
+            }
+        },
+        RETRY_BACKOFF("PROXY_RETRY_BACKOFF") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRetryBackoff(asInteger(builder, value));
+            }
+        },
+        RETRY_DELETES("PROXY_RETRY_DELETES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRetryDeletes(asBoolean(value));
+            }
+        },
+        RETRY_BUDGET("PROXY_RETRY_BUDGET") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRetryBudget(asInteger(builder, value));
+            }
+        },
+        HEDGE_ENABLED("PROXY_HEDGE_ENABLED") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setHedgeEnabled(asBoolean(value));
+            }
+        },
+        HEDGE_MIN_DELAY("PROXY_HEDGE_MIN_DELAY") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setHedgeMinDelay(asInteger(builder, value));
+            }
+        },
+        HEDGE_THREADS("PROXY_HEDGE_THREADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setHedgeThreads(asInteger(builder, value));
+            }
+        },
+        STRIPPED_COOKIES("PROXY_STRIPPED_COOKIES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setStrippedCookies(asList(value));
+            }
+        },
+        UPLOAD_DIR("PROXY_UPLOAD_DIR") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadDir(value);
+            }
+        },
+        UPLOAD_MAX_SIZE("PROXY_UPLOAD_MAX_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadMaxSize(asLong(builder, value));
+            }
+        },
+        UPLOAD_MAX_PER_USER("PROXY_UPLOAD_MAX_PER_USER") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadMaxPerUser(asInteger(builder, value));
+            }
+        },
+        UPLOAD_MAX_USER_SIZE("PROXY_UPLOAD_MAX_USER_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadMaxUserSize(asLong(builder, value));
+            }
+        },
+        UPLOAD_EXPIRATION("PROXY_UPLOAD_EXPIRATION") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadExpiration(asInteger(builder, value));
+            }
+        },
+        UPLOAD_FORWARD_PATH("PROXY_UPLOAD_FORWARD_PATH") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadForwardPath(value);
+            }
+        },
+        UPLOAD_FORWARD_THREADS("PROXY_UPLOAD_FORWARD_THREADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setUploadForwardThreads(asInteger(builder, value));
+            }
+        },
+        STORE_DIR("PROXY_STORE_DIR") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setStoreDir(value);
+            }
+        },
+        STORE_FSYNC("PROXY_STORE_FSYNC") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setStoreFsync(value);
+            }
+        },
+        ADMISSION_MAX_REQUESTS("PROXY_ADMISSION_MAX_REQUESTS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAdmissionMaxRequests(asInteger(builder, value));
+            }
+        },
+        ADMISSION_MAX_UPLOAD_BYTES("PROXY_ADMISSION_MAX_UPLOAD_BYTES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAdmissionMaxUploadBytes(asLong(builder, value));
+            }
+        },
+        ADMISSION_MAX_WAIT("PROXY_ADMISSION_MAX_WAIT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAdmissionMaxWait(asInteger(builder, value));
+            }
+        },
+        ADMISSION_RETRY_AFTER("PROXY_ADMISSION_RETRY_AFTER") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAdmissionRetryAfter(asInteger(builder, value));
+            }
+        },
+        RATE_LIMITS("PROXY_RATE_LIMITS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRateLimits(value);
+            }
+        },
+        TRUSTED_PROXIES("PROXY_TRUSTED_PROXIES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setTrustedProxies(asList(value));
+            }
+        },
+        AUTH_MODE("PROXY_AUTH_MODE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthMode(value);
+            }
+        },
+        AUTH_CHECK_PATH("PROXY_AUTH_CHECK_PATH") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthCheckPath(value);
+            }
+        },
+        AUTH_ROLES_FIELD("PROXY_AUTH_ROLES_FIELD") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthRolesField(value);
+            }
+        },
+        AUTH_SUPERUSER_FIELD("PROXY_AUTH_SUPERUSER_FIELD") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthSuperuserField(value);
+            }
+        },
+        AUTH_USER_FIELDS("PROXY_AUTH_USER_FIELDS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthUserFields(asList(value));
+            }
+        },
+        AUTH_CACHE_TTL("PROXY_AUTH_CACHE_TTL") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthCacheTtl(asLong(builder, value));
+            }
+        },
+        AUTH_NEGATIVE_TTL("PROXY_AUTH_NEGATIVE_TTL") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthNegativeTtl(asLong(builder, value));
+            }
+        },
+        AUTH_CACHE_SIZE("PROXY_AUTH_CACHE_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAuthCacheSize(asInteger(builder, value));
+            }
+        },
+        REST_THREADS("PROXY_REST_THREADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRestThreads(asInteger(builder, value));
+            }
+        },
+        REST_QUEUE_SIZE("PROXY_REST_QUEUE_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRestQueueSize(asInteger(builder, value));
+            }
+        },
+        REST_TIMEOUT("PROXY_REST_TIMEOUT") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRestTimeout(asLong(builder, value));
+            }
+        },
+        REST_CLIENT_MAX_CONNECTIONS("PROXY_REST_CLIENT_MAX_CONNECTIONS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRestClientMaxConnections(asInteger(builder, value));
+            }
+        },
+        METRICS_ADDRESSES("PROXY_METRICS_ADDRESSES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setMetricsAddresses(asList(value));
+            }
+        },
+        VIRTUAL_THREADS("PROXY_VIRTUAL_THREADS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setVirtualThreads(asBoolean(value));
+            }
+        },
+        BATCH_MAX_ITEMS("PROXY_BATCH_MAX_ITEMS") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBatchMaxItems(asInteger(builder, value));
+            }
+        },
+        BATCH_PARALLELISM("PROXY_BATCH_PARALLELISM") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBatchParallelism(asInteger(builder, value));
+            }
+        },
+        BATCH_MAX_ITEM_SIZE("PROXY_BATCH_MAX_ITEM_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setBatchMaxItemSize(asInteger(builder, value));
+            }
+        },
+        ASSET_CACHE_SIZE("PROXY_ASSET_CACHE_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAssetCacheSize(asLong(builder, value));
+            }
+        },
+        ASSET_CACHE_ENTRY_SIZE("PROXY_ASSET_CACHE_ENTRY_SIZE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setAssetCacheEntrySize(asInteger(builder, value));
+            }
+        },
+        CONFIG_FILE("PROXY_CONFIG_FILE") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setConfigFile(value);
+            }
+        },
+        CONFIG_RELOAD_INTERVAL("PROXY_CONFIG_RELOAD_INTERVAL") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setConfigReloadInterval(asInteger(builder, value));
+            }
+        },
+        ROUTES("PROXY_ROUTES") {
+            @Override
+            void set(AppConfigBuilder builder, String value) {
+                builder.setRoutes(value);
+            }
+        };
+
+        private String name;
+
+        ConfigProperty(String name) {
+            this.name = name;
+        }
+
+        abstract void set(AppConfigBuilder builder, String value);
+
+        Integer asInteger(AppConfigBuilder builder, String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                return Integer.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                builder.error("Malformed integer parameter in config: " + name + "=" + value, e);
+                return null;
+            }
+        }
+
+        Long asLong(AppConfigBuilder builder, String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                return Long.valueOf(value.trim());
+            } catch (NumberFormatException e) {
+                builder.error("Malformed long parameter in config: " + name + "=" + value, e);
+                return null;
+            }
+        }
+
+        Boolean asBoolean(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return null;
+            }
+            return Boolean.valueOf(value.trim());
+        }
+
+        List<String> asList(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return null;
+            }
+            return Stream.of(value.split(","))
+                    .map(String::trim)
+                    .filter(v -> !v.isEmpty())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static abstract class ConfigSource<T> {
+        private final T source;
+
+        ConfigSource(T source) {
+            this.source = source;
+        }
+
+        String read(String name) {
+            return read(name, source);
+        }
+
+        abstract String read(String name, T source);
+    }
+
+    private static class PropertiesConfigSource extends ConfigSource<Properties> {
+
+        PropertiesConfigSource(Properties source) {
+            super(source);
+        }
+
+        @Override
+        public String read(String name, Properties source) {
+            String value = (String) source.get(name);
+            logger.debug("properties: " + name + "=" + value);
+            return value;
+        }
+    }
+
+    private static class ContextConfigSource extends ConfigSource<ServletContext> {
+
+        ContextConfigSource(ServletContext source) {
+            super(source);
+        }
+
+        @Override
+        public String read(String name, ServletContext source) {
+            String value = source.getInitParameter(name);
+            logger.debug("context: " + name + "=" + value);
+            return value;
+        }
+    }
+
+    public static AppConfig loadConfig(ServletContext context) throws IOException {
+        logger.info("Loading from context...");
+        ContextConfigSource  configSource = new ContextConfigSource(context);
+        return buildConfig(configSource);
+    }
+
+    public static AppConfig loadConfig(InputStream input) throws IOException {
+        logger.info("Loading from input stream...");
+        Properties props = new Properties();
+        if (input == null) {
+            throw new IOException("Config file not found");
+        }
+        props.load(input);
+        PropertiesConfigSource  configSource = new PropertiesConfigSource(props);
+        return buildConfig(configSource);
+    }
+
+    /**
+     * Loads the external config file strictly: an unknown parameter or a malformed value fails the whole file,
+     * instead of being ignored.
+     *
+     * @throws IllegalArgumentException listing the unknown and malformed parameters
+     */
+    public static AppConfig loadConfig(Path file) throws IOException {
+        logger.info("Loading from file {}...", file);
+        Properties props = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            props.load(input);
+        }
+        AppConfigBuilder builder = read(new PropertiesConfigSource(props));
+        Set<String> known = Stream.of(ConfigProperty.values()).map(p -> p.name).collect(Collectors.toSet());
+        props.stringPropertyNames().stream()
+                .filter(name -> !known.contains(name))
+                .forEach(name -> builder.errors.add("Unknown parameter in config: " + name));
+        if (!builder.errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", builder.errors));
+        }
+        return builder.build();
+    }
+
+    static <T extends ConfigSource> AppConfig buildConfig(T configSource) {
+        return read(configSource).build();
+    }
+
+    private static <T extends ConfigSource> AppConfigBuilder read(T configSource) {
+        AppConfigBuilder builder = new AppConfigBuilder();
+        Stream.of(ConfigProperty.values())
+                .forEach(p -> {
+                    String value = configSource.read(p.name);
+                    builder.set(p, value);
+                });
+        return builder;
+    }
+
+    static AppConfig defaultConfig() throws IOException {
+        logger.info("Loading from classpath...");
+        URL configURL = AppConfig.class.getClassLoader().getResource("/config.properties");
+        logger.info("Config URL: " + configURL);
+        return loadConfig(configURL == null ? null : configURL.openStream());
+    }
+
+    private AppConfig parent;
+
+    private URI serverUrl;
+
+    private Integer maxConnections;
+
+    private Integer maxConnectionsPerRoute;
+
+    private Integer connectTimeout;
+
+    private Integer socketTimeout;
+
+    private Integer connectionRequestTimeout;
+
+    private Integer idleConnectionTimeout;
+
+    private Integer keepAliveTimeout;
+
+    private Integer bufferSize;
+
+    private Integer bufferPoolSize;
+
+    private Boolean streamingUploads;
+
+    private Boolean asyncEnabled;
+
+    private Integer asyncThreads;
+
+    private Integer asyncQueueSize;
+
+    private Integer asyncTimeout;
+
+    private Integer cacheSize;
+
+    private Integer cacheEntrySize;
+
+    private Integer coalesceBodySize;
+
+    private Integer coalesceMaxWait;
+
+    private Boolean compressionEnabled;
+
+    private Integer compressionMinSize;
+
+    private List<String> compressionTypes;
+
+    private List<BackendConfig> backends;
+
+    private String balancing;
+
+    private String healthCheckPath;
+
+    private Integer healthCheckInterval;
+
+    private Integer outlierFailures;
+
+    private Integer outlierEjectionTime;
+
+    private Integer breakerWindow;
+
+    private Integer breakerMinCalls;
+
+    private Integer breakerFailureRate;
+
+    private Integer breakerSlowCallTime;
+
+    private Integer breakerSlowCallRate;
+
+    private Integer breakerOpenTime;
+
+    private Integer breakerHalfOpenCalls;
+
+    private Integer retryAttempts;
+
+    private Integer retryBackoff;
+
+    private Boolean retryDeletes;
+
+    private Integer retryBudget;
+
+    private Boolean hedgeEnabled;
+
+    private Integer hedgeMinDelay;
+
+    private Integer hedgeThreads;
+
+    private List<String> strippedCookies;
+
+    private String uploadDir;
+
+    private Long uploadMaxSize;
+
+    private Integer uploadMaxPerUser;
+
+    private Long uploadMaxUserSize;
+
+    private Integer uploadExpiration;
+
+    private String uploadForwardPath;
+
+    private Integer uploadForwardThreads;
+
+    private String storeDir;
+
+    private String storeFsync;
+
+    private Integer admissionMaxRequests;
+
+    private Long admissionMaxUploadBytes;
+
+    private Integer admissionMaxWait;
+
+    private Integer admissionRetryAfter;
+
+    private String rateLimits;
+
+    private List<String> trustedProxies;
+
+    private String authMode;
+
+    private String authCheckPath;
+
+    private String authRolesField;
+
+    private String authSuperuserField;
+
+    private List<String> authUserFields;
+
+    private Long authCacheTtl;
+
+    private Long authNegativeTtl;
+
+    private Integer authCacheSize;
+
+    private Integer restThreads;
+
+    private Integer restQueueSize;
+
+    private Long restTimeout;
+
+    private Integer restClientMaxConnections;
+
+    private List<String> metricsAddresses;
+
+    private Boolean virtualThreads;
+
+    private Integer batchMaxItems;
+
+    private Integer batchParallelism;
+
+    private Integer batchMaxItemSize;
+
+    private Long assetCacheSize;
+
+    private Integer assetCacheEntrySize;
+
+    private String configFile;
+
+    private Integer configReloadInterval;
+
+    private List<RouteConfig> routes;
+
+    private AppConfig() {
+    }
+
+    private AppConfig(AppConfig parent) {
+        this.parent = parent;
+    }
+
+    public URI getServerUrl() {
+        return serverUrl == null ? getServerUrl(parent) : serverUrl;
+    }
+
+    private URI getServerUrl(AppConfig parent) {
+        return parent == null ? null : parent.getServerUrl();
+    }
+
+    /**
+     * @return the backend url of the path, or null if there is no backend url configured
+     */
+    public URI getServerUrl(String path) {
+        URI serverUrl = getServerUrl();
+        if (serverUrl == null) {
+            return null;
+        }
+        String url = serverUrl.toString();
+        return URI.create((url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                + (path.startsWith("/") ? path : "/" + path));
+    }
+
+    private void setServerUrl(URI serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * @return the maximum number of pooled connections to the backend
+     */
+    public int getMaxConnections() {
+        return maxConnections != null ? maxConnections : parent != null ? parent.getMaxConnections() : 200;
+    }
+
+    /**
+     * @return the maximum number of pooled connections per backend host
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute != null ? maxConnectionsPerRoute :
+                parent != null ? parent.getMaxConnectionsPerRoute() : 50;
+    }
+
+    /**
+     * @return the backend connect timeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return connectTimeout != null ? connectTimeout : parent != null ? parent.getConnectTimeout() : 5000;
+    }
+
+    /**
+     * @return the backend socket (inactivity) timeout in milliseconds; 0 means no timeout
+     */
+    public int getSocketTimeout() {
+        return socketTimeout != null ? socketTimeout : parent != null ? parent.getSocketTimeout() : 0;
+    }
+
+    /**
+     * @return how long to wait for a free pooled connection in milliseconds
+     */
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout != null ? connectionRequestTimeout :
+                parent != null ? parent.getConnectionRequestTimeout() : 10000;
+    }
+
+    /**
+     * @return how long a pooled connection may stay idle before it is evicted, in milliseconds
+     */
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout != null ? idleConnectionTimeout :
+                parent != null ? parent.getIdleConnectionTimeout() : 30000;
+    }
+
+    /**
+     * @return keep-alive duration in milliseconds used when the backend doesn't send a Keep-Alive header
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout != null ? keepAliveTimeout : parent != null ? parent.getKeepAliveTimeout() : 30000;
+    }
+
+    /**
+     * @return the size in bytes of the buffers used to stream bodies through the proxy
+     */
+    public int getBufferSize() {
+        return bufferSize != null ? bufferSize : parent != null ? parent.getBufferSize() : 64 * 1024;
+    }
+
+    /**
+     * @return the maximum number of idle stream buffers kept for reuse
+     */
+    public int getBufferPoolSize() {
+        return bufferPoolSize != null ? bufferPoolSize : parent != null ? parent.getBufferPoolSize() : 64;
+    }
+
+    /**
+     * @return true if multipart uploads are streamed to the backend part by part instead of being parsed first
+     */
+    public boolean isStreamingUploads() {
+        return streamingUploads != null ? streamingUploads : parent == null || parent.isStreamingUploads();
+    }
+
+    /**
+     * @return true if proxied requests are handed off to the proxy executor, releasing the container thread
+     */
+    public boolean isAsyncEnabled() {
+        return asyncEnabled != null ? asyncEnabled : parent != null && parent.isAsyncEnabled();
+    }
+
+    /**
+     * @return the maximum number of threads running proxied exchanges in async mode
+     */
+    public int getAsyncThreads() {
+        return asyncThreads != null ? asyncThreads : parent != null ? parent.getAsyncThreads() : 200;
+    }
+
+    /**
+     * @return how many proxied requests may wait for a free thread in async mode
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize != null ? asyncQueueSize : parent != null ? parent.getAsyncQueueSize() : 1000;
+    }
+
+    /**
+     * @return the async request timeout in milliseconds, after which the backend request is aborted; 0 (the
+     * default) means no timeout. The timeout covers the whole exchange, so it cuts off any download or upload
+     * taking longer; a stuck backend is better caught by PROXY_SOCKET_TIMEOUT, which applies to each read
+     */
+    public int getAsyncTimeout() {
+        return asyncTimeout != null ? asyncTimeout : parent != null ? parent.getAsyncTimeout() : 0;
+    }
+
+    /**
+     * @return the maximum total size in bytes of the cached GET response bodies; 0 disables the cache
+     */
+    public int getCacheSize() {
+        return cacheSize != null ? cacheSize : parent != null ? parent.getCacheSize() : 0;
+    }
+
+    /**
+     * @return the maximum size in bytes of a single cached response body
+     */
+    public int getCacheEntrySize() {
+        return cacheEntrySize != null ? cacheEntrySize : parent != null ? parent.getCacheEntrySize() : 1024 * 1024;
+    }
+
+    /**
+     * @return the maximum size in bytes of a response shared between identical concurrent GETs;
+     * 0 disables request coalescing
+     */
+    public int getCoalesceBodySize() {
+        return coalesceBodySize != null ? coalesceBodySize :
+                parent != null ? parent.getCoalesceBodySize() : 1024 * 1024;
+    }
+
+    /**
+     * @return how long a request waits for the response of an identical in-flight one before it goes to the backend
+     * on its own, in milliseconds
+     */
+    public int getCoalesceMaxWait() {
+        return coalesceMaxWait != null ? coalesceMaxWait : parent != null ? parent.getCoalesceMaxWait() : 10000;
+    }
+
+    /**
+     * @return true if the proxy gzips uncompressed backend responses for clients accepting gzip
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled != null ? compressionEnabled : parent == null || parent.isCompressionEnabled();
+    }
+
+    /**
+     * @return the minimum response size in bytes worth compressing
+     */
+    public int getCompressionMinSize() {
+        return compressionMinSize != null ? compressionMinSize :
+                parent != null ? parent.getCompressionMinSize() : 1024;
+    }
+
+    /**
+     * @return the content (mime) types the proxy compresses
+     */
+    public List<String> getCompressionTypes() {
+        return compressionTypes != null ? compressionTypes :
+                parent != null ? parent.getCompressionTypes() : Collections.singletonList("application/json");
+    }
+
+    /**
+     * @return the backend nodes the proxy balances between by default; when not given, the server url
+     */
+    public List<BackendConfig> getBackends() {
+        List<BackendConfig> declared = getDeclaredBackends();
+        if (declared != null) {
+            return declared;
+        }
+        URI url = getServerUrl();
+        return url == null ? null : Collections.singletonList(new BackendConfig(url, 1));
+    }
+
+    private List<BackendConfig> getDeclaredBackends() {
+        return backends != null ? backends : parent != null ? parent.getDeclaredBackends() : null;
+    }
+
+    /**
+     * @return the default load balancing strategy: least-outstanding, round-robin or consistent-hash
+     */
+    public String getBalancing() {
+        return balancing != null ? balancing : parent != null ? parent.getBalancing() : "least-outstanding";
+    }
+
+    /**
+     * @return the path (relative to a backend node's url) probed by the active health checks
+     */
+    public String getHealthCheckPath() {
+        return healthCheckPath != null ? healthCheckPath : parent != null ? parent.getHealthCheckPath() : "/";
+    }
+
+    /**
+     * @return the interval of the active health checks in milliseconds; 0 disables them
+     */
+    public int getHealthCheckInterval() {
+        return healthCheckInterval != null ? healthCheckInterval :
+                parent != null ? parent.getHealthCheckInterval() : 10000;
+    }
+
+    /**
+     * @return the number of consecutive failures after which a backend node is ejected; 0 disables ejection
+     */
+    public int getOutlierFailures() {
+        return outlierFailures != null ? outlierFailures : parent != null ? parent.getOutlierFailures() : 5;
+    }
+
+    /**
+     * @return how long an ejected backend node gets no requests, in milliseconds
+     */
+    public int getOutlierEjectionTime() {
+        return outlierEjectionTime != null ? outlierEjectionTime :
+                parent != null ? parent.getOutlierEjectionTime() : 30000;
+    }
+
+    /**
+     * @return the number of recent calls to a backend node the circuit breaker judges by; 0 disables the breaker
+     */
+    public int getBreakerWindow() {
+        return breakerWindow != null ? breakerWindow : parent != null ? parent.getBreakerWindow() : 50;
+    }
+
+    /**
+     * @return the minimum number of recorded calls before the circuit breaker may open
+     */
+    public int getBreakerMinCalls() {
+        return breakerMinCalls != null ? breakerMinCalls : parent != null ? parent.getBreakerMinCalls() : 20;
+    }
+
+    /**
+     * @return the percentage of failed calls at which the circuit breaker opens
+     */
+    public int getBreakerFailureRate() {
+        return breakerFailureRate != null ? breakerFailureRate : parent != null ? parent.getBreakerFailureRate() : 50;
+    }
+
+    /**
+     * @return the time in milliseconds to the response after which a call counts as slow;
+     * 0 disables slow call detection
+     */
+    public int getBreakerSlowCallTime() {
+        return breakerSlowCallTime != null ? breakerSlowCallTime :
+                parent != null ? parent.getBreakerSlowCallTime() : 10000;
+    }
+
+    /**
+     * @return the percentage of slow calls at which the circuit breaker opens
+     */
+    public int getBreakerSlowCallRate() {
+        return breakerSlowCallRate != null ? breakerSlowCallRate :
+                parent != null ? parent.getBreakerSlowCallRate() : 80;
+    }
+
+    /**
+     * @return how long an open circuit breaker rejects calls before letting probes through, in milliseconds
+     */
+    public int getBreakerOpenTime() {
+        return breakerOpenTime != null ? breakerOpenTime : parent != null ? parent.getBreakerOpenTime() : 30000;
+    }
+
+    /**
+     * @return the number of probe calls which must succeed to close a half-open circuit breaker
+     */
+    public int getBreakerHalfOpenCalls() {
+        return breakerHalfOpenCalls != null ? breakerHalfOpenCalls :
+                parent != null ? parent.getBreakerHalfOpenCalls() : 3;
+    }
+
+    /**
+     * @return the number of times an idempotent request is retried after a connect failure; 0 disables retries
+     */
+    public int getRetryAttempts() {
+        return retryAttempts != null ? retryAttempts : parent != null ? parent.getRetryAttempts() : 2;
+    }
+
+    /**
+     * @return the base delay in milliseconds of the jittered exponential backoff between retries
+     */
+    public int getRetryBackoff() {
+        return retryBackoff != null ? retryBackoff : parent != null ? parent.getRetryBackoff() : 50;
+    }
+
+    /**
+     * @return true if DELETE requests are retried along with GETs
+     */
+    public boolean isRetryDeletes() {
+        return retryDeletes != null ? retryDeletes : parent != null && parent.isRetryDeletes();
+    }
+
+    /**
+     * @return the percentage of requests which may be retried or hedged on top of the normal load
+     */
+    public int getRetryBudget() {
+        return retryBudget != null ? retryBudget : parent != null ? parent.getRetryBudget() : 10;
+    }
+
+    /**
+     * @return true if a GET not answered within the route's 95th percentile response time is sent again
+     */
+    public boolean isHedgeEnabled() {
+        return hedgeEnabled != null ? hedgeEnabled : parent != null && parent.isHedgeEnabled();
+    }
+
+    /**
+     * @return the minimum delay in milliseconds before a GET is hedged
+     */
+    public int getHedgeMinDelay() {
+        return hedgeMinDelay != null ? hedgeMinDelay : parent != null ? parent.getHedgeMinDelay() : 50;
+    }
+
+    /**
+     * @return the maximum number of threads running hedged backend calls
+     */
+    public int getHedgeThreads() {
+        return hedgeThreads != null ? hedgeThreads : parent != null ? parent.getHedgeThreads() : 200;
+    }
+
+    /**
+     * @return the names of the proxy's own cookies, which are not forwarded to the backend
+     */
+    public List<String> getStrippedCookies() {
+        return strippedCookies != null ? strippedCookies :
+                parent != null ? parent.getStrippedCookies() : Collections.singletonList("JSESSIONID");
+    }
+
+    /**
+     * @return the directory where the resumable uploads are assembled
+     */
+    public String getUploadDir() {
+        return uploadDir != null ? uploadDir :
+                parent != null ? parent.getUploadDir() : System.getProperty("java.io.tmpdir") + "/biostudies-uploads";
+    }
+
+    /**
+     * @return the largest file accepted for a resumable upload, in bytes
+     */
+    public long getUploadMaxSize() {
+        return uploadMaxSize != null ? uploadMaxSize : parent != null ? parent.getUploadMaxSize() : 50L << 30;
+    }
+
+    /**
+     * @return the number of unfinished resumable uploads a user may have
+     */
+    public int getUploadMaxPerUser() {
+        return uploadMaxPerUser != null ? uploadMaxPerUser : parent != null ? parent.getUploadMaxPerUser() : 20;
+    }
+
+    /**
+     * @return the total length in bytes of the unfinished resumable uploads of a user
+     */
+    public long getUploadMaxUserSize() {
+        return uploadMaxUserSize != null ? uploadMaxUserSize :
+                parent != null ? parent.getUploadMaxUserSize() : 100L << 30;
+    }
+
+    /**
+     * @return how long an unfinished upload is kept after its last chunk, in milliseconds
+     */
+    public int getUploadExpiration() {
+        return uploadExpiration != null ? uploadExpiration : parent != null ? parent.getUploadExpiration() : 86400000;
+    }
+
+    /**
+     * @return the backend path the completed uploads are posted to (as multipart form data)
+     */
+    public String getUploadForwardPath() {
+        return uploadForwardPath != null ? uploadForwardPath :
+                parent != null ? parent.getUploadForwardPath() : "/files/upload";
+    }
+
+    /**
+     * @return the number of completed uploads forwarded to the backend at the same time
+     */
+    public int getUploadForwardThreads() {
+        return uploadForwardThreads != null ? uploadForwardThreads :
+                parent != null ? parent.getUploadForwardThreads() : 4;
+    }
+
+    /**
+     * @return the root directory of the users' upload store, or null if not configured; it has no default, as
+     * the stored files must outlive the application (a temporary directory may be wiped at any time)
+     */
+    public String getStoreDir() {
+        return storeDir != null ? storeDir : parent != null ? parent.getStoreDir() : null;
+    }
+
+    /**
+     * @return when stored files are synced to disk: none, data (before the file is renamed into place)
+     * or full (the file metadata and the directory too)
+     */
+    public String getStoreFsync() {
+        return storeFsync != null ? storeFsync : parent != null ? parent.getStoreFsync() : "data";
+    }
+
+    /**
+     * @return the maximum number of requests handled at the same time, 0 for no limit
+     */
+    public int getAdmissionMaxRequests() {
+        return admissionMaxRequests != null ? admissionMaxRequests :
+                parent != null ? parent.getAdmissionMaxRequests() : 400;
+    }
+
+    /**
+     * @return the request body bytes which may be held in memory at the same time, 0 for no limit
+     */
+    public long getAdmissionMaxUploadBytes() {
+        return admissionMaxUploadBytes != null ? admissionMaxUploadBytes :
+                parent != null ? parent.getAdmissionMaxUploadBytes() : 256L << 20;
+    }
+
+    /**
+     * @return how long a request may wait for a free slot before it is rejected, in milliseconds
+     */
+    public int getAdmissionMaxWait() {
+        return admissionMaxWait != null ? admissionMaxWait : parent != null ? parent.getAdmissionMaxWait() : 100;
+    }
+
+    /**
+     * @return the Retry-After of the rejected requests, in seconds
+     */
+    public int getAdmissionRetryAfter() {
+        return admissionRetryAfter != null ? admissionRetryAfter : parent != null ? parent.getAdmissionRetryAfter() : 2;
+    }
+
+    /**
+     * @return the per-client rate limits, see RateLimiter; none by default
+     */
+    public String getRateLimits() {
+        return rateLimits != null ? rateLimits : parent != null ? parent.getRateLimits() : null;
+    }
+
+    /**
+     * @return the addresses of the reverse proxies whose X-Forwarded-For is believed; none by default
+     */
+    public List<String> getTrustedProxies() {
+        return trustedProxies != null ? trustedProxies :
+                parent != null ? parent.getTrustedProxies() : Collections.emptyList();
+    }
+
+    /**
+     * @return how the REST requests are authenticated: session (the default), where the token is taken as it is
+     * and the user session kept in the servlet session, or stateless, where every token is validated by the
+     * backend (see PROXY_AUTH_CHECK_PATH)
+     */
+    public String getAuthMode() {
+        return authMode != null ? authMode : parent != null ? parent.getAuthMode() : "session";
+    }
+
+    /**
+     * @return the backend path which validates a session token and returns the user profile
+     */
+    public String getAuthCheckPath() {
+        return authCheckPath != null ? authCheckPath : parent != null ? parent.getAuthCheckPath() : "/auth/check";
+    }
+
+    /**
+     * @return the field of the backend profile listing the roles of the user; a dotted path for a nested field
+     */
+    public String getAuthRolesField() {
+        return authRolesField != null ? authRolesField : parent != null ? parent.getAuthRolesField() : "roles";
+    }
+
+    /**
+     * @return the boolean field of the backend profile giving the user the SUPERUSER role
+     */
+    public String getAuthSuperuserField() {
+        return authSuperuserField != null ? authSuperuserField :
+                parent != null ? parent.getAuthSuperuserField() : "superuser";
+    }
+
+    /**
+     * @return the fields of the backend profile holding the user name, the first one present is taken
+     */
+    public List<String> getAuthUserFields() {
+        return authUserFields != null ? authUserFields :
+                parent != null ? parent.getAuthUserFields() : Arrays.asList("username", "login");
+    }
+
+    /**
+     * @return how long a validated session is trusted without asking the backend, in milliseconds
+     */
+    public long getAuthCacheTtl() {
+        return authCacheTtl != null ? authCacheTtl : parent != null ? parent.getAuthCacheTtl() : 300000L;
+    }
+
+    /**
+     * @return how long a rejected session token is remembered, in milliseconds
+     */
+    public long getAuthNegativeTtl() {
+        return authNegativeTtl != null ? authNegativeTtl : parent != null ? parent.getAuthNegativeTtl() : 10000L;
+    }
+
+    /**
+     * @return the maximum number of session tokens kept in the cache
+     */
+    public int getAuthCacheSize() {
+        return authCacheSize != null ? authCacheSize : parent != null ? parent.getAuthCacheSize() : 100000;
+    }
+
+    /**
+     * @return the number of threads running the reactive REST work and the rx backend calls
+     */
+    public int getRestThreads() {
+        return restThreads != null ? restThreads : parent != null ? parent.getRestThreads() : 16;
+    }
+
+    /**
+     * @return the maximum number of REST tasks waiting for a thread; more are rejected with 503
+     */
+    public int getRestQueueSize() {
+        return restQueueSize != null ? restQueueSize : parent != null ? parent.getRestQueueSize() : 256;
+    }
+
+    /**
+     * @return how long an async REST request may take before it is cancelled, in milliseconds
+     */
+    public long getRestTimeout() {
+        return restTimeout != null ? restTimeout : parent != null ? parent.getRestTimeout() : 30000L;
+    }
+
+    /**
+     * @return the size of the connection pool of the rx backend client
+     */
+    public int getRestClientMaxConnections() {
+        return restClientMaxConnections != null ? restClientMaxConnections :
+                parent != null ? parent.getRestClientMaxConnections() : 50;
+    }
+
+    /**
+     * @return the client addresses allowed to read the metrics (/api/metrics); by default only the local host
+     */
+    public List<String> getMetricsAddresses() {
+        return metricsAddresses != null ? metricsAddresses :
+                parent != null ? parent.getMetricsAddresses() : Arrays.asList("127.0.0.1", "0:0:0:0:0:0:0:1");
+    }
+
+    /**
+     * @return true if the proxied exchanges (in async mode) and the REST work run on virtual threads (JDK 21+)
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads != null ? virtualThreads : parent != null && parent.isVirtualThreads();
+    }
+
+    /**
+     * @return the maximum number of sub-requests in a batch request
+     */
+    public int getBatchMaxItems() {
+        return batchMaxItems != null ? batchMaxItems : parent != null ? parent.getBatchMaxItems() : 50;
+    }
+
+    /**
+     * @return the maximum number of sub-requests of a batch executed at the same time
+     */
+    public int getBatchParallelism() {
+        return batchParallelism != null ? batchParallelism : parent != null ? parent.getBatchParallelism() : 8;
+    }
+
+    /**
+     * @return the maximum size of a sub-request response body in a batch response
+     */
+    public int getBatchMaxItemSize() {
+        return batchMaxItemSize != null ? batchMaxItemSize :
+                parent != null ? parent.getBatchMaxItemSize() : 1024 * 1024;
+    }
+
+    /**
+     * @return the maximum total size of the static assets kept in memory, 0 to disable the cache
+     */
+    public long getAssetCacheSize() {
+        return assetCacheSize != null ? assetCacheSize :
+                parent != null ? parent.getAssetCacheSize() : 32L * 1024 * 1024;
+    }
+
+    /**
+     * @return the size of the largest static asset kept in memory; larger ones are sent from the file
+     */
+    public int getAssetCacheEntrySize() {
+        return assetCacheEntrySize != null ? assetCacheEntrySize :
+                parent != null ? parent.getAssetCacheEntrySize() : 256 * 1024;
+    }
+
+    /**
+     * @return the external config file overriding the other settings at runtime, or null if there is none
+     */
+    public String getConfigFile() {
+        return configFile != null ? configFile : parent != null ? parent.getConfigFile() : null;
+    }
+
+    /**
+     * @return how often the external config file is checked for changes in milliseconds, 0 to load it only once
+     */
+    public int getConfigReloadInterval() {
+        return configReloadInterval != null ? configReloadInterval :
+                parent != null ? parent.getConfigReloadInterval() : 5000;
+    }
+
+    /**
+     * @return the proxy routes; unless a route for "/" is declared, everything else goes to the backend nodes
+     */
+    public List<RouteConfig> getRoutes() {
+        List<RouteConfig> declared = getDeclaredRoutes();
+        List<RouteConfig> all = declared == null ? new ArrayList<>() : new ArrayList<>(declared);
+        if (all.stream().noneMatch(r -> r.getPrefix().equals("/")) && getBackends() != null) {
+            all.add(new RouteConfig("/", getBackends()));
+        }
+        return all;
+    }
+
+    private List<RouteConfig> getDeclaredRoutes() {
+        return routes != null ? routes : parent != null ? parent.getDeclaredRoutes() : null;
+    }
+
+    /**
+     * Checks the values which the services can't work with, before a config is applied at runtime.
+     *
+     * @throws IllegalArgumentException listing the invalid values
+     */
+    void validate() {
+        List<String> errors = new ArrayList<>();
+        checkPositive(errors, "PROXY_MAX_CONNECTIONS", getMaxConnections());
+        checkPositive(errors, "PROXY_MAX_CONNECTIONS_PER_ROUTE", getMaxConnectionsPerRoute());
+        checkPositive(errors, "PROXY_ASYNC_THREADS", getAsyncThreads());
+        checkPositive(errors, "PROXY_REST_THREADS", getRestThreads());
+        checkPositive(errors, "PROXY_REST_TIMEOUT", getRestTimeout());
+        checkPositive(errors, "PROXY_AUTH_CACHE_SIZE", getAuthCacheSize());
+        checkPositive(errors, "PROXY_BATCH_MAX_ITEMS", getBatchMaxItems());
+        checkPositive(errors, "PROXY_BATCH_PARALLELISM", getBatchParallelism());
+        checkPositive(errors, "PROXY_BATCH_MAX_ITEM_SIZE", getBatchMaxItemSize());
+        checkPositive(errors, "PROXY_UPLOAD_MAX_PER_USER", getUploadMaxPerUser());
+        checkPositive(errors, "PROXY_UPLOAD_MAX_USER_SIZE", getUploadMaxUserSize());
+        checkNotNegative(errors, "PROXY_ADMISSION_MAX_REQUESTS", getAdmissionMaxRequests());
+        checkNotNegative(errors, "PROXY_ADMISSION_MAX_UPLOAD_BYTES", getAdmissionMaxUploadBytes());
+        checkNotNegative(errors, "PROXY_ADMISSION_MAX_WAIT", getAdmissionMaxWait());
+        checkNotNegative(errors, "PROXY_ADMISSION_RETRY_AFTER", getAdmissionRetryAfter());
+        checkNotNegative(errors, "PROXY_AUTH_CACHE_TTL", getAuthCacheTtl());
+        checkNotNegative(errors, "PROXY_AUTH_NEGATIVE_TTL", getAuthNegativeTtl());
+        try {
+            RateLimiter.validate(getRateLimits());
+        } catch (IllegalArgumentException e) {
+            errors.add("PROXY_RATE_LIMITS: " + e.getMessage());
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("; ", errors));
+        }
+    }
+
+    private static void checkPositive(List<String> errors, String name, long value) {
+        if (value <= 0) {
+            errors.add(name + " must be positive: " + value);
+        }
+    }
+
+    private static void checkNotNegative(List<String> errors, String name, long value) {
+        if (value < 0) {
+            errors.add(name + " must not be negative: " + value);
+        }
     }
 
     AppConfig overwrite(AppConfig config) {
         return new AppConfigBuilder(this)
                 .setServerUrl(config.getServerUrl())
+                .setMaxConnections(config.maxConnections)
+                .setMaxConnectionsPerRoute(config.maxConnectionsPerRoute)
+                .setConnectTimeout(config.connectTimeout)
+                .setSocketTimeout(config.socketTimeout)
+                .setConnectionRequestTimeout(config.connectionRequestTimeout)
+                .setIdleConnectionTimeout(config.idleConnectionTimeout)
+                .setKeepAliveTimeout(config.keepAliveTimeout)
+                .setBufferSize(config.bufferSize)
+                .setBufferPoolSize(config.bufferPoolSize)
+                .setStreamingUploads(config.streamingUploads)
+                .setAsyncEnabled(config.asyncEnabled)
+                .setAsyncThreads(config.asyncThreads)
+                .setAsyncQueueSize(config.asyncQueueSize)
+                .setAsyncTimeout(config.asyncTimeout)
+                .setCacheSize(config.cacheSize)
+                .setCacheEntrySize(config.cacheEntrySize)
+                .setCoalesceBodySize(config.coalesceBodySize)
+                .setCoalesceMaxWait(config.coalesceMaxWait)
+                .setCompressionEnabled(config.compressionEnabled)
+                .setCompressionMinSize(config.compressionMinSize)
+                .setCompressionTypes(config.compressionTypes)
+                .setBackends(config.backends)
+                .setBalancing(config.balancing)
+                .setHealthCheckPath(config.healthCheckPath)
+                .setHealthCheckInterval(config.healthCheckInterval)
+                .setOutlierFailures(config.outlierFailures)
+                .setOutlierEjectionTime(config.outlierEjectionTime)
+                .setBreakerWindow(config.breakerWindow)
+                .setBreakerMinCalls(config.breakerMinCalls)
+                .setBreakerFailureRate(config.breakerFailureRate)
+                .setBreakerSlowCallTime(config.breakerSlowCallTime)
+                .setBreakerSlowCallRate(config.breakerSlowCallRate)
+                .setBreakerOpenTime(config.breakerOpenTime)
+                .setBreakerHalfOpenCalls(config.breakerHalfOpenCalls)
+                .setRetryAttempts(config.retryAttempts)
+                .setRetryBackoff(config.retryBackoff)
+                .setRetryDeletes(config.retryDeletes)
+                .setRetryBudget(config.retryBudget)
+                .setHedgeEnabled(config.hedgeEnabled)
+                .setHedgeMinDelay(config.hedgeMinDelay)
+                .setHedgeThreads(config.hedgeThreads)
+                .setStrippedCookies(config.strippedCookies)
+                .setUploadDir(config.uploadDir)
+                .setUploadMaxSize(config.uploadMaxSize)
+                .setUploadMaxPerUser(config.uploadMaxPerUser)
+                .setUploadMaxUserSize(config.uploadMaxUserSize)
+                .setUploadExpiration(config.uploadExpiration)
+                .setUploadForwardPath(config.uploadForwardPath)
+                .setUploadForwardThreads(config.uploadForwardThreads)
+                .setStoreDir(config.storeDir)
+                .setStoreFsync(config.storeFsync)
+                .setAdmissionMaxRequests(config.admissionMaxRequests)
+                .setAdmissionMaxUploadBytes(config.admissionMaxUploadBytes)
+                .setAdmissionMaxWait(config.admissionMaxWait)
+                .setAdmissionRetryAfter(config.admissionRetryAfter)
+                .setRateLimits(config.rateLimits)
+                .setTrustedProxies(config.trustedProxies)
+                .setAuthMode(config.authMode)
+                .setAuthCheckPath(config.authCheckPath)
+                .setAuthRolesField(config.authRolesField)
+                .setAuthSuperuserField(config.authSuperuserField)
+                .setAuthUserFields(config.authUserFields)
+                .setAuthCacheTtl(config.authCacheTtl)
+                .setAuthNegativeTtl(config.authNegativeTtl)
+                .setAuthCacheSize(config.authCacheSize)
+                .setRestThreads(config.restThreads)
+                .setRestQueueSize(config.restQueueSize)
+                .setRestTimeout(config.restTimeout)
+                .setRestClientMaxConnections(config.restClientMaxConnections)
+                .setMetricsAddresses(config.metricsAddresses)
+                .setVirtualThreads(config.virtualThreads)
+                .setBatchMaxItems(config.batchMaxItems)
+                .setBatchParallelism(config.batchParallelism)
+                .setBatchMaxItemSize(config.batchMaxItemSize)
+                .setAssetCacheSize(config.assetCacheSize)
+                .setAssetCacheEntrySize(config.assetCacheEntrySize)
+                .setConfigFile(config.configFile)
+                .setConfigReloadInterval(config.configReloadInterval)
+                .setRoutes(config.routes)
                 .build();
     }
 
@@ -199,6 +2081,85 @@ public class AppConfig {
     public String toString() {
         return "AppConfig{" +
                 "serverUrl=" + getServerUrl() +
+                ", maxConnections=" + getMaxConnections() +
+                ", maxConnectionsPerRoute=" + getMaxConnectionsPerRoute() +
+                ", connectTimeout=" + getConnectTimeout() +
+                ", socketTimeout=" + getSocketTimeout() +
+                ", connectionRequestTimeout=" + getConnectionRequestTimeout() +
+                ", idleConnectionTimeout=" + getIdleConnectionTimeout() +
+                ", keepAliveTimeout=" + getKeepAliveTimeout() +
+                ", bufferSize=" + getBufferSize() +
+                ", bufferPoolSize=" + getBufferPoolSize() +
+                ", streamingUploads=" + isStreamingUploads() +
+                ", asyncEnabled=" + isAsyncEnabled() +
+                ", asyncThreads=" + getAsyncThreads() +
+                ", asyncQueueSize=" + getAsyncQueueSize() +
+                ", asyncTimeout=" + getAsyncTimeout() +
+                ", cacheSize=" + getCacheSize() +
+                ", cacheEntrySize=" + getCacheEntrySize() +
+                ", coalesceBodySize=" + getCoalesceBodySize() +
+                ", coalesceMaxWait=" + getCoalesceMaxWait() +
+                ", compressionEnabled=" + isCompressionEnabled() +
+                ", compressionMinSize=" + getCompressionMinSize() +
+                ", compressionTypes=" + getCompressionTypes() +
+                ", backends=" + getBackends() +
+                ", balancing=" + getBalancing() +
+                ", healthCheckPath=" + getHealthCheckPath() +
+                ", healthCheckInterval=" + getHealthCheckInterval() +
+                ", outlierFailures=" + getOutlierFailures() +
+                ", outlierEjectionTime=" + getOutlierEjectionTime() +
+                ", breakerWindow=" + getBreakerWindow() +
+                ", breakerMinCalls=" + getBreakerMinCalls() +
+                ", breakerFailureRate=" + getBreakerFailureRate() +
+                ", breakerSlowCallTime=" + getBreakerSlowCallTime() +
+                ", breakerSlowCallRate=" + getBreakerSlowCallRate() +
+                ", breakerOpenTime=" + getBreakerOpenTime() +
+                ", breakerHalfOpenCalls=" + getBreakerHalfOpenCalls() +
+                ", retryAttempts=" + getRetryAttempts() +
+                ", retryBackoff=" + getRetryBackoff() +
+                ", retryDeletes=" + isRetryDeletes() +
+                ", retryBudget=" + getRetryBudget() +
+                ", hedgeEnabled=" + isHedgeEnabled() +
+                ", hedgeMinDelay=" + getHedgeMinDelay() +
+                ", hedgeThreads=" + getHedgeThreads() +
+                ", strippedCookies=" + getStrippedCookies() +
+                ", uploadDir=" + getUploadDir() +
+                ", uploadMaxSize=" + getUploadMaxSize() +
+                ", uploadMaxPerUser=" + getUploadMaxPerUser() +
+                ", uploadMaxUserSize=" + getUploadMaxUserSize() +
+                ", uploadExpiration=" + getUploadExpiration() +
+                ", uploadForwardPath=" + getUploadForwardPath() +
+                ", uploadForwardThreads=" + getUploadForwardThreads() +
+                ", storeDir=" + getStoreDir() +
+                ", storeFsync=" + getStoreFsync() +
+                ", admissionMaxRequests=" + getAdmissionMaxRequests() +
+                ", admissionMaxUploadBytes=" + getAdmissionMaxUploadBytes() +
+                ", admissionMaxWait=" + getAdmissionMaxWait() +
+                ", admissionRetryAfter=" + getAdmissionRetryAfter() +
+                ", rateLimits=" + getRateLimits() +
+                ", trustedProxies=" + getTrustedProxies() +
+                ", authMode=" + getAuthMode() +
+                ", authCheckPath=" + getAuthCheckPath() +
+                ", authRolesField=" + getAuthRolesField() +
+                ", authSuperuserField=" + getAuthSuperuserField() +
+                ", authUserFields=" + getAuthUserFields() +
+                ", authCacheTtl=" + getAuthCacheTtl() +
+                ", authNegativeTtl=" + getAuthNegativeTtl() +
+                ", authCacheSize=" + getAuthCacheSize() +
+                ", restThreads=" + getRestThreads() +
+                ", restQueueSize=" + getRestQueueSize() +
+                ", restTimeout=" + getRestTimeout() +
+                ", restClientMaxConnections=" + getRestClientMaxConnections() +
+                ", metricsAddresses=" + getMetricsAddresses() +
+                ", virtualThreads=" + isVirtualThreads() +
+                ", batchMaxItems=" + getBatchMaxItems() +
+                ", batchParallelism=" + getBatchParallelism() +
+                ", batchMaxItemSize=" + getBatchMaxItemSize() +
+                ", assetCacheSize=" + getAssetCacheSize() +
+                ", assetCacheEntrySize=" + getAssetCacheEntrySize() +
+                ", configFile=" + getConfigFile() +
+                ", configReloadInterval=" + getConfigReloadInterval() +
+                ", routes=" + getRoutes() +
                 '}';
     }
 }
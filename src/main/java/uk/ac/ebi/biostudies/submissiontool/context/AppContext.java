@@ -16,12 +16,26 @@
 
 package uk.ac.ebi.biostudies.submissiontool.context;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import javax.servlet.ServletContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.glassfish.jersey.client.rx.RxClient;
+import org.glassfish.jersey.client.rx.rxjava.RxObservableInvoker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.schedulers.Schedulers;
+import uk.ac.ebi.biostudies.submissiontool.admission.AdmissionController;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimiter;
+import uk.ac.ebi.biostudies.submissiontool.auth.SessionValidator;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+import uk.ac.ebi.biostudies.submissiontool.upload.ResumableUploads;
+import uk.ac.ebi.biostudies.submissiontool.upload.UploadStore;
 
 /**
  * @author Olga Melnichuk
@@ -32,10 +46,49 @@ public class AppContext {
 
     private static String CONFIG = "config";
 
+    private static String CONFIG_WATCHER = "configWatcher";
+
+    private static String HTTP_CLIENT = "httpClient";
+
+    private static String PROXY_EXECUTOR = "proxyExecutor";
+
+    private static String SCHEDULER = "scheduler";
+
+    private static String METRICS = "metrics";
+
+    private static String HEDGE_EXECUTOR = "hedgeExecutor";
+
+    private static String UPLOADS = "uploads";
+
+    private static String UPLOAD_STORE = "uploadStore";
+
+    private static String ADMISSION = "admission";
+
+    private static String RATE_LIMITER = "rateLimiter";
+
+    private static String SESSION_VALIDATOR = "sessionValidator";
+
+    private static String REST_EXECUTOR = "restExecutor";
+
+    private static String BACKEND_RX_CLIENT = "backendRxClient";
+
     private final Map<String, Factory<?>> factories = new LinkedHashMap<>();
 
     {
         factories.put(CONFIG, new AppConfigFactory());
+        factories.put(METRICS, new MetricsFactory());
+        factories.put(SCHEDULER, new SchedulerFactory());
+        factories.put(CONFIG_WATCHER, new ConfigWatcherFactory());
+        factories.put(ADMISSION, new AdmissionControllerFactory());
+        factories.put(RATE_LIMITER, new RateLimiterFactory());
+        factories.put(HTTP_CLIENT, new HttpClientFactory());
+        factories.put(PROXY_EXECUTOR, new ProxyExecutorFactory());
+        factories.put(HEDGE_EXECUTOR, new HedgeExecutorFactory());
+        factories.put(SESSION_VALIDATOR, new SessionValidatorFactory());
+        factories.put(REST_EXECUTOR, new RestExecutorFactory());
+        factories.put(BACKEND_RX_CLIENT, new BackendRxClientFactory());
+        factories.put(UPLOADS, new ResumableUploadsFactory());
+        factories.put(UPLOAD_STORE, new UploadStoreFactory());
     }
 
     public AppContext(ServletContext context) {
@@ -52,14 +105,84 @@ public class AppContext {
 
     public void destroy() {
         logger.info("destroy(...): gracefully shutdown context created services..");
-        factories.keySet().forEach(key -> factories.get(key).destroy());
+        // in reverse order, so services are shut down before the ones they depend on
+        List<Factory<?>> created = new ArrayList<>(factories.values());
+        Collections.reverse(created);
+        created.forEach(Factory::destroy);
 
         logger.info("destroy(...): gracefully shutdown rxjava schedulers...");
         Schedulers.shutdown();
     }
 
+    /**
+     * @return the current config; it may be replaced at runtime, so it shouldn't be kept for long
+     */
     public static AppConfig getConfig(ServletContext context) {
         return (AppConfig) context.getAttribute(CONFIG);
     }
 
+    static void setConfig(ServletContext context, AppConfig config) {
+        context.setAttribute(CONFIG, config);
+    }
+
+    /**
+     * Registers a listener of the config changes applied at runtime (see PROXY_CONFIG_FILE).
+     */
+    public static void subscribe(ServletContext context, ConfigListener listener) {
+        ((ConfigWatcher) context.getAttribute(CONFIG_WATCHER)).subscribe(listener);
+    }
+
+    public static CloseableHttpClient getHttpClient(ServletContext context) {
+        return getBackendClients(context).getDefault();
+    }
+
+    public static BackendClients getBackendClients(ServletContext context) {
+        return (BackendClients) context.getAttribute(HTTP_CLIENT);
+    }
+
+    public static MetricsRegistry getMetrics(ServletContext context) {
+        return (MetricsRegistry) context.getAttribute(METRICS);
+    }
+
+    public static ScheduledExecutorService getScheduler(ServletContext context) {
+        return (ScheduledExecutorService) context.getAttribute(SCHEDULER);
+    }
+
+    public static ExecutorService getProxyExecutor(ServletContext context) {
+        return (ExecutorService) context.getAttribute(PROXY_EXECUTOR);
+    }
+
+    public static ExecutorService getHedgeExecutor(ServletContext context) {
+        return (ExecutorService) context.getAttribute(HEDGE_EXECUTOR);
+    }
+
+    public static ResumableUploads getUploads(ServletContext context) {
+        return (ResumableUploads) context.getAttribute(UPLOADS);
+    }
+
+    public static UploadStore getUploadStore(ServletContext context) {
+        return (UploadStore) context.getAttribute(UPLOAD_STORE);
+    }
+
+    public static AdmissionController getAdmission(ServletContext context) {
+        return (AdmissionController) context.getAttribute(ADMISSION);
+    }
+
+    public static RateLimiter getRateLimiter(ServletContext context) {
+        return (RateLimiter) context.getAttribute(RATE_LIMITER);
+    }
+
+    public static SessionValidator getSessionValidator(ServletContext context) {
+        return (SessionValidator) context.getAttribute(SESSION_VALIDATOR);
+    }
+
+    public static ExecutorService getRestExecutor(ServletContext context) {
+        return (ExecutorService) context.getAttribute(REST_EXECUTOR);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static RxClient<RxObservableInvoker> getBackendRxClient(ServletContext context) {
+        return (RxClient<RxObservableInvoker>) context.getAttribute(BACKEND_RX_CLIENT);
+    }
+
 }
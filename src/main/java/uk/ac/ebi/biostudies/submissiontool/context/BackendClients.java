@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.util.Map;
+
+/**
+ * The pooled http clients to the backends: the default one, and one per proxy route which has
+ * its own connection settings.
+ */
+public class BackendClients {
+
+    private final CloseableHttpClient defaultClient;
+    private final Map<String, CloseableHttpClient> routeClients;
+
+    BackendClients(CloseableHttpClient defaultClient, Map<String, CloseableHttpClient> routeClients) {
+        this.defaultClient = defaultClient;
+        this.routeClients = routeClients;
+    }
+
+    public CloseableHttpClient getDefault() {
+        return defaultClient;
+    }
+
+    public CloseableHttpClient get(RouteConfig route) {
+        CloseableHttpClient client = routeClients.get(route.getPrefix());
+        return client == null ? defaultClient : client;
+    }
+
+    Iterable<CloseableHttpClient> getRouteClients() {
+        return routeClients.values();
+    }
+}
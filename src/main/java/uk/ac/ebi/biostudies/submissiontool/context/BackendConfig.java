@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One backend node of a route: the node's base url and its relative weight in load balancing.
+ * Nodes are given as a comma separated list of urls, each optionally followed by {@code *weight}, e.g.
+ * {@code http://node1:8080/backend*2,http://node2:8080/backend}.
+ */
+public class BackendConfig {
+
+    private final URI url;
+    private final int weight;
+
+    BackendConfig(URI url, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Backend weight must be positive: " + url + "*" + weight);
+        }
+        this.url = url;
+        this.weight = weight;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    static List<BackendConfig> parse(String value) {
+        List<BackendConfig> backends = new ArrayList<>();
+        for (String spec : value.split(",")) {
+            spec = spec.trim();
+            if (!spec.isEmpty()) {
+                backends.add(parseBackend(spec));
+            }
+        }
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("No backend urls given: " + value);
+        }
+        return backends;
+    }
+
+    private static BackendConfig parseBackend(String spec) {
+        String url = spec;
+        int weight = 1;
+        int star = spec.lastIndexOf('*');
+        if (star > 0) {
+            url = spec.substring(0, star);
+            try {
+                weight = Integer.parseInt(spec.substring(star + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed backend weight: " + spec, e);
+            }
+        }
+        try {
+            URI uri = new URI(url.trim());
+            if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+                throw new IllegalArgumentException("Backend url must be absolute: " + spec);
+            }
+            return new BackendConfig(uri, weight);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Malformed backend url: " + spec, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return weight == 1 ? url.toString() : url + "*" + weight;
+    }
+}
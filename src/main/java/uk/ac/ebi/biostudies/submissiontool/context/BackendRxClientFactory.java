@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.rx.RxClient;
+import org.glassfish.jersey.client.rx.rxjava.RxObservable;
+import org.glassfish.jersey.client.rx.rxjava.RxObservableInvoker;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.ServletContext;
+import javax.ws.rs.client.ClientBuilder;
+
+/**
+ * Creates the rx Jersey client for the backend calls of the REST resources. It has its own connection pool,
+ * so the REST calls don't compete with the proxied requests, and runs the (blocking) Apache connector on the
+ * bounded REST executor instead of a thread per request.
+ */
+class BackendRxClientFactory implements Factory<RxClient<RxObservableInvoker>> {
+
+    private RxClient<RxObservableInvoker> client;
+
+    @Override
+    public RxClient<RxObservableInvoker> create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getRestClientMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getRestClientMaxConnections());
+
+        ClientConfig clientConfig = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .property(ClientProperties.CONNECT_TIMEOUT, config.getConnectTimeout())
+                .property(ClientProperties.READ_TIMEOUT, config.getSocketTimeout());
+
+        MetricsRegistry metrics = AppContext.getMetrics(context);
+        metrics.gauge("rest_client_leased_connections", "Connections of the rx backend client in use",
+                () -> connectionManager.getTotalStats().getLeased());
+        metrics.gauge("rest_client_pending_requests", "Rx backend client requests waiting for a connection",
+                () -> connectionManager.getTotalStats().getPending());
+
+        client = RxObservable.from(ClientBuilder.newClient(clientConfig), AppContext.getRestExecutor(context));
+        return client;
+    }
+
+    @Override
+    public void destroy() {
+        if (client != null) {
+            // closes the connector and its connection pool
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+/**
+ * Notified when a new config is applied at runtime, see {@link AppContext#subscribe}. Called on the scheduler
+ * thread, when {@link AppContext#getConfig} already returns the new config.
+ */
+@FunctionalInterface
+public interface ConfigListener {
+
+    void configChanged(AppConfig previous, AppConfig current);
+}
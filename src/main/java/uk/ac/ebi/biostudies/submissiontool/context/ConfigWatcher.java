@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Applies the external config file (PROXY_CONFIG_FILE) at runtime. The file is loaded on top of the deployed
+ * config (config.properties and the context parameters), validated, and only then published as a whole: the new
+ * config replaces the current one in the servlet context, then the subscribers are notified. A file which fails
+ * to load or validate is logged and ignored, and the current config stays.
+ * <p>
+ * The file content is compared on every check rather than its modification time, which may not change when the
+ * file is replaced (e.g. a mounted config map).
+ */
+class ConfigWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    private final AppConfig base;
+    private final Path file;
+    private final Consumer<AppConfig> publisher;
+    private final List<ConfigListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Counter applied;
+    private final Counter rejected;
+
+    private volatile AppConfig current;
+    // only accessed by the thread checking the file
+    private byte[] content;
+
+    /**
+     * @param file      the external config file, null if there is none
+     * @param publisher makes the new config the current one
+     */
+    ConfigWatcher(AppConfig base, Path file, Consumer<AppConfig> publisher, MetricsRegistry metrics) {
+        this.base = base;
+        this.file = file;
+        this.publisher = publisher;
+        this.current = base;
+        this.applied = metrics.counter("config_reloads_total", "Changes of the config file", "result", "applied");
+        this.rejected = metrics.counter("config_reloads_total", "Changes of the config file", "result", "rejected");
+    }
+
+    void subscribe(ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Applies the config file if its content has changed since the last check.
+     *
+     * @return true if a new config has been applied
+     */
+    boolean check() {
+        if (file == null) {
+            return false;
+        }
+        byte[] read;
+        try {
+            read = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            if (content != null) {
+                logger.warn("config file {} is gone; keeping the current config", file);
+                content = null;
+            }
+            return false;
+        } catch (IOException e) {
+            logger.error("config file " + file + " can't be read", e);
+            return false;
+        }
+        if (Arrays.equals(read, content)) {
+            return false;
+        }
+        content = read;
+        return reload();
+    }
+
+    private boolean reload() {
+        AppConfig updated;
+        try {
+            updated = base.overwrite(AppConfig.loadConfig(file));
+            updated.validate();
+        } catch (IOException | IllegalArgumentException e) {
+            rejected.inc();
+            logger.error("config file {} rejected; keeping the current config: {}", file, e.getMessage());
+            return false;
+        }
+        AppConfig previous = current;
+        current = updated;
+        publisher.accept(updated);
+        applied.inc();
+        logger.info("config file {} applied", file);
+        logger.debug("config: {}", updated);
+
+        for (ConfigListener listener : listeners) {
+            try {
+                listener.configChanged(previous, updated);
+            } catch (RuntimeException e) {
+                // the others still get the change
+                logger.error("applying the config change failed", e);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the watcher of the external config file. The file is applied straight away, so the services created
+ * afterwards start with it, and then checked for changes every PROXY_CONFIG_RELOAD_INTERVAL.
+ */
+class ConfigWatcherFactory implements Factory<ConfigWatcher> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigWatcherFactory.class);
+
+    private ScheduledFuture<?> checks;
+
+    @Override
+    public ConfigWatcher create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        Path file = config.getConfigFile() == null ? null : Paths.get(config.getConfigFile());
+        ConfigWatcher watcher = new ConfigWatcher(config, file, c -> AppContext.setConfig(context, c),
+                AppContext.getMetrics(context));
+        if (file == null) {
+            return watcher;
+        }
+        logger.info("config file: {}", file);
+        watcher.check();
+
+        int interval = config.getConfigReloadInterval();
+        if (interval > 0) {
+            checks = AppContext.getScheduler(context).scheduleWithFixedDelay(() -> {
+                try {
+                    watcher.check();
+                } catch (RuntimeException e) {
+                    // an exception would cancel the scheduled task
+                    logger.error("config file check failed", e);
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        return watcher;
+    }
+
+    @Override
+    public void destroy() {
+        if (checks != null) {
+            checks.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executor running hedged backend calls. It has no queue: when all its threads are busy
+ * a request is sent without hedging.
+ */
+class HedgeExecutorFactory implements Factory<ExecutorService> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HedgeExecutorFactory.class);
+
+    private ExecutorService executor;
+
+    @Override
+    public ExecutorService create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        logger.info("creating hedge executor: threads={}", config.getHedgeThreads());
+
+        executor = new ThreadPoolExecutor(
+                0, Math.max(config.getHedgeThreads(), 1),
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                ProxyExecutorFactory.threadFactory("hedge-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            // the pending calls are aborted along with the http clients
+            executor.shutdownNow();
+        }
+    }
+}
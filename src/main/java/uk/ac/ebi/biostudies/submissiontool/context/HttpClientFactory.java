@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Histogram;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the pooled http clients used to talk to the BioStudies backends: the default one, and one for
+ * every proxy route with its own connection settings. The pool sizes follow the config changes at runtime;
+ * the other connection settings apply after a restart.
+ */
+class HttpClientFactory implements Factory<BackendClients> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientFactory.class);
+
+    private static final String DEFAULT_POOL = "default";
+
+    private BackendClients clients;
+
+    @Override
+    public BackendClients create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        MetricsRegistry metrics = AppContext.getMetrics(context);
+        Histogram connectTime = metrics.histogram("proxy_backend_connect_seconds",
+                "Time to open a new backend connection, including the TLS handshake");
+        Map<String, CloseableHttpClient> routeClients = new HashMap<>();
+        Map<String, PoolingHttpClientConnectionManager> pools = new HashMap<>();
+        for (RouteConfig route : config.getRoutes()) {
+            if (route.hasOwnPool()) {
+                routeClients.put(route.getPrefix(),
+                        createClient(config, route, metrics, route.getPrefix(), connectTime, pools));
+            }
+        }
+        clients = new BackendClients(createClient(config, new RouteConfig("/", config.getServerUrl()),
+                metrics, DEFAULT_POOL, connectTime, pools), routeClients);
+        AppContext.subscribe(context, (previous, current) -> resizePools(current, pools));
+        return clients;
+    }
+
+    /**
+     * Resizes the connection pools in place, so the connections in use are not affected. The routes are only
+     * created at startup, so a pool is resized only if its route is still there.
+     */
+    private static void resizePools(AppConfig config, Map<String, PoolingHttpClientConnectionManager> pools) {
+        pools.forEach((pool, connManager) -> {
+            RouteConfig route = pool.equals(DEFAULT_POOL) ? new RouteConfig("/", config.getServerUrl())
+                    : config.getRoutes().stream().filter(r -> r.getPrefix().equals(pool)).findFirst().orElse(null);
+            if (route == null) {
+                return;
+            }
+            int maxConnections = route.getMaxConnections(config);
+            int maxPerRoute = route.getMaxConnectionsPerRoute(config);
+            if (maxConnections != connManager.getMaxTotal() || maxPerRoute != connManager.getDefaultMaxPerRoute()) {
+                logger.info("connection pool {} resized: maxConnections={}, maxConnectionsPerRoute={}", pool,
+                        maxConnections, maxPerRoute);
+                connManager.setMaxTotal(maxConnections);
+                connManager.setDefaultMaxPerRoute(maxPerRoute);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (clients == null) {
+            return;
+        }
+        for (CloseableHttpClient client : clients.getRouteClients()) {
+            close(client);
+        }
+        close(clients.getDefault());
+    }
+
+    private static void close(CloseableHttpClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close http client", e);
+        }
+    }
+
+    /**
+     * @param pool  the name of the connection pool in the metrics
+     * @param pools the connection managers by the pool name, the one created is added
+     */
+    static CloseableHttpClient createClient(AppConfig config, RouteConfig route, MetricsRegistry metrics,
+                                            String pool, Histogram connectTime,
+                                            Map<String, PoolingHttpClientConnectionManager> pools) {
+        logger.info("creating pooled http client for {}: maxConnections={}, maxConnectionsPerRoute={}", route,
+                route.getMaxConnections(config), route.getMaxConnectionsPerRoute(config));
+
+        // one SSL context for all the connections, so TLS sessions are cached and resumed
+        // instead of a full handshake per new connection
+        Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new TimedSocketFactory(PlainConnectionSocketFactory.getSocketFactory(), connectTime))
+                .register("https", new TimedSocketFactory(
+                        new SSLConnectionSocketFactory(SSLContexts.createSystemDefault()), connectTime))
+                .build();
+
+        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connManager.setMaxTotal(route.getMaxConnections(config));
+        connManager.setDefaultMaxPerRoute(route.getMaxConnectionsPerRoute(config));
+        connManager.setValidateAfterInactivity(1000);
+        pools.put(pool, connManager);
+
+        metrics.gauge("proxy_pool_leased_connections", "Backend connections in use",
+                () -> connManager.getTotalStats().getLeased(), "pool", pool);
+        metrics.gauge("proxy_pool_available_connections", "Idle pooled backend connections",
+                () -> connManager.getTotalStats().getAvailable(), "pool", pool);
+        metrics.gauge("proxy_pool_pending_requests", "Requests waiting for a backend connection",
+                () -> connManager.getTotalStats().getPending(), "pool", pool);
+        metrics.gauge("proxy_pool_max_connections", "Maximum number of backend connections",
+                () -> connManager.getTotalStats().getMax(), "pool", pool);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(route.getConnectTimeout(config))
+                .setSocketTimeout(route.getSocketTimeout(config))
+                .setConnectionRequestTimeout(route.getConnectionRequestTimeout(config))
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveTimeout()))
+                .evictExpiredConnections()
+                // compressed backend responses are passed through to the client as they are
+                .disableContentCompression()
+                // connections are not bound to a user, so any of them can be reused for any request
+                .disableConnectionState()
+                // the BackendInvoker retries the idempotent calls; a second layer would multiply the attempts
+                .disableAutomaticRetries();
+
+        if (config.getIdleConnectionTimeout() > 0) {
+            builder.evictIdleConnections((long) config.getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+        }
+        return builder.build();
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultTimeout) {
+        return (response, context) -> {
+            long timeout = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return timeout > 0 ? timeout : defaultTimeout;
+        };
+    }
+
+    /**
+     * Times the opening of new connections (the connect, and for https the handshake).
+     */
+    private static class TimedSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+        private final Histogram connectTime;
+
+        TimedSocketFactory(ConnectionSocketFactory delegate, Histogram connectTime) {
+            this.delegate = delegate;
+            this.connectTime = connectTime;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            } finally {
+                connectTime.recordNanos(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.ServletContext;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Creates the metrics registry, with the basic JVM metrics registered.
+ */
+class MetricsFactory implements Factory<MetricsRegistry> {
+
+    @Override
+    public MetricsRegistry create(ServletContext context) {
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        metrics.gauge("jvm_heap_used_bytes", "Used heap memory",
+                () -> memory.getHeapMemoryUsage().getUsed());
+        metrics.gauge("jvm_heap_committed_bytes", "Committed heap memory",
+                () -> memory.getHeapMemoryUsage().getCommitted());
+        metrics.gauge("jvm_threads", "Live threads",
+                () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            metrics.counter("jvm_gc_collections_total", "Garbage collections",
+                    gc::getCollectionCount, "gc", gc.getName());
+            metrics.gauge("jvm_gc_collection_seconds_total", "Time spent in garbage collection",
+                    () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+        return metrics;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
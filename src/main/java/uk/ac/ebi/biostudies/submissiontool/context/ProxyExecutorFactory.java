@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.ServletContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the bounded executor which runs proxied exchanges when the async proxy mode is on, or a virtual thread
+ * per exchange when PROXY_VIRTUAL_THREADS is set and the JDK has them.
+ */
+class ProxyExecutorFactory implements Factory<ExecutorService> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProxyExecutorFactory.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private ExecutorService executor;
+
+    @Override
+    public ExecutorService create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        if (config.isVirtualThreads()) {
+            executor = VirtualThreads.newExecutor("proxy-");
+            if (executor != null) {
+                logger.info("creating proxy executor: virtual threads");
+                return executor;
+            }
+        }
+        logger.info("creating proxy executor: threads={}, queueSize={}",
+                config.getAsyncThreads(), config.getAsyncQueueSize());
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                config.getAsyncThreads(), config.getAsyncThreads(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(config.getAsyncQueueSize(), 1)),
+                threadFactory("proxy-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+
+        MetricsRegistry metrics = AppContext.getMetrics(context);
+        metrics.gauge("proxy_executor_active_threads", "Threads running proxied exchanges in async mode",
+                pool::getActiveCount);
+        metrics.gauge("proxy_executor_queued", "Proxied exchanges waiting for a thread in async mode",
+                () -> pool.getQueue().size());
+        AppContext.subscribe(context, (previous, current) -> {
+            if (current.getAsyncThreads() != previous.getAsyncThreads()) {
+                logger.info("proxy executor resized: threads={}", current.getAsyncThreads());
+                resize(pool, current.getAsyncThreads());
+            }
+        });
+        executor = pool;
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            shutdown(executor, "proxy");
+        }
+    }
+
+    /**
+     * Lets the running and queued tasks finish, and interrupts them if they take too long.
+     */
+    static void shutdown(ExecutorService executor, String name) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("{} executor did not terminate in {}s; interrupting", name, SHUTDOWN_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Changes the number of threads of a fixed size pool. The running tasks are not interrupted; the threads over
+     * the new size end when they are idle.
+     */
+    static void resize(ThreadPoolExecutor pool, int threads) {
+        // the core size must never be above the maximum
+        if (threads > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        } else {
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
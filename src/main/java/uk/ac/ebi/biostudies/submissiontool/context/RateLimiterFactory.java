@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimiter;
+
+import javax.servlet.ServletContext;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the per-client rate limiter, and schedules the removal of the buckets of the idle clients.
+ * The limits follow the changes of PROXY_RATE_LIMITS at runtime.
+ */
+class RateLimiterFactory implements Factory<RateLimiter> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiterFactory.class);
+
+    private static final long EXPIRE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private ScheduledFuture<?> expiry;
+
+    @Override
+    public RateLimiter create(ServletContext context) {
+        RateLimiter limiter = RateLimiter.create(AppContext.getConfig(context).getRateLimits(),
+                AppContext.getMetrics(context));
+        logger.info("rate limits: {}", limiter);
+        AppContext.subscribe(context, (previous, current) -> {
+            if (!Objects.equals(current.getRateLimits(), previous.getRateLimits())) {
+                limiter.update(current.getRateLimits());
+                logger.info("rate limits changed: {}", limiter);
+            }
+        });
+        // scheduled even without limits, as they may be set at runtime
+        expiry = AppContext.getScheduler(context).scheduleWithFixedDelay(() -> {
+            try {
+                if (!limiter.isEmpty()) {
+                    logger.debug("rate limiter: {} idle buckets removed", limiter.expire());
+                }
+            } catch (RuntimeException e) {
+                // an exception would cancel the scheduled task
+                logger.error("rate limiter expiry failed", e);
+            }
+        }, EXPIRE_INTERVAL, EXPIRE_INTERVAL, TimeUnit.MILLISECONDS);
+        return limiter;
+    }
+
+    @Override
+    public void destroy() {
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.plugins.RxJavaHooks;
+import rx.schedulers.Schedulers;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.servlet.ServletContext;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the bounded executor of the reactive REST work: the subscriptions of the REST resources and the
+ * calls of the rx backend client. Tasks over the queue size are rejected, which the resources turn into 503.
+ * <p>
+ * The executor also backs {@link Schedulers#io()}, which is otherwise an unbounded cached thread pool, through
+ * the {@link RxJavaHooks#setOnIOScheduler} hook; on destroy only that hook is removed, and only if it is still
+ * the one installed here, so the other rx hooks and schedulers of the JVM are left alone.
+ * With PROXY_VIRTUAL_THREADS the work runs on virtual threads instead, bounded by the admission control.
+ */
+class RestExecutorFactory implements Factory<ExecutorService> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestExecutorFactory.class);
+
+    private ExecutorService executor;
+    private Func1<Scheduler, Scheduler> ioHook;
+
+    @Override
+    public ExecutorService create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        executor = config.isVirtualThreads() ? VirtualThreads.newExecutor("rest-") : null;
+        if (executor != null) {
+            logger.info("creating rest executor: virtual threads");
+        } else {
+            ThreadPoolExecutor pool = createPool(config, AppContext.getMetrics(context));
+            AppContext.subscribe(context, (previous, current) -> {
+                if (current.getRestThreads() != previous.getRestThreads()) {
+                    logger.info("rest executor resized: threads={}", current.getRestThreads());
+                    ProxyExecutorFactory.resize(pool, current.getRestThreads());
+                }
+            });
+            executor = pool;
+        }
+
+        Scheduler scheduler = Schedulers.from(executor);
+        if (RxJavaHooks.getOnIOScheduler() != null) {
+            logger.warn("An rx io scheduler hook is already set; Schedulers.io() is left to it");
+        } else {
+            Func1<Scheduler, Scheduler> hook = io -> scheduler;
+            RxJavaHooks.setOnIOScheduler(hook);
+            if (RxJavaHooks.getOnIOScheduler() == hook) {
+                ioHook = hook;
+            } else {
+                logger.warn("The rx hooks are locked down; Schedulers.io() stays unbounded");
+            }
+        }
+        return executor;
+    }
+
+    private static ThreadPoolExecutor createPool(AppConfig config, MetricsRegistry metrics) {
+        logger.info("creating rest executor: threads={}, queueSize={}",
+                config.getRestThreads(), config.getRestQueueSize());
+
+        Counter rejected = metrics.counter("rest_executor_rejected_total", "REST tasks rejected by the full queue");
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                config.getRestThreads(), config.getRestThreads(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(config.getRestQueueSize(), 1)),
+                ProxyExecutorFactory.threadFactory("rest-"),
+                (task, executor) -> {
+                    rejected.inc();
+                    throw new RejectedExecutionException("rest executor is saturated");
+                });
+        pool.allowCoreThreadTimeOut(true);
+
+        metrics.gauge("rest_executor_active_threads", "Threads running the reactive REST work",
+                pool::getActiveCount);
+        metrics.gauge("rest_executor_queued", "Reactive REST tasks waiting for a thread",
+                () -> pool.getQueue().size());
+        return pool;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            ProxyExecutorFactory.shutdown(executor, "rest");
+        }
+        if (ioHook != null && RxJavaHooks.getOnIOScheduler() == ioHook) {
+            RxJavaHooks.setOnIOScheduler(null);
+        }
+        ioHook = null;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.proxy.BufferPool;
+import uk.ac.ebi.biostudies.submissiontool.upload.ResumableUploads;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the store of the resumable uploads, with the threads forwarding the completed files to the backend,
+ * and schedules the removal of the expired uploads.
+ */
+class ResumableUploadsFactory implements Factory<ResumableUploads> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUploadsFactory.class);
+
+    private ExecutorService forwarder;
+    private ScheduledFuture<?> expiry;
+    private ResumableUploads uploads;
+
+    @Override
+    public ResumableUploads create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        forwarder = Executors.newFixedThreadPool(config.getUploadForwardThreads(),
+                ProxyExecutorFactory.threadFactory("upload-forward-"));
+        URI forwardUrl = config.getServerUrl(config.getUploadForwardPath());
+        if (forwardUrl == null) {
+            logger.error("No backend url configured; completed uploads can't be forwarded");
+        }
+        try {
+            uploads = new ResumableUploads(Paths.get(config.getUploadDir()), config.getUploadMaxSize(),
+                    config.getUploadMaxPerUser(), config.getUploadMaxUserSize(), config.getUploadExpiration(),
+                    forwardUrl, AppContext.getHttpClient(context), forwarder,
+                    new BufferPool(config.getBufferSize(), config.getBufferPoolSize()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create the upload directory " + config.getUploadDir(), e);
+        }
+
+        long interval = Math.max(1000, Math.min(config.getUploadExpiration() / 10, TimeUnit.MINUTES.toMillis(10)));
+        expiry = AppContext.getScheduler(context).scheduleWithFixedDelay(() -> {
+            try {
+                uploads.expire();
+            } catch (RuntimeException e) {
+                // an exception would cancel the scheduled task
+                logger.error("upload expiry failed", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return uploads;
+    }
+
+    @Override
+    public void destroy() {
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        if (forwarder != null) {
+            forwarder.shutdownNow();
+        }
+        if (uploads != null) {
+            uploads.close();
+        }
+    }
+}
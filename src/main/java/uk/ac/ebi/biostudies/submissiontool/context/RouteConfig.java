@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One entry of the proxy route table: requests under the path prefix are sent to the target backend nodes.
+ * Connection, buffer and balancing settings which are not given for the route are taken from the global config.
+ * <p>
+ * Routes are declared in PROXY_ROUTES, separated by white space, each as
+ * {@code prefix=urls} optionally followed by settings in square brackets, e.g.
+ * {@code /files=http://files:8080/backend[maxConnections=100;socketTimeout=600000] /=http://meta:8080/backend}.
+ * Several nodes are given as a comma separated list (see {@link BackendConfig}), e.g.
+ * {@code /=http://meta1:8080/backend,http://meta2:8080/backend*2[balancing=consistent-hash]}.
+ * Prefixes are relative to the proxy servlet path.
+ */
+public class RouteConfig {
+
+    private final String prefix;
+    private final List<BackendConfig> backends;
+
+    private Integer maxConnections;
+    private Integer maxConnectionsPerRoute;
+    private Integer connectTimeout;
+    private Integer socketTimeout;
+    private Integer connectionRequestTimeout;
+    private Integer bufferSize;
+    private String balancing;
+
+    RouteConfig(String prefix, URI target) {
+        this(prefix, Collections.singletonList(new BackendConfig(target, 1)));
+    }
+
+    RouteConfig(String prefix, List<BackendConfig> backends) {
+        this.prefix = normalizePrefix(prefix);
+        this.backends = backends;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public List<BackendConfig> getBackends() {
+        return backends;
+    }
+
+    /**
+     * @return true if the route has its own connection pool settings
+     */
+    boolean hasOwnPool() {
+        return maxConnections != null || maxConnectionsPerRoute != null || connectTimeout != null
+                || socketTimeout != null || connectionRequestTimeout != null;
+    }
+
+    int getMaxConnections(AppConfig config) {
+        return maxConnections != null ? maxConnections : config.getMaxConnections();
+    }
+
+    int getMaxConnectionsPerRoute(AppConfig config) {
+        return maxConnectionsPerRoute != null ? maxConnectionsPerRoute : config.getMaxConnectionsPerRoute();
+    }
+
+    int getConnectTimeout(AppConfig config) {
+        return connectTimeout != null ? connectTimeout : config.getConnectTimeout();
+    }
+
+    int getSocketTimeout(AppConfig config) {
+        return socketTimeout != null ? socketTimeout : config.getSocketTimeout();
+    }
+
+    int getConnectionRequestTimeout(AppConfig config) {
+        return connectionRequestTimeout != null ? connectionRequestTimeout : config.getConnectionRequestTimeout();
+    }
+
+    public int getBufferSize(AppConfig config) {
+        return bufferSize != null ? bufferSize : config.getBufferSize();
+    }
+
+    public String getBalancing(AppConfig config) {
+        return balancing != null ? balancing : config.getBalancing();
+    }
+
+    static List<RouteConfig> parse(String value) {
+        List<RouteConfig> routes = new ArrayList<>();
+        for (String spec : value.trim().split("\\s+")) {
+            if (!spec.isEmpty()) {
+                routes.add(parseRoute(spec));
+            }
+        }
+        return routes;
+    }
+
+    private static RouteConfig parseRoute(String spec) {
+        int eq = spec.indexOf('=');
+        if (eq <= 0) {
+            throw new IllegalArgumentException("Malformed route (prefix=urls expected): " + spec);
+        }
+        String prefix = spec.substring(0, eq);
+        String rest = spec.substring(eq + 1);
+        String settings = null;
+        int bracket = rest.indexOf('[');
+        if (bracket >= 0) {
+            if (!rest.endsWith("]")) {
+                throw new IllegalArgumentException("Malformed route settings: " + spec);
+            }
+            settings = rest.substring(bracket + 1, rest.length() - 1);
+            rest = rest.substring(0, bracket);
+        }
+
+        RouteConfig route = new RouteConfig(prefix, BackendConfig.parse(rest));
+        if (settings != null) {
+            for (String setting : settings.split(";")) {
+                route.set(setting.trim());
+            }
+        }
+        return route;
+    }
+
+    private void set(String setting) {
+        if (setting.isEmpty()) {
+            return;
+        }
+        int eq = setting.indexOf('=');
+        if (eq <= 0) {
+            throw new IllegalArgumentException("Malformed route setting: " + setting);
+        }
+        String name = setting.substring(0, eq).trim();
+        if (name.equals("balancing")) {
+            balancing = setting.substring(eq + 1).trim();
+            return;
+        }
+        Integer value = Integer.valueOf(setting.substring(eq + 1).trim());
+        switch (name) {
+            case "maxConnections":
+                maxConnections = value;
+                break;
+            case "maxConnectionsPerRoute":
+                maxConnectionsPerRoute = value;
+                break;
+            case "connectTimeout":
+                connectTimeout = value;
+                break;
+            case "socketTimeout":
+                socketTimeout = value;
+                break;
+            case "connectionRequestTimeout":
+                connectionRequestTimeout = value;
+                break;
+            case "bufferSize":
+                bufferSize = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown route setting: " + name);
+        }
+    }
+
+    private static String normalizePrefix(String prefix) {
+        String p = prefix.startsWith("/") ? prefix : "/" + prefix;
+        return p.length() > 1 && p.endsWith("/") ? p.substring(0, p.length() - 1) : p;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "=" + backends.stream().map(BackendConfig::toString).collect(Collectors.joining(","));
+    }
+}
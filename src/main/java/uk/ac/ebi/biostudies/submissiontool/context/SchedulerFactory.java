@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import javax.servlet.ServletContext;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Creates the scheduler for the application's periodic housekeeping tasks (health checks, expiry etc.).
+ */
+class SchedulerFactory implements Factory<ScheduledExecutorService> {
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    @Override
+    public ScheduledExecutorService create(ServletContext context) {
+        scheduler = new ScheduledThreadPoolExecutor(2, ProxyExecutorFactory.threadFactory("scheduler-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.auth.SessionValidator;
+
+import javax.servlet.ServletContext;
+import java.net.URI;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the session validator of the stateless authentication (also used to find out the user of a session
+ * in the session mode), and schedules the removal of the expired cache entries.
+ */
+class SessionValidatorFactory implements Factory<SessionValidator> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionValidatorFactory.class);
+
+    private static final long EXPIRE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private ScheduledFuture<?> expiry;
+
+    @Override
+    public SessionValidator create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        URI checkUrl = config.getServerUrl(config.getAuthCheckPath());
+        if (checkUrl == null) {
+            logger.error("No backend url configured; no session token can be validated");
+        }
+        SessionValidator validator = new SessionValidator(AppContext.getHttpClient(context), checkUrl,
+                config.getAuthCacheTtl(), config.getAuthNegativeTtl(), config.getAuthCacheSize(),
+                new SessionValidator.ProfileFields(config.getAuthRolesField(), config.getAuthSuperuserField(),
+                        config.getAuthUserFields()),
+                AppContext.getMetrics(context));
+        AppContext.subscribe(context, (previous, current) -> {
+            if (current.getAuthCacheTtl() != previous.getAuthCacheTtl()
+                    || current.getAuthNegativeTtl() != previous.getAuthNegativeTtl()
+                    || current.getAuthCacheSize() != previous.getAuthCacheSize()) {
+                logger.info("session cache changed: ttl={}, negativeTtl={}, size={}", current.getAuthCacheTtl(),
+                        current.getAuthNegativeTtl(), current.getAuthCacheSize());
+                validator.update(current.getAuthCacheTtl(), current.getAuthNegativeTtl(), current.getAuthCacheSize());
+            }
+        });
+        expiry = AppContext.getScheduler(context).scheduleWithFixedDelay(() -> {
+            try {
+                logger.debug("session cache: {} expired entries removed", validator.expire());
+            } catch (RuntimeException e) {
+                // an exception would cancel the scheduled task
+                logger.error("session cache expiry failed", e);
+            }
+        }, EXPIRE_INTERVAL, EXPIRE_INTERVAL, TimeUnit.MILLISECONDS);
+        return validator;
+    }
+
+    @Override
+    public void destroy() {
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.upload.UploadStore;
+
+import javax.servlet.ServletContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the users' upload store, and schedules the removal of the stored content no user links to any more.
+ * The store needs a persistent directory, PROXY_STORE_DIR; without it there is no store (and no file uploads),
+ * but the rest of the application works.
+ */
+class UploadStoreFactory implements Factory<UploadStore> {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadStoreFactory.class);
+
+    /**
+     * Files are written in large blocks; there are only as many buffers as uploads being stored.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final long GC_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private ScheduledFuture<?> gc;
+
+    @Override
+    public UploadStore create(ServletContext context) {
+        AppConfig config = AppContext.getConfig(context);
+        if (config.getStoreDir() == null) {
+            logger.warn("PROXY_STORE_DIR is not set; the upload store is disabled and file uploads are refused");
+            return null;
+        }
+        UploadStore.Fsync fsync;
+        try {
+            fsync = UploadStore.Fsync.forName(config.getStoreFsync());
+        } catch (IllegalArgumentException e) {
+            logger.error("Unknown fsync policy: " + config.getStoreFsync() + "; using data");
+            fsync = UploadStore.Fsync.DATA;
+        }
+        UploadStore store;
+        try {
+            store = new UploadStore(Paths.get(config.getStoreDir()), fsync, BUFFER_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't create the upload store in " + config.getStoreDir(), e);
+        }
+        gc = AppContext.getScheduler(context).scheduleWithFixedDelay(() -> {
+            try {
+                logger.debug("upload store gc: {} objects removed", store.collectGarbage());
+            } catch (IOException | RuntimeException e) {
+                // an exception would cancel the scheduled task
+                logger.error("upload store gc failed", e);
+            }
+        }, GC_INTERVAL, GC_INTERVAL, TimeUnit.MILLISECONDS);
+        return store;
+    }
+
+    @Override
+    public void destroy() {
+        if (gc != null) {
+            gc.cancel(false);
+        }
+    }
+}
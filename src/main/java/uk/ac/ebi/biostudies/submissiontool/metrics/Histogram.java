@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram in the manner of HdrHistogram: durations (in microseconds) are counted in log-linear
+ * buckets, 32 per power of two, so any recorded value is reported within about 3% of its size, from
+ * microseconds up to over an hour. Recording is a couple of shifts and an atomic increment on one of a few
+ * stripes of bucket counts; the stripes are merged only when the histogram is read.
+ * <p>
+ * Histograms are exported as Prometheus histograms, in seconds: cumulative counts for a fixed set of upper
+ * bounds, so the quantiles can be computed by the server over any time window (histogram_quantile over a rate)
+ * rather than over the whole process lifetime.
+ */
+public class Histogram implements Metric {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final long MAX_VALUE = (1L << 32) - 1;
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    /**
+     * The exported upper bounds in microseconds, from 1ms to 1 minute.
+     */
+    private static final long[] BOUNDS = {
+            1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000, 30000000, 60000000
+    };
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray[] counts = new AtomicLongArray[STRIPES];
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            counts[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMillis(long millis) {
+        record(TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    private void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(index(value));
+        sum.add(value);
+    }
+
+    /**
+     * @return the merged bucket counts
+     */
+    private long[] snapshot() {
+        long[] merged = new long[BUCKETS];
+        for (AtomicLongArray stripe : counts) {
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] += stripe.get(i);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void write(Writer out, String name, String labels) throws IOException {
+        long[] buckets = snapshot();
+        String separator = labels.isEmpty() ? "" : labels + ",";
+        long count = 0;
+        int i = 0;
+        for (long bound : BOUNDS) {
+            // a log-linear bucket straddling the bound is counted in the next one, within the 3% resolution
+            for (; i < buckets.length && highestValue(i) <= bound; i++) {
+                count += buckets[i];
+            }
+            MetricsRegistry.writeSample(out, name + "_bucket", separator + "le=\"" + seconds(bound) + "\"",
+                    Long.toString(count));
+        }
+        for (; i < buckets.length; i++) {
+            count += buckets[i];
+        }
+        MetricsRegistry.writeSample(out, name + "_bucket", separator + "le=\"+Inf\"", Long.toString(count));
+        MetricsRegistry.writeSample(out, name + "_sum", labels, seconds(sum.sum()));
+        MetricsRegistry.writeSample(out, name + "_count", labels, Long.toString(count));
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1e6);
+    }
+
+    /**
+     * Values below 32 get a bucket each; above, a power of two range is split into 32 equal buckets.
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return the highest value counted in the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    private static int stripes() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return Math.min(8, Integer.highestOneBit(Math.max(1, cpus)));
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * One time series of a metric family.
+ */
+interface Metric {
+
+    /**
+     * Writes the sample lines in the Prometheus text format.
+     *
+     * @param labels the formatted labels, e.g. {@code route="/files"}, or an empty string
+     */
+    void write(Writer out, String name, String labels) throws IOException;
+}
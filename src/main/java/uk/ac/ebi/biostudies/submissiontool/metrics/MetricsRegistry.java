@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The application's metrics, exported in the Prometheus text format (version 0.0.4). Metrics are looked up by
+ * name and labels when they are created; the code updating them is expected to keep the returned instances,
+ * so nothing is looked up (or allocated) when they are updated.
+ */
+public class MetricsRegistry {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * @param labels label names and values, alternately
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * A counter whose value is kept elsewhere, e.g. by a cache.
+     */
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, "counter", labels,
+                () -> (out, n, l) -> writeSample(out, n, l, Long.toString(value.getAsLong())));
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, "histogram", labels, Histogram::new);
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, "gauge", labels,
+                () -> (out, n, l) -> writeSample(out, n, l, Double.toString(value.getAsDouble())));
+    }
+
+    private Metric register(String name, String help, String type, String[] labels,
+                            Supplier<Metric> factory) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family.metrics.computeIfAbsent(formatLabels(labels), l -> factory.get());
+    }
+
+    public void write(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            out.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Metric> metric : new TreeMap<>(family.metrics).entrySet()) {
+                metric.getValue().write(out, name, metric.getKey());
+            }
+        }
+        out.flush();
+    }
+
+    static void writeSample(Writer out, String name, String labels, String value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write('{');
+            out.write(labels);
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(value);
+        out.write('\n');
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name-value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A proxy which puts the request into async mode and runs the (blocking) exchange of the delegate proxy
+ * on a separate executor, so the container thread is returned to the pool straight away.
+ * <p>
+ * When the async request times out or fails, the backend requests of the exchange are aborted and the worker
+ * can't write to the response any more, as the container may already be reusing it. The worker's writes to the
+ * client run outside the exchange's lock, so a container thread never waits behind a slow client: a completion
+ * coming while a write is in progress is left to the worker, when the write returns.
+ */
+class AsyncProxy implements Proxy {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncProxy.class);
+
+    @FunctionalInterface
+    private interface ProxyMethod {
+        void apply(Proxy proxy, HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException;
+    }
+
+    private final Proxy delegate;
+    private final Executor executor;
+    private final long timeout;
+
+    AsyncProxy(Proxy delegate, Executor executor, long timeout) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void proxyGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        dispatch(Proxy::proxyGet, req, resp);
+    }
+
+    @Override
+    public void proxyPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        dispatch(Proxy::proxyPost, req, resp);
+    }
+
+    @Override
+    public void proxyDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        dispatch(Proxy::proxyDelete, req, resp);
+    }
+
+    @Override
+    public void proxyPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        dispatch(Proxy::proxyPut, req, resp);
+    }
+
+    private void dispatch(ProxyMethod method, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        ExchangeAbort abort = ExchangeAbort.attach(req);
+        AsyncContext async = req.startAsync(req, resp);
+        async.setTimeout(timeout);
+
+        Exchange exchange = new Exchange(async);
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                exchange.completed();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                logger.warn("async proxy request timed out: {}", req.getRequestURI());
+                abort.abort();
+                exchange.complete(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                logger.error("async proxy request failed: " + req.getRequestURI(), event.getThrowable());
+                abort.abort();
+                exchange.complete(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            executor.execute(() -> {
+                try {
+                    method.apply(delegate, (HttpServletRequest) async.getRequest(), new ExchangeResponse(exchange));
+                    exchange.complete(0);
+                } catch (ServletException | IOException | RuntimeException e) {
+                    if (exchange.isDone()) {
+                        logger.debug("abandoned proxy request ended: {}", e.toString());
+                    } else {
+                        logger.error("proxy request failed: " + req.getRequestURI(), e);
+                        exchange.complete(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("proxy executor is saturated; rejecting {}", req.getRequestURI());
+            exchange.complete(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * The state of an async exchange. Once it is done, the container may recycle the response for another
+     * request, so the worker writes through an {@link ExchangeResponse} which drops everything from then on.
+     * The writes are counted under the exchange's lock but made outside it; the async request is completed only
+     * when no write is in progress.
+     */
+    private static class Exchange {
+        private final AsyncContext async;
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean done;
+        private int status;
+        private int writing;
+        private boolean completePending;
+
+        Exchange(AsyncContext async) {
+            this.async = async;
+        }
+
+        HttpServletResponse getResponse() {
+            return (HttpServletResponse) async.getResponse();
+        }
+
+        boolean isDone() {
+            lock.lock();
+            try {
+                return done;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false if the exchange was done already
+         */
+        boolean finish(int errorStatus) {
+            lock.lock();
+            try {
+                if (done) {
+                    return false;
+                }
+                done = true;
+                status = errorStatus;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Marks the exchange done once the container has completed it, so a pending completion is dropped.
+         */
+        void completed() {
+            lock.lock();
+            try {
+                finish(0);
+                completePending = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Starts a write to the response, which must be ended with {@link #endWrite()}.
+         *
+         * @throws IOException if the exchange is done
+         */
+        void beginWrite() throws IOException {
+            lock.lock();
+            try {
+                if (done) {
+                    throw new IOException("Async proxy request already completed");
+                }
+                writing++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Ends a write, and completes the async request if that has been waiting for the write.
+         */
+        void endWrite() {
+            lock.lock();
+            try {
+                if (--writing > 0 || !completePending) {
+                    return;
+                }
+                completePending = false;
+            } finally {
+                lock.unlock();
+            }
+            async.complete();
+        }
+
+        /**
+         * Completes the async request once; the error status is sent only if nothing has been written yet.
+         * While the worker is writing, the completion is left to it, so the caller doesn't block.
+         */
+        void complete(int errorStatus) {
+            HttpServletResponse resp = getResponse();
+            lock.lock();
+            try {
+                if (!finish(errorStatus)) {
+                    return;
+                }
+                if (errorStatus == 0) {
+                    status = resp.getStatus();
+                }
+                if (writing > 0) {
+                    // the response has been written to, so there is no error status to send
+                    completePending = true;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            // the exchange is done and no write is in progress, so the worker can't touch the response any more
+            try {
+                if (errorStatus > 0 && !resp.isCommitted()) {
+                    resp.sendError(errorStatus);
+                }
+            } catch (IOException e) {
+                logger.debug("failed to send error status " + errorStatus, e);
+            }
+            async.complete();
+        }
+    }
+
+    /**
+     * The response as seen by the worker: the writes after the exchange is done are dropped, and writing to the
+     * body fails, so the worker stops copying it.
+     */
+    private static class ExchangeResponse extends HttpServletResponseWrapper {
+        private final Exchange exchange;
+        private ServletOutputStream output;
+        private PrintWriter writer;
+
+        ExchangeResponse(Exchange exchange) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            exchange.lock.lock();
+            try {
+                checkNotDone();
+                if (output == null) {
+                    output = new ExchangeOutputStream(exchange, super.getOutputStream());
+                }
+                return output;
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            exchange.lock.lock();
+            try {
+                checkNotDone();
+                if (writer == null) {
+                    writer = new PrintWriter(new ExchangeWriter(exchange, super.getWriter()));
+                }
+                return writer;
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            exchange.beginWrite();
+            try {
+                super.sendError(sc, msg);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            exchange.beginWrite();
+            try {
+                super.sendError(sc);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            exchange.beginWrite();
+            try {
+                super.sendRedirect(location);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            exchange.beginWrite();
+            try {
+                super.flushBuffer();
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void setStatus(int sc) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setStatus(sc);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(int sc, String sm) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setStatus(sc, sm);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public int getStatus() {
+            exchange.lock.lock();
+            try {
+                return exchange.done ? exchange.status : super.getStatus();
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            exchange.lock.lock();
+            try {
+                return exchange.done || super.isCommitted();
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setHeader(name, value);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.addHeader(name, value);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setIntHeader(name, value);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.addIntHeader(name, value);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setDateHeader(name, date);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.addDateHeader(name, date);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void setContentType(String type) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setContentType(type);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            exchange.lock.lock();
+            try {
+                if (!exchange.done) {
+                    super.setContentLength(len);
+                }
+            } finally {
+                exchange.lock.unlock();
+            }
+        }
+
+        private void checkNotDone() throws IOException {
+            if (exchange.done) {
+                throw new IOException("Async proxy request already completed");
+            }
+        }
+    }
+
+    private static class ExchangeOutputStream extends ServletOutputStream {
+        private final Exchange exchange;
+        private final ServletOutputStream output;
+
+        ExchangeOutputStream(Exchange exchange, ServletOutputStream output) {
+            this.exchange = exchange;
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            exchange.beginWrite();
+            try {
+                output.write(b);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            exchange.beginWrite();
+            try {
+                output.write(b, off, len);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            exchange.beginWrite();
+            try {
+                output.flush();
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void close() {
+            // the container closes the output when the exchange completes
+        }
+    }
+
+    private static class ExchangeWriter extends Writer {
+        private final Exchange exchange;
+        private final Writer writer;
+
+        ExchangeWriter(Exchange exchange, Writer writer) {
+            this.exchange = exchange;
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            exchange.beginWrite();
+            try {
+                writer.write(cbuf, off, len);
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            exchange.beginWrite();
+            try {
+                writer.flush();
+            } finally {
+                exchange.endWrite();
+            }
+        }
+
+        @Override
+        public void close() {
+            // the container closes the writer when the exchange completes
+        }
+    }
+}
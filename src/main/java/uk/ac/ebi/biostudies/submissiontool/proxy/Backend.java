@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One backend node of a route. Keeps the node's load (requests in progress) and health: a node is taken out
+ * of the balancing when the active health check fails, for a while after too many consecutive failures, or
+ * while its circuit breaker is open.
+ * Request paths are passed on unchanged, appended to the node's base path.
+ */
+class Backend {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final URI target;
+    private final String targetRoot;
+    private final String targetPath;
+    private final int weight;
+    private final CircuitBreaker breaker;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile boolean healthy = true;
+    private volatile long ejectedUntil;
+
+    /**
+     * @param breaker the node's circuit breaker, or null if the calls are not guarded by one
+     */
+    Backend(URI target, int weight, CircuitBreaker breaker) {
+        this.target = target;
+        this.targetRoot = target.getScheme() + "://" + target.getRawAuthority();
+        this.targetPath = target.getRawPath() == null ? "" : target.getRawPath();
+        this.weight = weight;
+        this.breaker = breaker;
+    }
+
+    URI getTarget() {
+        return target;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of requests currently sent to the node
+     */
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    boolean isAvailable(long now) {
+        return healthy && ejectedUntil <= now && isCallPermitted(now);
+    }
+
+    /**
+     * @return true unless the circuit breaker rejects calls
+     */
+    boolean isCallPermitted(long now) {
+        return breaker == null || breaker.allows(now);
+    }
+
+    /**
+     * @return milliseconds until the circuit breaker lets calls through again
+     */
+    long getRetryAfter(long now) {
+        return breaker == null ? 0 : breaker.getRetryAfter(now);
+    }
+
+    /**
+     * Sets the result of the active health check.
+     *
+     * @return true if the node's health has changed
+     */
+    boolean setHealthy(boolean healthy) {
+        if (this.healthy == healthy) {
+            return false;
+        }
+        this.healthy = healthy;
+        if (healthy) {
+            failures.set(0);
+            ejectedUntil = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Starts a request to the node.
+     *
+     * @return false if the circuit breaker rejects the request
+     */
+    boolean begin(long now) {
+        if (breaker != null && !breaker.tryAcquire(now)) {
+            return false;
+        }
+        outstanding.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Ends a request started with {@link #begin(long)}; the node is ejected for the given time when the number
+     * of consecutive failures reaches the limit.
+     *
+     * @param duration the time to the response (or the failure) in milliseconds
+     * @return true if the node has been ejected
+     */
+    boolean end(boolean failed, long duration, int maxFailures, long ejectionTime) {
+        outstanding.decrementAndGet();
+        if (breaker != null) {
+            breaker.record(failed, duration, System.currentTimeMillis());
+        }
+        if (!failed) {
+            failures.set(0);
+            return false;
+        }
+        if (maxFailures > 0 && failures.incrementAndGet() >= maxFailures) {
+            failures.set(0);
+            ejectedUntil = System.currentTimeMillis() + ejectionTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds the backend url for the request path (relative to the proxy servlet) and the raw query string.
+     */
+    URI proxyUrl(String path, String query) {
+        StringBuilder url = new StringBuilder(
+                targetRoot.length() + targetPath.length() + path.length() + (query == null ? 1 : query.length() + 2));
+        url.append(targetRoot);
+        int pathStart = url.length();
+        asPath(url, targetPath);
+        asPath(url, path);
+        if (url.length() == pathStart) {
+            url.append('/');
+        } else if (url.length() > pathStart + 1 && url.charAt(url.length() - 1) == '/') {
+            url.setLength(url.length() - 1);
+        }
+        if (query != null) {
+            url.append('?');
+            appendEscaped(url, query, 0, query.length());
+        }
+        return URI.create(url.toString());
+    }
+
+    /**
+     * Appends the path dropping empty segments, i.e. "a//b/" is appended as "/a/b/".
+     */
+    static void asPath(StringBuilder url, String path) {
+        int start = 0;
+        int len = path.length();
+        while (start < len) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                if (url.length() == 0 || url.charAt(url.length() - 1) != '/') {
+                    url.append('/');
+                }
+                appendEscaped(url, path, start, end);
+                url.append('/');
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Appends the string, percent-encoding the characters which are not allowed in a URI
+     * (the ones already encoded are left as they are).
+     */
+    private static void appendEscaped(StringBuilder url, String s, int start, int end) {
+        for (int i = start; i < end; ) {
+            int cp = s.codePointAt(i);
+            if (cp < 0x80 && isAllowed((char) cp)) {
+                url.append((char) cp);
+            } else {
+                for (byte b : new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8)) {
+                    url.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+                }
+            }
+            i += Character.charCount(cp);
+        }
+    }
+
+    private static boolean isAllowed(char c) {
+        return c > 0x20 && c < 0x7f && "\"<>\\^`{|}".indexOf(c) < 0;
+    }
+
+    @Override
+    public String toString() {
+        return weight == 1 ? target.toString() : target + "*" + weight;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+
+/**
+ * A backend response together with the node which sent it. The node must be released (see
+ * {@link BackendPool#release}) once the response has been consumed.
+ */
+class BackendCall {
+
+    private final Backend backend;
+    private final CloseableHttpResponse response;
+    private final long responseTime;
+
+    BackendCall(Backend backend, CloseableHttpResponse response, long responseTime) {
+        this.backend = backend;
+        this.response = response;
+        this.responseTime = responseTime;
+    }
+
+    Backend getBackend() {
+        return backend;
+    }
+
+    CloseableHttpResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the time to the response headers in milliseconds
+     */
+    long getResponseTime() {
+        return responseTime;
+    }
+}
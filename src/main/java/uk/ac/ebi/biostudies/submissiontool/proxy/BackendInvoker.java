@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Sends the proxied requests to the backend nodes of a route. Idempotent requests (GET, and DELETE when
+ * configured) failing to connect, or on a connection the backend has dropped, are retried on another node
+ * after a jittered backoff. GETs may also be hedged: when the first call hasn't been answered within the
+ * route's 95th percentile response time a second one is sent, and whichever answers first is used.
+ * Both retries and hedges are limited by a shared {@link RetryBudget}.
+ */
+class BackendInvoker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendInvoker.class);
+
+    private static final long MAX_BACKOFF = 2000;
+
+    private final int maxRetries;
+    private final long backoff;
+    private final boolean retryDeletes;
+    private final RetryBudget budget;
+    private final ExecutorService hedgeExecutor;
+    private final long hedgeMinDelay;
+
+    /**
+     * @param hedgeExecutor the executor running hedged calls, or null if requests are not hedged
+     */
+    BackendInvoker(int maxRetries, long backoff, boolean retryDeletes, RetryBudget budget,
+                   ExecutorService hedgeExecutor, long hedgeMinDelay) {
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.retryDeletes = retryDeletes;
+        this.budget = budget;
+        this.hedgeExecutor = hedgeExecutor;
+        this.hedgeMinDelay = hedgeMinDelay;
+    }
+
+    /**
+     * @param backend the node chosen for the request
+     * @param urls    builds the request url for a node, so it can be sent to another one
+     * @param abort   the abort handle of the exchange, which all the requests sent are registered with, or null
+     * @return the backend response, or null if no node accepts calls
+     */
+    BackendCall invoke(Route route, Backend backend, HttpRequestBase request, Function<Backend, URI> urls,
+                       ExchangeAbort abort) throws IOException {
+        budget.onRequest();
+        if (abort != null) {
+            abort.register(request);
+        }
+        boolean idempotent = request instanceof HttpGet || (retryDeletes && request instanceof HttpDelete);
+        int retries = idempotent ? maxRetries : 0;
+        if (hedgeExecutor != null && request instanceof HttpGet) {
+            long p95 = route.getResponseTimes().getP95();
+            if (p95 >= 0) {
+                return invokeHedged(route, backend, request, urls, Math.max(p95, hedgeMinDelay), retries, abort);
+            }
+        }
+        return invokeWithRetries(route, backend, request, urls, retries, null, abort);
+    }
+
+    private BackendCall invokeWithRetries(Route route, Backend backend, HttpRequestBase request,
+                                          Function<Backend, URI> urls, int retries, IOException lastError,
+                                          ExchangeAbort abort) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            long start = System.currentTimeMillis();
+            if (backend == null || !backend.begin(start)) {
+                if (lastError != null) {
+                    throw lastError;
+                }
+                return null;
+            }
+            try {
+                CloseableHttpResponse response = route.getClient().execute(request);
+                long responseTime = System.currentTimeMillis() - start;
+                route.getResponseTimes().record(responseTime);
+                return new BackendCall(backend, response, responseTime);
+            } catch (IOException e) {
+                // an aborted exchange says nothing about the health of the node
+                route.getBackends().release(backend, !request.isAborted(), System.currentTimeMillis() - start);
+                if (attempt >= retries || !isRetryable(e) || !budget.tryWithdraw()) {
+                    throw e;
+                }
+                lastError = e;
+            } catch (RuntimeException e) {
+                // e.g. the connection pool has been shut down
+                route.getBackends().release(backend, true, System.currentTimeMillis() - start);
+                throw e;
+            }
+            logger.debug("retrying {} after: {}", request.getURI(), lastError.toString());
+            sleep(backoff(attempt));
+            backend = route.getBackends().selectOther(backend);
+            if (backend != null) {
+                request = copy(request, urls.apply(backend), abort);
+            }
+        }
+    }
+
+    private BackendCall invokeHedged(Route route, Backend backend, HttpRequestBase request,
+                                     Function<Backend, URI> urls, long delay, int retries, ExchangeAbort abort)
+            throws IOException {
+        if (!backend.begin(System.currentTimeMillis())) {
+            return null;
+        }
+        Race race = new Race(route);
+        race.start(backend, request);
+        IOException lastError = null;
+        try {
+            Attempt done = race.poll(delay);
+            if (done == null) {
+                // a hedge only makes sense on another node, so the budget isn't spent on single node routes
+                Backend other = route.getBackends().selectOther(backend);
+                if (other != null && other != backend && budget.tryWithdraw()
+                        && other.begin(System.currentTimeMillis())) {
+                    logger.debug("hedging {} after {}ms", request.getURI(), delay);
+                    race.start(other, copy(request, urls.apply(other), abort));
+                }
+            }
+            while (done != null || race.hasPending()) {
+                if (done == null) {
+                    done = race.take();
+                }
+                if (done.response != null) {
+                    race.finish(done);
+                    route.getResponseTimes().record(done.responseTime);
+                    return new BackendCall(done.backend, done.response, done.responseTime);
+                }
+                route.getBackends().release(done.backend, !done.request.isAborted(),
+                        System.currentTimeMillis() - done.start);
+                lastError = done.error;
+                done = null;
+            }
+        } catch (InterruptedException e) {
+            race.finish(null);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for backend response");
+        }
+        if (retries > 0 && isRetryable(lastError) && budget.tryWithdraw()) {
+            Backend other = route.getBackends().selectOther(backend);
+            return invokeWithRetries(route, other, other == null ? request : copy(request, urls.apply(other), abort),
+                    urls, retries - 1, lastError, abort);
+        }
+        throw lastError;
+    }
+
+    /**
+     * @return true for the failures which happen before the backend has seen the request
+     */
+    private static boolean isRetryable(IOException e) {
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof NoHttpResponseException;
+    }
+
+    /**
+     * @return the exponential backoff with "equal jitter": half of it fixed, half random
+     */
+    private long backoff(int attempt) {
+        long max = Math.min(MAX_BACKOFF, backoff << Math.min(attempt, 10));
+        return max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting to retry");
+        }
+    }
+
+    /**
+     * A new request for the url with the same headers; only entity-less (GET and DELETE) requests are copied.
+     * A clone wouldn't do, as it shares the abort state with the original.
+     */
+    private static HttpRequestBase copy(HttpRequestBase request, URI url, ExchangeAbort abort) {
+        HttpRequestBase copy = request instanceof HttpDelete ? new HttpDelete(url) : new HttpGet(url);
+        copy.setHeaders(request.getAllHeaders());
+        copy.setConfig(request.getConfig());
+        if (abort != null) {
+            abort.register(copy);
+        }
+        return copy;
+    }
+
+    private static class Attempt {
+        private final Backend backend;
+        private final HttpRequestBase request;
+        private final long start;
+        private CloseableHttpResponse response;
+        private long responseTime;
+        private IOException error;
+
+        Attempt(Backend backend, HttpRequestBase request, long start) {
+            this.backend = backend;
+            this.request = request;
+            this.start = start;
+        }
+    }
+
+    /**
+     * The concurrent calls of a hedged request. Once a response is taken, the other calls are aborted and their
+     * late responses are discarded.
+     */
+    private class Race {
+        private final Route route;
+        private final BlockingQueue<Attempt> done = new LinkedBlockingQueue<>();
+        private final List<Attempt> started = new ArrayList<>(2);
+        private int pending;
+        private boolean finished;
+
+        Race(Route route) {
+            this.route = route;
+        }
+
+        /**
+         * Starts a call on the hedge executor, or runs it right away if the executor is saturated.
+         */
+        void start(Backend backend, HttpRequestBase request) {
+            Attempt attempt = new Attempt(backend, request, System.currentTimeMillis());
+            started.add(attempt);
+            pending++;
+            try {
+                hedgeExecutor.execute(() -> run(attempt));
+            } catch (RejectedExecutionException e) {
+                run(attempt);
+            }
+        }
+
+        boolean hasPending() {
+            return pending > 0;
+        }
+
+        Attempt poll(long millis) throws InterruptedException {
+            Attempt attempt = done.poll(millis, TimeUnit.MILLISECONDS);
+            if (attempt != null) {
+                pending--;
+            }
+            return attempt;
+        }
+
+        Attempt take() throws InterruptedException {
+            Attempt attempt = done.take();
+            pending--;
+            return attempt;
+        }
+
+        /**
+         * Aborts the calls other than the winner and discards their responses.
+         */
+        void finish(Attempt winner) {
+            List<Attempt> late = new ArrayList<>();
+            synchronized (this) {
+                finished = true;
+                done.drainTo(late);
+            }
+            for (Attempt attempt : started) {
+                if (attempt != winner) {
+                    attempt.request.abort();
+                }
+            }
+            late.forEach(this::discard);
+        }
+
+        private void run(Attempt attempt) {
+            try {
+                attempt.response = route.getClient().execute(attempt.request);
+                attempt.responseTime = System.currentTimeMillis() - attempt.start;
+            } catch (IOException e) {
+                attempt.error = e;
+            } catch (RuntimeException e) {
+                // still handed over, so the call is recorded as failed and the waiting request isn't stuck
+                attempt.error = new IOException("Backend call failed", e);
+            }
+            synchronized (this) {
+                if (!finished) {
+                    done.add(attempt);
+                    return;
+                }
+            }
+            discard(attempt);
+        }
+
+        private void discard(Attempt attempt) {
+            if (attempt.response != null) {
+                try {
+                    attempt.response.close();
+                } catch (IOException e) {
+                    logger.debug("failed to close discarded response", e);
+                }
+            }
+            // the call lost the race (or was aborted) rather than failed
+            route.getBackends().release(attempt.backend, false, System.currentTimeMillis() - attempt.start);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The backend nodes of a route and the strategy choosing between them. Nodes failing the active health
+ * check, or ejected after too many consecutive failures (connection errors, 502-504 responses), get no
+ * requests until they recover; if every node is down the requests are spread over all of them anyway,
+ * except the ones whose circuit breaker is open.
+ */
+class BackendPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendPool.class);
+
+    /**
+     * Points on the hash ring per unit of node weight.
+     */
+    private static final int HASH_REPLICAS = 100;
+
+    private static final int HEALTH_CHECK_TIMEOUT = 2000;
+
+    private final Backend[] backends;
+    private final BalancingStrategy strategy;
+    private final int maxFailures;
+    private final long ejectionTime;
+
+    /**
+     * Weighted round-robin order of the nodes, with the heavier nodes' turns interleaved.
+     */
+    private final Backend[] schedule;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final long[] ringHashes;
+    private final Backend[] ringNodes;
+
+    BackendPool(List<Backend> backends, BalancingStrategy strategy, int maxFailures, long ejectionTime) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("No backend nodes given");
+        }
+        this.backends = backends.toArray(new Backend[backends.size()]);
+        this.strategy = strategy;
+        this.maxFailures = maxFailures;
+        this.ejectionTime = ejectionTime;
+        this.schedule = schedule(this.backends);
+        if (strategy == BalancingStrategy.CONSISTENT_HASH) {
+            int points = 0;
+            for (Backend backend : this.backends) {
+                points += backend.getWeight() * HASH_REPLICAS;
+            }
+            ringHashes = new long[points];
+            ringNodes = new Backend[points];
+            buildRing();
+        } else {
+            ringHashes = null;
+            ringNodes = null;
+        }
+    }
+
+    int size() {
+        return backends.length;
+    }
+
+    /**
+     * @return the node to send the request to, or null if the circuit breakers of all nodes are open
+     */
+    Backend select(HttpServletRequest req) {
+        long now = System.currentTimeMillis();
+        if (backends.length == 1) {
+            return backends[0].isCallPermitted(now) ? backends[0] : null;
+        }
+        Backend backend;
+        switch (strategy) {
+            case LEAST_OUTSTANDING:
+                backend = leastOutstanding(now);
+                break;
+            case CONSISTENT_HASH:
+                String session = req.getHeader(ResponseCache.SESSION_TOKEN_HEADER);
+                backend = session == null ? roundRobin(now) : hashed(session, now);
+                break;
+            default:
+                backend = roundRobin(now);
+        }
+        return backend != null ? backend : anyPermitted(now);
+    }
+
+    /**
+     * @return an available node other than the given one, the given node itself if there is no other,
+     * or null if it doesn't accept calls either
+     */
+    Backend selectOther(Backend other) {
+        long now = System.currentTimeMillis();
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < schedule.length; i++) {
+            Backend backend = schedule[(start + i) % schedule.length];
+            if (backend != other && backend.isAvailable(now)) {
+                return backend;
+            }
+        }
+        return other.isCallPermitted(now) ? other : null;
+    }
+
+    /**
+     * @return seconds until a node's circuit breaker lets calls through again, at least 1
+     */
+    long getRetryAfter() {
+        long now = System.currentTimeMillis();
+        long retryAfter = Long.MAX_VALUE;
+        for (Backend backend : backends) {
+            retryAfter = Math.min(retryAfter, backend.getRetryAfter(now));
+        }
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfter + 999));
+    }
+
+    /**
+     * Ends a request to the node (see {@link Backend#begin(long)}).
+     */
+    void release(Backend backend, boolean failed, long duration) {
+        if (backend.end(failed, duration, maxFailures, ejectionTime)) {
+            logger.warn("backend {} ejected for {}ms after {} consecutive failures",
+                    backend, ejectionTime, maxFailures);
+        }
+    }
+
+    /**
+     * @return true if the response status means the node couldn't serve the request
+     */
+    static boolean isFailure(int status) {
+        return status == HttpServletResponse.SC_BAD_GATEWAY
+                || status == HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                || status == HttpServletResponse.SC_GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * Probes every node with a GET of the given path; any response other than a 5xx counts as healthy.
+     */
+    void checkHealth(CloseableHttpClient client, String path) {
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(HEALTH_CHECK_TIMEOUT)
+                .setSocketTimeout(HEALTH_CHECK_TIMEOUT)
+                .setConnectionRequestTimeout(HEALTH_CHECK_TIMEOUT)
+                .build();
+        for (Backend backend : backends) {
+            HttpGet probe = new HttpGet(backend.proxyUrl(path, null));
+            probe.setConfig(config);
+            boolean healthy;
+            try (CloseableHttpResponse response = client.execute(probe)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                healthy = response.getStatusLine().getStatusCode() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            } catch (IOException e) {
+                logger.debug("health check of " + backend + " failed", e);
+                healthy = false;
+            }
+            if (backend.setHealthy(healthy)) {
+                if (healthy) {
+                    logger.info("backend {} is healthy again", backend);
+                } else {
+                    logger.warn("backend {} failed health check", backend);
+                }
+            }
+        }
+    }
+
+    private Backend leastOutstanding(long now) {
+        // a random start, so the ties are not always won by the first node
+        int start = ThreadLocalRandom.current().nextInt(backends.length);
+        Backend best = null;
+        for (int i = 0; i < backends.length; i++) {
+            Backend backend = backends[(start + i) % backends.length];
+            if (backend.isAvailable(now) && (best == null || isLessLoaded(backend, best))) {
+                best = backend;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isLessLoaded(Backend a, Backend b) {
+        // (outstanding + 1) / weight compared without division; the +1 makes heavier idle nodes go first
+        return (long) (a.getOutstanding() + 1) * b.getWeight() < (long) (b.getOutstanding() + 1) * a.getWeight();
+    }
+
+    private Backend roundRobin(long now) {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < schedule.length; i++) {
+            Backend backend = schedule[(start + i) % schedule.length];
+            if (backend.isAvailable(now)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private Backend anyPermitted(long now) {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < schedule.length; i++) {
+            Backend backend = schedule[(start + i) % schedule.length];
+            if (backend.isCallPermitted(now)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private Backend hashed(String key, long now) {
+        int i = Arrays.binarySearch(ringHashes, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        // the next available node clockwise, so only the sessions of a node which is down move elsewhere
+        for (int n = 0; n < ringNodes.length; n++) {
+            Backend backend = ringNodes[(i + n) % ringNodes.length];
+            if (backend.isAvailable(now)) {
+                return backend;
+            }
+        }
+        return null;
+    }
+
+    private void buildRing() {
+        int n = 0;
+        long[] hashes = new long[ringHashes.length];
+        Backend[] nodes = new Backend[ringHashes.length];
+        for (Backend backend : backends) {
+            for (int i = 0; i < backend.getWeight() * HASH_REPLICAS; i++) {
+                hashes[n] = hash(backend.getTarget() + "#" + i);
+                nodes[n] = backend;
+                n++;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        for (int i = 0; i < n; i++) {
+            ringHashes[i] = hashes[order[i]];
+            ringNodes[i] = nodes[order[i]];
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes with a final avalanche step, so similar keys spread over the ring.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Smooth weighted round-robin: each turn goes to the node with the highest accumulated weight,
+     * which is then lowered by the total weight.
+     */
+    private static Backend[] schedule(Backend[] backends) {
+        int total = 0;
+        for (Backend backend : backends) {
+            total += backend.getWeight();
+        }
+        Backend[] schedule = new Backend[total];
+        int[] current = new int[backends.length];
+        for (int turn = 0; turn < total; turn++) {
+            int best = 0;
+            for (int i = 0; i < backends.length; i++) {
+                current[i] += backends[i].getWeight();
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[turn] = backends[best];
+        }
+        return schedule;
+    }
+
+    @Override
+    public String toString() {
+        return strategy + Arrays.toString(backends);
+    }
+}
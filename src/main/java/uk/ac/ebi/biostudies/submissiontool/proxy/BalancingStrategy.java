@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+/**
+ * How a route picks the backend node for a request.
+ */
+enum BalancingStrategy {
+    /**
+     * The node with the fewest requests in progress relative to its weight.
+     */
+    LEAST_OUTSTANDING("least-outstanding"),
+    /**
+     * The nodes in turn, each getting a share of the requests proportional to its weight.
+     */
+    ROUND_ROBIN("round-robin"),
+    /**
+     * The same node for the same session (X-Session-Token), so the node's caches are reused;
+     * requests without a session are balanced round-robin.
+     */
+    CONSISTENT_HASH("consistent-hash");
+
+    private final String name;
+
+    BalancingStrategy(String name) {
+        this.name = name;
+    }
+
+    static BalancingStrategy forName(String name) {
+        for (BalancingStrategy strategy : values()) {
+            if (strategy.name.equalsIgnoreCase(name)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown balancing strategy: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
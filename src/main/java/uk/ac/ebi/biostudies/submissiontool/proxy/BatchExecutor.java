@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.admission.AdmissionController;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimitFilter;
+import uk.ac.ebi.biostudies.submissiontool.admission.RateLimiter;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the sub-requests of a batch through the proxy, the same way as the requests sent to the proxy servlet:
+ * with the same routes, pooled backend connections, cache, retries and circuit breakers. At most
+ * {@code parallelism} sub-requests of a batch run at the same time; the results are handed over as they
+ * complete, not in the order of the items.
+ * <p>
+ * Every sub-request is charged on its own, as if it had been sent to the proxy servlet: it takes a token of the
+ * client's rate limit of its path, and an admission slot (without waiting for one), or gets 429 or 503.
+ * A sub-request given up on is aborted, which shuts its backend connection down; interrupting its thread
+ * wouldn't stop a blocking socket read.
+ * <p>
+ * The proxy servlet publishes its executor as a servlet context attribute, see {@link #get(ServletContext)}.
+ */
+public class BatchExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchExecutor.class);
+
+    private static final String ATTRIBUTE = BatchExecutor.class.getName();
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    public static class Item {
+        private final String id;
+        private final String method;
+        private final String path;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        /**
+         * @param path    the path relative to the proxy servlet, with the query string if any
+         * @param headers the headers overriding the ones of the batch request
+         * @param body    the request body, or null
+         */
+        public Item(String id, String method, String path, Map<String, String> headers, byte[] body) {
+            this.id = id;
+            this.method = method;
+            this.path = path;
+            this.headers = headers == null ? Collections.emptyMap() : headers;
+            this.body = body;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    public static class Result {
+        private final String id;
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        Result(String id, int status, Map<String, List<String>> headers, byte[] body) {
+            this.id = id;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        Result(String id, int status) {
+            this(id, status, Collections.emptyMap(), new byte[0]);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResultConsumer {
+        void accept(Result result) throws IOException;
+    }
+
+    /**
+     * A sub-request submitted to the executor.
+     */
+    private static class Running {
+        private final Item item;
+        private final AdmissionController.Ticket ticket;
+        private final ExchangeAbort abort;
+
+        Running(Item item, AdmissionController.Ticket ticket, ExchangeAbort abort) {
+            this.item = item;
+            this.ticket = ticket;
+            this.abort = abort;
+        }
+
+        /**
+         * Gives up on the sub-request; the ticket is released here too, as a task cancelled before it has
+         * started never releases it.
+         */
+        void cancel(Future<Result> future) {
+            abort.abort();
+            future.cancel(true);
+            ticket.release();
+        }
+    }
+
+    private final Proxy proxy;
+    private final String servletPath;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxBodySize;
+    private final AdmissionController admission;
+    private final RateLimiter limiter;
+
+    BatchExecutor(Proxy proxy, String servletPath, ExecutorService executor, int parallelism, int maxBodySize,
+                  AdmissionController admission, RateLimiter limiter) {
+        this.proxy = proxy;
+        this.servletPath = servletPath;
+        this.executor = executor;
+        this.parallelism = Math.max(parallelism, 1);
+        this.maxBodySize = maxBodySize;
+        this.admission = admission;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return the executor of the proxy servlet, or null if the servlet hasn't been initialised
+     */
+    public static BatchExecutor get(ServletContext context) {
+        return (BatchExecutor) context.getAttribute(ATTRIBUTE);
+    }
+
+    void publish(ServletContext context) {
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    static void unpublish(ServletContext context) {
+        context.removeAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * Executes the items and passes the results to the consumer, on the calling thread, in the order the
+     * sub-requests complete. A sub-request over the client's rate limit gets 429; one which can't be admitted
+     * or started because the node or the executor is saturated gets 503; the ones still running when the
+     * timeout expires are aborted and get 504.
+     *
+     * @param batch   the batch request, supplying the common headers (session token, cookies)
+     * @param timeout the time allowed for the whole batch in milliseconds
+     */
+    public void execute(HttpServletRequest batch, HttpServletResponse batchResponse, List<Item> items,
+                        long timeout, ResultConsumer consumer) throws IOException {
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<Result>, Running> running = new IdentityHashMap<>();
+        String client = RateLimitFilter.getClientKey(batch);
+        long deadline = System.currentTimeMillis() + timeout;
+        int next = 0;
+        try {
+            while (next < items.size() || !running.isEmpty()) {
+                while (next < items.size() && running.size() < parallelism) {
+                    Item item = items.get(next++);
+                    if (!isSupported(item.getMethod())) {
+                        consumer.accept(new Result(item.getId(), HttpServletResponse.SC_METHOD_NOT_ALLOWED));
+                        continue;
+                    }
+                    Result limited = rateLimit(item, client);
+                    if (limited != null) {
+                        consumer.accept(limited);
+                        continue;
+                    }
+                    AdmissionController.Ticket ticket;
+                    try {
+                        ticket = admission.tryAdmit(AdmissionController.charge(
+                                item.getBody() == null ? 0 : item.getBody().length, false));
+                    } catch (AdmissionController.RejectedException e) {
+                        logger.debug("batch sub-request {}: {}", item.getPath(), e.getMessage());
+                        consumer.accept(new Result(item.getId(), HttpServletResponse.SC_SERVICE_UNAVAILABLE));
+                        continue;
+                    }
+                    // the request is copied here, the container's request must not be read by other threads
+                    SubRequest req = new SubRequest(batch, servletPath, item);
+                    SubResponse resp = new SubResponse(batchResponse, maxBodySize);
+                    ExchangeAbort abort = ExchangeAbort.attach(req);
+                    try {
+                        running.put(completion.submit(() -> run(item, req, resp, ticket)),
+                                new Running(item, ticket, abort));
+                    } catch (RejectedExecutionException e) {
+                        ticket.release();
+                        consumer.accept(new Result(item.getId(), HttpServletResponse.SC_SERVICE_UNAVAILABLE));
+                    }
+                }
+                if (running.isEmpty()) {
+                    continue;
+                }
+                Future<Result> done = completion.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    timeOut(running, items.subList(next, items.size()), consumer);
+                    return;
+                }
+                running.remove(done);
+                consumer.accept(done.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(running);
+            throw new IOException("Batch interrupted", e);
+        } catch (ExecutionException e) {
+            // run() handles the failures of the sub-requests, so this is a bug
+            cancel(running);
+            throw new IOException("Batch sub-request failed", e.getCause());
+        } catch (IOException e) {
+            // the client has gone, there is no point in finishing the batch
+            cancel(running);
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a token of the client's rate limit of the sub-request path.
+     *
+     * @return the 429 result if the sub-request is over the limit, otherwise null
+     */
+    private Result rateLimit(Item item, String client) {
+        if (client == null) {
+            return null;
+        }
+        int query = item.getPath().indexOf('?');
+        String path = servletPath + (query < 0 ? item.getPath() : item.getPath().substring(0, query));
+        RateLimiter.Decision decision = limiter.acquire(path, client);
+        if (decision == null || decision.isAllowed()) {
+            return null;
+        }
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put("RateLimit-Limit", Collections.singletonList(Long.toString(decision.getLimit())));
+        headers.put("RateLimit-Remaining", Collections.singletonList(Long.toString(decision.getRemaining())));
+        headers.put("RateLimit-Reset", Collections.singletonList(Long.toString(decision.getReset())));
+        headers.put("Retry-After", Collections.singletonList(Long.toString(decision.getReset())));
+        return new Result(item.getId(), SC_TOO_MANY_REQUESTS, headers, new byte[0]);
+    }
+
+    private static void cancel(Map<Future<Result>, Running> running) {
+        running.forEach((future, sub) -> sub.cancel(future));
+    }
+
+    private static void timeOut(Map<Future<Result>, Running> running, List<Item> pending,
+                                ResultConsumer consumer) throws IOException {
+        logger.warn("batch timed out with {} sub-requests running, {} pending", running.size(), pending.size());
+        cancel(running);
+        for (Running sub : running.values()) {
+            consumer.accept(new Result(sub.item.getId(), HttpServletResponse.SC_GATEWAY_TIMEOUT));
+        }
+        for (Item item : pending) {
+            consumer.accept(new Result(item.getId(), HttpServletResponse.SC_GATEWAY_TIMEOUT));
+        }
+    }
+
+    private Result run(Item item, SubRequest req, SubResponse resp, AdmissionController.Ticket ticket) {
+        try {
+            switch (item.getMethod()) {
+                case "GET":
+                    proxy.proxyGet(req, resp);
+                    break;
+                case "POST":
+                    proxy.proxyPost(req, resp);
+                    break;
+                case "PUT":
+                    proxy.proxyPut(req, resp);
+                    break;
+                case "DELETE":
+                    proxy.proxyDelete(req, resp);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported method " + item.getMethod());
+            }
+        } catch (ServletException | IOException | RuntimeException e) {
+            // the body may have been cut off, so nothing of the response is passed on
+            logger.warn("batch sub-request {} {} failed: {}", item.getMethod(), item.getPath(), e.toString());
+            return new Result(item.getId(), HttpServletResponse.SC_BAD_GATEWAY);
+        } finally {
+            ticket.release();
+        }
+        return new Result(item.getId(), resp.getStatus(), resp.getHeaderMap(), resp.getBody());
+    }
+
+    private static boolean isSupported(String method) {
+        switch (method) {
+            case "GET":
+            case "POST":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of equally sized byte buffers used to stream bodies through the proxy.
+ * Buffers are borrowed for the duration of one copy and returned afterwards; when the pool
+ * is empty a new buffer is allocated, when it is full the returned buffer is dropped.
+ * The resumable uploads have a pool of their own for the chunks written to disk.
+ */
+public class BufferPool {
+
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+
+    /**
+     * A body without length is flushed once this much of it is unflushed, or after {@link #FLUSH_INTERVAL}.
+     */
+    private static final int FLUSH_THRESHOLD = 32 * 1024;
+
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+        this.buffers = new ArrayBlockingQueue<>(Math.max(maxPooled, 1));
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Copies the input stream to the output in bulk. Small bodies of a known length get a buffer
+     * of the exact size instead of a pooled one.
+     *
+     * @param contentLength the expected length of the input, or a negative value if unknown
+     * @return the number of bytes copied
+     */
+    long copy(InputStream input, OutputStream output, long contentLength) throws IOException {
+        if (contentLength == 0) {
+            return 0;
+        }
+        boolean pooled = contentLength < 0 || contentLength >= bufferSize;
+        byte[] buffer = pooled ? borrow() : new byte[(int) contentLength];
+        try {
+            return copy(input, output, buffer, contentLength < 0);
+        } finally {
+            if (pooled) {
+                release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Copies the input stream to the output in bulk, leaving flushing to the caller.
+     *
+     * @return the number of bytes copied
+     */
+    long transfer(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = borrow();
+        try {
+            long total = 0;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private static long copy(InputStream input, OutputStream output, byte[] buffer, boolean unknownLength)
+            throws IOException {
+        long total = 0;
+        long unflushed = 0;
+        long lastFlush = System.nanoTime();
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+            total += read;
+            unflushed += read;
+            // a body without length may be produced slowly by the backend, so pass on what we have got every
+            // now and then instead of holding it in the container's buffer; not on every short read though,
+            // as each flush of a compressed response costs a sync flush of the deflater
+            if (unknownLength && (unflushed >= FLUSH_THRESHOLD || System.nanoTime() - lastFlush >= FLUSH_INTERVAL)) {
+                output.flush();
+                unflushed = 0;
+                lastFlush = System.nanoTime();
+            }
+        }
+        output.flush();
+        return total;
+    }
+
+    /**
+     * @return a buffer, to be released once it is no longer used
+     */
+    public byte[] borrow() {
+        byte[] buffer = buffers.poll();
+        return buffer == null ? new byte[bufferSize] : buffer;
+    }
+
+    public void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A circuit breaker for the calls to one backend node of a route. It judges by a sliding window of the most
+ * recent calls and opens when too many of them failed or were slow; while open it rejects calls straight away,
+ * so requests don't pile up waiting on a degraded backend. After the open time a few probe calls are let
+ * through (half-open): if they all succeed the breaker closes, otherwise it opens again. Probes not recorded
+ * within the open time count as failed, so a lost probe can't keep the breaker half-open for good.
+ */
+class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int minCalls;
+    private final int failureRate;
+    private final long slowCallTime;
+    private final int slowCallRate;
+    private final long openTime;
+    private final int halfOpenCalls;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    // not a monitor: a virtual thread blocked on a monitor (or logging while holding one) pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private State state = State.CLOSED;
+    private long openUntil;
+    private long halfOpenSince;
+    private int probes;
+    private int probeSuccesses;
+
+    CircuitBreaker(String name, int window, int minCalls, int failureRate, long slowCallTime, int slowCallRate,
+                   long openTime, int halfOpenCalls) {
+        this.name = name;
+        this.minCalls = Math.max(1, Math.min(minCalls, window));
+        this.failureRate = failureRate;
+        this.slowCallTime = slowCallTime;
+        this.slowCallRate = slowCallRate;
+        this.openTime = openTime;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.failed = new boolean[window];
+        this.slow = new boolean[window];
+    }
+
+    /**
+     * @return true if the breaker would let a call through now (without taking a probe permit)
+     */
+    boolean allows(long now) {
+        lock.lock();
+        try {
+            expireProbes(now);
+            switch (state) {
+                case OPEN:
+                    return now >= openUntil;
+                case HALF_OPEN:
+                    return probes < halfOpenCalls;
+                default:
+                    return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit for a call; every permitted call must be {@link #record recorded}.
+     *
+     * @return false if the call is rejected
+     */
+    boolean tryAcquire(long now) {
+        lock.lock();
+        try {
+            expireProbes(now);
+            if (state == State.OPEN) {
+                if (now < openUntil) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                halfOpenSince = now;
+                probes = 0;
+                probeSuccesses = 0;
+                logger.info("circuit breaker {} half-open", name);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenCalls) {
+                    return false;
+                }
+                probes++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     *
+     * @param duration the time to the backend response in milliseconds
+     */
+    void record(boolean failure, long duration, long now) {
+        lock.lock();
+        try {
+            boolean slowCall = slowCallTime > 0 && duration >= slowCallTime;
+            if (state == State.HALF_OPEN) {
+                if (failure || slowCall) {
+                    open(now);
+                } else if (++probeSuccesses >= halfOpenCalls) {
+                    close();
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // a call started before the breaker opened
+                return;
+            }
+            if (calls == failed.length) {
+                failures -= failed[next] ? 1 : 0;
+                slowCalls -= slow[next] ? 1 : 0;
+            } else {
+                calls++;
+            }
+            failed[next] = failure;
+            slow[next] = slowCall;
+            failures += failure ? 1 : 0;
+            slowCalls += slowCall ? 1 : 0;
+            next = (next + 1) % failed.length;
+
+            if (calls >= minCalls
+                    && (failures * 100 >= failureRate * calls || slowCalls * 100 >= slowCallRate * calls)) {
+                logger.warn("circuit breaker {} open: {} of {} calls failed, {} slow",
+                        name, failures, calls, slowCalls);
+                open(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return milliseconds until the breaker lets probe calls through, 0 if it isn't open
+     */
+    long getRetryAfter(long now) {
+        lock.lock();
+        try {
+            return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the breaker again if the probes have all been let through but haven't been recorded in time.
+     */
+    private void expireProbes(long now) {
+        if (state == State.HALF_OPEN && probes >= halfOpenCalls && now - halfOpenSince >= openTime) {
+            logger.warn("circuit breaker {} open: {} probe calls not recorded", name, probes - probeSuccesses);
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openTime;
+    }
+
+    private void close() {
+        logger.info("circuit breaker {} closed", name);
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
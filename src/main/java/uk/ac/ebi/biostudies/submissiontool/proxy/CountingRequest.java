@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.IOException;
+
+/**
+ * Counts the bytes of the request body read by the proxy, whatever the request's Content-Length says: a chunked
+ * upload has none, and a body over 2 GB doesn't fit in {@link HttpServletRequest#getContentLength()}.
+ */
+class CountingRequest extends HttpServletRequestWrapper {
+
+    private long bytesRead;
+    private ServletInputStream input;
+
+    CountingRequest(HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * @return the number of bytes of the body read so far
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (input == null) {
+            ServletInputStream body = super.getInputStream();
+            input = new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    int b = body.read();
+                    if (b != -1) {
+                        bytesRead++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = body.read(b, off, len);
+                    if (read > 0) {
+                        bytesRead += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return body.available();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    body.close();
+                }
+            };
+        }
+        return input;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+import javax.servlet.ServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aborts the backend requests of an exchange which has been given up on (an async request that timed out, a
+ * batch sub-request past the batch deadline). Interrupting the thread doesn't stop a blocking socket read, while
+ * aborting the request shuts its connection down, so the thread and the pooled connection are freed right away.
+ * <p>
+ * The handle is attached to the servlet request; the proxy registers every backend request it sends for it,
+ * including the retries and hedges.
+ */
+class ExchangeAbort {
+
+    private static final String ATTRIBUTE = ExchangeAbort.class.getName();
+
+    private final List<HttpRequestBase> requests = new ArrayList<>(2);
+    private boolean aborted;
+
+    static ExchangeAbort attach(ServletRequest req) {
+        ExchangeAbort abort = new ExchangeAbort();
+        req.setAttribute(ATTRIBUTE, abort);
+        return abort;
+    }
+
+    /**
+     * @return the handle attached to the request, or null if the exchange can't be aborted
+     */
+    static ExchangeAbort get(ServletRequest req) {
+        return (ExchangeAbort) req.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * Registers a backend request of the exchange; it is aborted at once if the exchange already has been.
+     */
+    void register(HttpRequestBase request) {
+        synchronized (this) {
+            if (!aborted) {
+                requests.add(request);
+                return;
+            }
+        }
+        request.abort();
+    }
+
+    void abort() {
+        List<HttpRequestBase> registered;
+        synchronized (this) {
+            if (aborted) {
+                return;
+            }
+            aborted = true;
+            registered = new ArrayList<>(requests);
+            requests.clear();
+        }
+        registered.forEach(HttpRequestBase::abort);
+    }
+
+    synchronized boolean isAborted() {
+        return aborted;
+    }
+}
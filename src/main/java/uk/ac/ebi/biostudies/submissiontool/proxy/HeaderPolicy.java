@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.HttpMessage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+
+/**
+ * Decides which headers pass through the proxy. Hop-by-hop headers (RFC 7230, section 6.1), the headers
+ * listed in Connection and the ones the proxy sets itself are dropped in both directions; the proxy's own
+ * cookies (e.g. its JSESSIONID) are removed from the Cookie header sent to the backend.
+ * The header names are looked up case-insensitively in tables built once, so forwarding a header allocates
+ * nothing beyond the header itself.
+ */
+class HeaderPolicy {
+
+    private static final String CONNECTION = "Connection";
+
+    private static final String COOKIE = "Cookie";
+
+    private static final NameTable HOP_BY_HOP = new NameTable(
+            CONNECTION, "Keep-Alive", "Proxy-Connection", "Proxy-Authenticate", "Proxy-Authorization",
+            "TE", "Trailer", "Transfer-Encoding", "Upgrade");
+
+    /**
+     * Set by the http client for the backend connection.
+     */
+    private static final NameTable REQUEST_BLOCKED = new NameTable("Host", "Content-Length");
+
+    private final NameTable strippedCookies;
+
+    /**
+     * @param strippedCookies the names of the cookies not forwarded to the backend
+     */
+    HeaderPolicy(Collection<String> strippedCookies) {
+        this.strippedCookies = new NameTable(strippedCookies.toArray(new String[strippedCookies.size()]));
+    }
+
+    /**
+     * Adds the client request headers to be forwarded to the backend request.
+     */
+    void forwardRequestHeaders(HttpServletRequest req, HttpMessage target) {
+        String connection = req.getHeader(CONNECTION);
+        Enumeration<String> names = req.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (HOP_BY_HOP.contains(name) || REQUEST_BLOCKED.contains(name) || isListed(connection, name)) {
+                continue;
+            }
+            boolean cookie = name.equalsIgnoreCase(COOKIE);
+            Enumeration<String> values = req.getHeaders(name);
+            while (values.hasMoreElements()) {
+                String value = cookie ? stripCookies(values.nextElement()) : values.nextElement();
+                if (value != null) {
+                    target.addHeader(name, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the backend response headers to be passed to the client; the given array if none is dropped
+     */
+    static Header[] filterResponseHeaders(Header[] headers) {
+        String connection = null;
+        int dropped = 0;
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(CONNECTION)) {
+                connection = connection == null ? header.getValue() : connection + "," + header.getValue();
+            }
+        }
+        for (Header header : headers) {
+            if (isResponseHeaderDropped(header.getName(), connection)) {
+                dropped++;
+            }
+        }
+        if (dropped == 0) {
+            return headers;
+        }
+        Header[] filtered = new Header[headers.length - dropped];
+        int n = 0;
+        for (Header header : headers) {
+            if (!isResponseHeaderDropped(header.getName(), connection)) {
+                filtered[n++] = header;
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Sets the headers on the client response. The first header of a name replaces whatever the response has
+     * already got, the following ones are added, so multi-valued headers such as Set-Cookie are all kept.
+     *
+     * @param skipped a header not to be sent, or null
+     */
+    static void writeResponseHeaders(Header[] headers, HttpServletResponse resp, String skipped) {
+        for (int i = 0; i < headers.length; i++) {
+            String name = headers[i].getName();
+            if (skipped != null && name.equalsIgnoreCase(skipped)) {
+                continue;
+            }
+            if (isRepeated(headers, i)) {
+                resp.addHeader(name, headers[i].getValue());
+            } else {
+                resp.setHeader(name, headers[i].getValue());
+            }
+        }
+    }
+
+    private static boolean isResponseHeaderDropped(String name, String connection) {
+        return HOP_BY_HOP.contains(name) || isListed(connection, name);
+    }
+
+    private static boolean isRepeated(Header[] headers, int index) {
+        String name = headers[index].getName();
+        for (int i = 0; i < index; i++) {
+            if (headers[i].getName().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the name is one of the comma separated tokens of the Connection header value
+     */
+    private static boolean isListed(String connection, String name) {
+        if (connection == null) {
+            return false;
+        }
+        int len = connection.length();
+        int start = 0;
+        while (start < len) {
+            int end = connection.indexOf(',', start);
+            if (end < 0) {
+                end = len;
+            }
+            int from = start;
+            int to = end;
+            while (from < to && connection.charAt(from) == ' ') {
+                from++;
+            }
+            while (to > from && connection.charAt(to - 1) == ' ') {
+                to--;
+            }
+            if (to - from == name.length() && connection.regionMatches(true, from, name, 0, name.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return the Cookie header value without the stripped cookies (the same string if there are none),
+     * or null if no cookie is left
+     */
+    private String stripCookies(String value) {
+        if (strippedCookies.isEmpty()) {
+            return value;
+        }
+        StringBuilder kept = null;
+        int len = value.length();
+        int start = 0;
+        while (start < len) {
+            int end = value.indexOf(';', start);
+            if (end < 0) {
+                end = len;
+            }
+            int from = start;
+            while (from < end && value.charAt(from) == ' ') {
+                from++;
+            }
+            int eq = value.indexOf('=', from);
+            int nameEnd = eq < 0 || eq > end ? end : eq;
+            boolean stripped = strippedCookies.contains(value, from, nameEnd);
+            if (stripped && kept == null) {
+                // the first stripped cookie: keep the ones before it, without the trailing separator
+                kept = new StringBuilder(len);
+                kept.append(value, 0, start);
+                int last = kept.length();
+                while (last > 0 && (kept.charAt(last - 1) == ';' || kept.charAt(last - 1) == ' ')) {
+                    last--;
+                }
+                kept.setLength(last);
+            } else if (!stripped && kept != null) {
+                if (kept.length() > 0) {
+                    kept.append("; ");
+                }
+                kept.append(value, from, end);
+            }
+            start = end + 1;
+        }
+        if (kept == null) {
+            return value;
+        }
+        return kept.length() == 0 ? null : kept.toString();
+    }
+
+    /**
+     * A case-insensitive set of header (or cookie) names, bucketed by name length.
+     */
+    private static class NameTable {
+        private final String[][] byLength;
+
+        NameTable(String... names) {
+            int maxLength = 0;
+            for (String name : names) {
+                maxLength = Math.max(maxLength, name.length());
+            }
+            byLength = new String[maxLength + 1][];
+            for (String name : names) {
+                String[] bucket = byLength[name.length()];
+                String[] grown = bucket == null ? new String[1] : Arrays.copyOf(bucket, bucket.length + 1);
+                grown[grown.length - 1] = name;
+                byLength[name.length()] = grown;
+            }
+        }
+
+        boolean isEmpty() {
+            return byLength.length <= 1;
+        }
+
+        boolean contains(String name) {
+            return contains(name, 0, name.length());
+        }
+
+        boolean contains(String s, int start, int end) {
+            int len = end - start;
+            if (len >= byLength.length || byLength[len] == null) {
+                return false;
+            }
+            for (String name : byLength[len]) {
+                if (s.regionMatches(true, start, name, 0, len)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.stream;
+
+/**
+ * Coalesces identical concurrent GET requests: the first request (the leader) goes to the backend while the
+ * others wait for its response and get a copy of it. Only small, fully buffered responses are shared; when the
+ * leader's response can't be shared, or doesn't come within the maximum wait, the waiting requests go to the
+ * backend on their own.
+ */
+class InFlightRequests {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightRequests.class);
+
+    /**
+     * Request headers which make the backend response differ, so they are part of the key.
+     */
+    private static final String[] KEY_HEADERS = {
+            ResponseCache.SESSION_TOKEN_HEADER, "Cookie", "Authorization",
+            "Accept", "Accept-Encoding", "Accept-Language"
+    };
+
+    static class SharedResponse {
+        private final int status;
+        private final Header[] headers;
+        private final byte[] body;
+
+        private SharedResponse(int status, Header[] headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        void writeTo(HttpServletResponse resp) throws IOException {
+            resp.setStatus(status);
+            HeaderPolicy.writeResponseHeaders(headers, resp, null);
+            resp.setContentLength(body.length);
+            OutputStream output = resp.getOutputStream();
+            output.write(body);
+            output.flush();
+        }
+    }
+
+    private static class Flight {
+        private final String key;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile SharedResponse response;
+
+        private Flight(String key) {
+            this.key = key;
+        }
+    }
+
+    class Call {
+        private final Flight flight;
+        private final boolean leader;
+
+        private Call(Flight flight, boolean leader) {
+            this.flight = flight;
+            this.leader = leader;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Waits for the leader's response, at most for the maximum wait.
+         *
+         * @return the shared response, or null if it couldn't be shared or didn't come in time
+         */
+        SharedResponse await() {
+            try {
+                if (!flight.done.await(maxWait, TimeUnit.MILLISECONDS)) {
+                    logger.debug("gave up waiting for in-flight request: {}", flight.key);
+                    return null;
+                }
+                return flight.response;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * Reads the leader's response body into memory and hands it over to the waiting requests,
+         * if the body is small enough.
+         *
+         * @return the body, or null if the response is not shared
+         */
+        byte[] share(int status, Header[] headers, HttpEntity entity) throws IOException {
+            if (entity == null || entity.getContentLength() < 0 || entity.getContentLength() > maxBodySize
+                    || stream(headers).anyMatch(h -> h.getName().equalsIgnoreCase("Set-Cookie"))) {
+                complete(null);
+                return null;
+            }
+            byte[] body = EntityUtils.toByteArray(entity);
+            complete(new SharedResponse(status, headers, body));
+            return body;
+        }
+
+        /**
+         * Releases the waiting requests; only the first call has an effect.
+         */
+        void complete(SharedResponse response) {
+            if (!leader || flight.done.getCount() == 0) {
+                return;
+            }
+            flights.remove(flight.key, flight);
+            flight.response = response;
+            flight.done.countDown();
+        }
+    }
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private final int maxBodySize;
+    private final long maxWait;
+
+    /**
+     * @param maxWait how long a request waits for the leader's response, in milliseconds
+     */
+    InFlightRequests(int maxBodySize, long maxWait) {
+        this.maxBodySize = maxBodySize;
+        this.maxWait = maxWait;
+    }
+
+    static boolean isCoalescable(HttpServletRequest req) {
+        return req.getHeader("Range") == null;
+    }
+
+    static String key(HttpServletRequest req, String requestPath) {
+        StringBuilder key = new StringBuilder("GET ").append(requestPath);
+        for (String name : KEY_HEADERS) {
+            String value = req.getHeader(name);
+            if (value != null) {
+                key.append('\n').append(name).append(':').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Joins the in-flight call with the given key, or starts a new one with the caller as the leader.
+     * The leader must always complete the call.
+     */
+    Call join(String key) {
+        Flight flight = new Flight(key);
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing == null) {
+            return new Call(flight, true);
+        }
+        logger.debug("joining in-flight request: {}", key);
+        return new Call(existing, false);
+    }
+}
@@ -16,29 +16,170 @@
 
 package uk.ac.ebi.biostudies.submissiontool.proxy;
 
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getAdmission;
 import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getConfig;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getBackendClients;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getHedgeExecutor;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getMetrics;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getProxyExecutor;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getRateLimiter;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getRestExecutor;
+import static uk.ac.ebi.biostudies.submissiontool.context.AppContext.getScheduler;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.context.BackendConfig;
+import uk.ac.ebi.biostudies.submissiontool.context.BackendClients;
+import uk.ac.ebi.biostudies.submissiontool.context.RouteConfig;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
 
-@WebServlet("/raw/*")
+@WebServlet(value = "/raw/*", asyncSupported = true, loadOnStartup = 1)
 public class ProxyServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
+    private static final Logger logger = LoggerFactory.getLogger(ProxyServlet.class);
+
     private Proxy proxy;
 
+    private ScheduledFuture<?> healthChecks;
+
     @Override
     public void init() {
         AppConfig config = getConfig(getServletContext());
+        List<Route> routes = new ArrayList<>();
         proxy =/* config.isOfflineModeOn() ?
                 new ProxyStub() :*/
-                new RemoteProxy(config.getServerUrl(), source -> source.replace("/raw", ""));
+                new RemoteProxy(createRoutes(config, routes),
+                        createCache(config),
+                        config.getCoalesceBodySize() > 0 ?
+                                new InFlightRequests(config.getCoalesceBodySize(),
+                                        config.getCoalesceMaxWait()) : null,
+                        config.isCompressionEnabled() ?
+                                new ResponseCompression(config.getCompressionMinSize(),
+                                        new HashSet<>(config.getCompressionTypes()),
+                                        config.getBufferPoolSize()) : null,
+                        config.isStreamingUploads(),
+                        new BackendInvoker(config.getRetryAttempts(), config.getRetryBackoff(),
+                                config.isRetryDeletes(), new RetryBudget(config.getRetryBudget()),
+                                config.isHedgeEnabled() ? getHedgeExecutor(getServletContext()) : null,
+                                config.getHedgeMinDelay()),
+                        new HeaderPolicy(getStrippedCookies(config)));
+        // the batch sub-requests run on the REST executor, so they skip the async hand-off
+        new BatchExecutor(proxy, "/raw", getRestExecutor(getServletContext()),
+                config.getBatchParallelism(), config.getBatchMaxItemSize(),
+                getAdmission(getServletContext()), getRateLimiter(getServletContext())).publish(getServletContext());
+        // the virtual threads are used by handing the exchanges off the container threads
+        if (config.isAsyncEnabled() || config.isVirtualThreads()) {
+            proxy = new AsyncProxy(proxy, getProxyExecutor(getServletContext()), config.getAsyncTimeout());
+        }
+        scheduleHealthChecks(config, routes);
+    }
+
+    @Override
+    public void destroy() {
+        BatchExecutor.unpublish(getServletContext());
+        if (healthChecks != null) {
+            healthChecks.cancel(true);
+        }
+    }
+
+    /**
+     * @return the configured cookies, plus the session cookie of this web application if it is named differently
+     */
+    private Set<String> getStrippedCookies(AppConfig config) {
+        Set<String> cookies = new HashSet<>(config.getStrippedCookies());
+        String sessionCookie = getServletContext().getSessionCookieConfig().getName();
+        if (sessionCookie != null) {
+            cookies.add(sessionCookie);
+        }
+        return cookies;
+    }
+
+    private RouteTable createRoutes(AppConfig config, List<Route> routes) {
+        BackendClients clients = getBackendClients(getServletContext());
+        MetricsRegistry metrics = getMetrics(getServletContext());
+        for (RouteConfig route : config.getRoutes()) {
+            routes.add(new Route(route.getPrefix(), createBackendPool(config, route), clients.get(route),
+                    new BufferPool(route.getBufferSize(config), config.getBufferPoolSize()),
+                    new RouteMetrics(metrics, route.getPrefix())));
+        }
+        return new RouteTable(routes);
+    }
+
+    private ResponseCache createCache(AppConfig config) {
+        if (config.getCacheSize() <= 0) {
+            return null;
+        }
+        ResponseCache cache = new ResponseCache(config.getCacheSize(), config.getCacheEntrySize());
+        MetricsRegistry metrics = getMetrics(getServletContext());
+        metrics.counter("proxy_cache_hits_total", "Responses served from the cache", cache::getHits);
+        metrics.counter("proxy_cache_misses_total", "Cacheable requests not found in the cache", cache::getMisses);
+        metrics.counter("proxy_cache_evictions_total", "Entries evicted from the cache", cache::getEvictions);
+        metrics.gauge("proxy_cache_size_bytes", "Size of the cached response bodies", cache::getSize);
+        return cache;
+    }
+
+    private static BackendPool createBackendPool(AppConfig config, RouteConfig route) {
+        BalancingStrategy strategy;
+        try {
+            strategy = BalancingStrategy.forName(route.getBalancing(config));
+        } catch (IllegalArgumentException e) {
+            logger.error("Route " + route.getPrefix() + ": " + e.getMessage() + "; using least-outstanding");
+            strategy = BalancingStrategy.LEAST_OUTSTANDING;
+        }
+        List<Backend> backends = new ArrayList<>();
+        for (BackendConfig backend : route.getBackends()) {
+            backends.add(new Backend(backend.getUrl(), backend.getWeight(),
+                    createCircuitBreaker(config, route, backend)));
+        }
+        return new BackendPool(backends, strategy, config.getOutlierFailures(), config.getOutlierEjectionTime());
+    }
+
+    private static CircuitBreaker createCircuitBreaker(AppConfig config, RouteConfig route, BackendConfig backend) {
+        if (config.getBreakerWindow() <= 0) {
+            return null;
+        }
+        return new CircuitBreaker(route.getPrefix() + "=" + backend.getUrl(),
+                config.getBreakerWindow(), config.getBreakerMinCalls(), config.getBreakerFailureRate(),
+                config.getBreakerSlowCallTime(), config.getBreakerSlowCallRate(),
+                config.getBreakerOpenTime(), config.getBreakerHalfOpenCalls());
+    }
+
+    /**
+     * Health checks only make sense for the routes balancing between several nodes.
+     */
+    private void scheduleHealthChecks(AppConfig config, List<Route> routes) {
+        int interval = config.getHealthCheckInterval();
+        if (interval <= 0 || routes.stream().allMatch(r -> r.getBackends().size() < 2)) {
+            return;
+        }
+        String path = config.getHealthCheckPath();
+        healthChecks = getScheduler(getServletContext()).scheduleWithFixedDelay(() -> {
+            for (Route route : routes) {
+                try {
+                    if (route.getBackends().size() > 1) {
+                        route.getBackends().checkHealth(route.getClient(), path);
+                    }
+                } catch (RuntimeException e) {
+                    // an exception would cancel the scheduled checks
+                    logger.error("health check of route " + route.getPrefix() + " failed", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -17,6 +17,7 @@
 package uk.ac.ebi.biostudies.submissiontool.proxy;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
@@ -28,8 +29,7 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,70 +39,32 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-
-import static java.util.Arrays.stream;
 
 /**
  * @author Olga Melnichuk
  */
 class RemoteProxy  implements Proxy {
 
-    private static class Pair<K, V> {
-        private K key;
-        private V value;
-
-        Pair(K key, V value) {
-            this.key = key;
-            this.value = value;
-        }
-
-        K getKey() {
-            return key;
-        }
-
-        V getValue() {
-            return value;
-        }
-
-        @Override
-        public String toString() {
-            return key + "=" + value;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            Pair pair = (Pair) o;
+    private static final Logger logger = LoggerFactory.getLogger(RemoteProxy.class);
 
-            if (key != null ? !key.equals(pair.key) : pair.key != null) return false;
-            if (value != null ? !value.equals(pair.value) : pair.value != null) return false;
+    private static final String STRING_LOCATION_HEADER = "Location";
 
-            return true;
-        }
+    private static final String STRING_CONTENT_LENGTH_HEADER_NAME = "Content-Length";
 
-        @Override
-        public int hashCode() {
-            int result = key != null ? key.hashCode() : 0;
-            result = 31 * result + (value != null ? value.hashCode() : 0);
-            return result;
-        }
-    }
+    private static final String STRING_CONTENT_TYPE_HEADER_NAME = "Content-Type";
 
-    private static final Logger logger = LoggerFactory.getLogger(RemoteProxy.class);
+    private static final String STRING_CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
 
-    private static final String STRING_HOST_HEADER_NAME = "Host";
+    private static final String STRING_ACCEPT_ENCODING_HEADER_NAME = "Accept-Encoding";
 
-    private static final String STRING_LOCATION_HEADER = "Location";
+    private static final String STRING_VARY_HEADER_NAME = "Vary";
 
-    private static final String STRING_CONTENT_LENGTH_HEADER_NAME = "Content-Length";
+    private static final String STRING_RETRY_AFTER_HEADER_NAME = "Retry-After";
 
-    private static final String STRING_CONTENT_TYPE_HEADER_NAME = "Content-Type";
+    private static final String STRING_ETAG_HEADER_NAME = "ETag";
 
     /**
      * The maximum size for uploaded files in bytes. Default value is 5MB.
@@ -111,12 +73,24 @@ class RemoteProxy  implements Proxy {
 
     private static final File FILE_UPLOAD_TEMP_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
 
-    private final URI dest;
-    private final Function<String, String> pathFilter;
-
-    RemoteProxy(URI dest, Function<String, String> pathFilter) {
-        this.dest = dest;
-        this.pathFilter = pathFilter;
+    private final RouteTable routes;
+    private final ResponseCache cache;
+    private final InFlightRequests inFlight;
+    private final ResponseCompression compression;
+    private final boolean streamingUploads;
+    private final BackendInvoker invoker;
+    private final HeaderPolicy headers;
+
+    RemoteProxy(RouteTable routes, ResponseCache cache, InFlightRequests inFlight,
+                ResponseCompression compression, boolean streamingUploads, BackendInvoker invoker,
+                HeaderPolicy headers) {
+        this.routes = routes;
+        this.headers = headers;
+        this.invoker = invoker;
+        this.cache = cache;
+        this.inFlight = inFlight;
+        this.compression = compression;
+        this.streamingUploads = streamingUploads;
     }
 
     @Override
@@ -143,31 +117,35 @@ class RemoteProxy  implements Proxy {
         executeMethod(this::createProxyPutReq, req, resp);
     }
 
-    private HttpGet createProxyGetReq(HttpServletRequest req) throws IOException {
+    private HttpGet createProxyGetReq(HttpServletRequest req, Route route) throws IOException {
         logger.debug("createProxyGetReq()");
-        HttpGet get =  new HttpGet(getRequestUri(req));
+        HttpGet get = new HttpGet();
         logger.debug("get: {}", get);
         forwardRequestHeaders(req, get);
         return get;
     }
 
-    private HttpPost createProxyPostReq(HttpServletRequest req) throws ServletException, IOException {
+    private HttpPost createProxyPostReq(HttpServletRequest req, Route route) throws ServletException, IOException {
         logger.debug("createProxyPostReq()");
-        HttpPost post = new HttpPost(getRequestUri(req));
+        HttpPost post = new HttpPost();
         logger.debug("post: {}", post);
         forwardRequestHeaders(req, post);
 
         if (ServletFileUpload.isMultipartContent(req)) {
-            handleMultipartPost(post, req);
+            if (streamingUploads) {
+                handleStreamingMultipartPost(post, req, route.getBuffers());
+            } else {
+                handleMultipartPost(post, req);
+            }
         } else {
             post.setEntity(new InputStreamEntity(req.getInputStream()));
         }
         return post;
     }
 
-    private HttpPut createProxyPutReq(HttpServletRequest req) throws IOException {
+    private HttpPut createProxyPutReq(HttpServletRequest req, Route route) throws IOException {
         logger.debug("createProxyPutReq()");
-        HttpPut put = new HttpPut(getRequestUri(req));
+        HttpPut put = new HttpPut();
         logger.debug("put: {}", put);
         forwardRequestHeaders(req, put);
 
@@ -175,15 +153,30 @@ class RemoteProxy  implements Proxy {
         return put;
     }
 
-    private HttpDelete createProxyDeleteReq(HttpServletRequest req) throws IOException {
+    private HttpDelete createProxyDeleteReq(HttpServletRequest req, Route route) throws IOException {
         logger.debug("createProxyDeleteReq()");
-        HttpDelete del = new HttpDelete(getRequestUri(req));
+        HttpDelete del = new HttpDelete();
         logger.debug("delete: {}", del);
         forwardRequestHeaders(req, del);
         return del;
     }
 
-    private void handleMultipartPost(HttpPost post, HttpServletRequest req) throws ServletException {
+    void handleStreamingMultipartPost(HttpPost post, HttpServletRequest req, BufferPool buffers)
+            throws ServletException, IOException {
+        logger.debug("handleStreamingMultipartPost()");
+        try {
+            // parts are read from the client only when the entity is being written to the backend
+            FileItemIterator items = new ServletFileUpload().getItemIterator(req);
+            HttpEntity entity = new StreamingMultipartEntity(items, buffers);
+            post.setEntity(entity);
+            // a new boundary is used for the proxied body (see handleMultipartPost)
+            post.setHeader(STRING_CONTENT_TYPE_HEADER_NAME, entity.getContentType().getValue());
+        } catch (FileUploadException fileUploadException) {
+            throw new ServletException(fileUploadException);
+        }
+    }
+
+    void handleMultipartPost(HttpPost post, HttpServletRequest req) throws ServletException {
         logger.debug("handleMultipartPost()");
         DiskFileItemFactory diskFileItemFactory = new DiskFileItemFactory();
         diskFileItemFactory.setSizeThreshold(MAX_FILE_UPLOAD_SIZE);
@@ -235,26 +228,104 @@ class RemoteProxy  implements Proxy {
     private void executeMethod(RequestTransform transform, HttpServletRequest req,
                                HttpServletResponse resp) throws ServletException, IOException {
         logger.debug("executeMethod()");
+        String path = getRequestPath(req);
+        Route route = routes.match(path);
+        if (route == null) {
+            logger.debug("no route for: " + path);
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        RouteMetrics metrics = route.getMetrics();
+        long start = System.nanoTime();
+        CountingRequest counting = new CountingRequest(req);
+        try {
+            executeRouted(transform, route, path, counting, resp);
+        } finally {
+            metrics.addBytesIn(counting.getBytesRead());
+            metrics.getRequestTime().recordNanos(System.nanoTime() - start);
+            metrics.countResponse(resp.getStatus());
+        }
+    }
+
+    private void executeRouted(RequestTransform transform, Route route, String path, HttpServletRequest req,
+                               HttpServletResponse resp) throws ServletException, IOException {
         HttpRequestBase reqBase;
         try {
-            reqBase = transform.apply(req);
+            reqBase = transform.apply(req, route);
         } catch (BadRequestException e) {
             resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
 
-        reqBase.setURI(proxyUrl(reqBase.getURI()));
-        logger.debug("proxied url: " + reqBase.getURI());
+        String query = req.getQueryString();
+        Backend backend = route.getBackends().select(req);
+        if (backend != null) {
+            reqBase.setURI(proxyUrl(backend, path, query));
+            logger.debug("proxied url: " + reqBase.getURI());
+        }
 
-        CloseableHttpClient client = HttpClients.createDefault();
-        try (CloseableHttpResponse response = client.execute(reqBase)) {
+        // the keys don't depend on the node chosen, so all nodes of a route share the cached responses
+        String requestKey = query == null ? path : path + "?" + query;
+        String cacheKey = null;
+        if (cache != null && reqBase instanceof HttpGet) {
+            cacheKey = ResponseCache.key(req, requestKey);
+            if (cache.serve(cacheKey, req, resp)) {
+                return;
+            }
+        }
+
+        InFlightRequests.Call call = null;
+        if (inFlight != null && reqBase instanceof HttpGet && InFlightRequests.isCoalescable(req)) {
+            call = inFlight.join(InFlightRequests.key(req, requestKey));
+            if (!call.isLeader()) {
+                InFlightRequests.SharedResponse shared = call.await();
+                if (shared != null) {
+                    logger.debug("served by identical in-flight request");
+                    shared.writeTo(resp);
+                    return;
+                }
+                call = null;
+            }
+        }
+
+        try {
+            executeBackendRequest(route, backend, b -> b.proxyUrl(path, query), reqBase, req, resp, cacheKey, call);
+        } finally {
+            if (call != null) {
+                // release the waiting requests if the response hasn't been shared
+                call.complete(null);
+            }
+        }
+    }
+
+    private void executeBackendRequest(Route route, Backend backend, Function<Backend, URI> urls,
+                                       HttpRequestBase reqBase, HttpServletRequest req, HttpServletResponse resp,
+                                       String cacheKey, InFlightRequests.Call call)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        BackendCall backendCall = backend == null ? null :
+                invoker.invoke(route, backend, reqBase, urls, ExchangeAbort.get(req));
+        route.getMetrics().getFirstByteTime().recordNanos(System.nanoTime() - start);
+        if (backendCall == null) {
+            // fail fast while the backend is degraded, rather than tie up a thread waiting for it
+            logger.debug("circuit open, rejecting: " + req.getRequestURI());
+            resp.setHeader(STRING_RETRY_AFTER_HEADER_NAME, Long.toString(route.getBackends().getRetryAfter()));
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        backend = backendCall.getBackend();
+        boolean failed = false;
+        try (CloseableHttpResponse response = backendCall.getResponse()) {
             int retCode = response.getStatusLine().getStatusCode();
             logger.debug("received retCode: " + retCode);
-
+            failed = BackendPool.isFailure(retCode);
 
             if (retCode >= HttpServletResponse.SC_MULTIPLE_CHOICES /* 300 */
                     && retCode < HttpServletResponse.SC_NOT_MODIFIED /* 304 */) {
-                redirect(req, resp, getLocationOrFail(response));
+                // read what's left of the body, so the pooled connection can be reused
+                EntityUtils.consumeQuietly(response.getEntity());
+                redirect(req, resp, backend, getLocationOrFail(response));
                 return;
             } else if (retCode == HttpServletResponse.SC_NOT_MODIFIED) {
                 // 304 needs special handling.  See:
@@ -263,6 +334,7 @@ class RemoteProxy  implements Proxy {
                 // header and the data on disk has not changed; server
                 // responds w/ a 304 saying I'm not going to send the
                 // body because the file has not changed.
+                EntityUtils.consumeQuietly(response.getEntity());
                 resp.setIntHeader(STRING_CONTENT_LENGTH_HEADER_NAME, 0);
                 resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                 return;
@@ -270,51 +342,83 @@ class RemoteProxy  implements Proxy {
 
             resp.setStatus(retCode);
 
+            boolean compress = compression != null && compression.shouldCompress(req, response);
+
             // Pass response headers back to the client
-            Header[] headerArrayResponse = response.getAllHeaders();
-            for (Header header : headerArrayResponse) {
-                if (header.getName().equals("Transfer-Encoding") &&
-                        header.getValue().equals("chunked"))
-                    continue;
-                resp.setHeader(header.getName(), header.getValue());
+            Header[] headers = HeaderPolicy.filterResponseHeaders(response.getAllHeaders());
+            HeaderPolicy.writeResponseHeaders(headers, resp, compress ? STRING_CONTENT_LENGTH_HEADER_NAME : null);
+            if (compress) {
+                resp.setHeader(STRING_CONTENT_ENCODING_HEADER_NAME, ResponseCompression.GZIP);
+                resp.addHeader(STRING_VARY_HEADER_NAME, STRING_ACCEPT_ENCODING_HEADER_NAME);
+                Header etag = response.getFirstHeader(STRING_ETAG_HEADER_NAME);
+                if (etag != null) {
+                    resp.setHeader(STRING_ETAG_HEADER_NAME, ResponseCompression.compressedETag(etag.getValue()));
+                }
             }
 
-            copyResponseContent(resp, response.getEntity().getContent());
+            byte[] sharedBody = call == null ? null : call.share(retCode, headers, response.getEntity());
+            start = System.nanoTime();
+            long bytes = copyResponseContent(req, resp, route, response, headers, cacheKey, sharedBody, compress);
+            route.getMetrics().getTransferTime().recordNanos(System.nanoTime() - start);
+            route.getMetrics().addBytesOut(bytes);
+        } finally {
+            route.getBackends().release(backend, failed, backendCall.getResponseTime());
         }
     }
 
-    private static void copyResponseContent(HttpServletResponse resp, InputStream input) throws IOException {
-        BufferedInputStream bufferedInput = new BufferedInputStream(input);
-        OutputStream output = resp.getOutputStream();
-        int intNextByte;
-        while ((intNextByte = bufferedInput.read()) != -1) {
-            output.write(intNextByte);
+    /**
+     * @return the number of body bytes copied (before compression)
+     */
+    long copyResponseContent(HttpServletRequest req, HttpServletResponse resp, Route route,
+                             HttpResponse response, Header[] headers, String cacheKey, byte[] body,
+                             boolean compress) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return 0;
+        }
+        long contentLength = body != null ? body.length : entity.getContentLength();
+        if (contentLength >= 0 && !compress) {
+            // let the container send a fixed length body instead of chunking it
+            resp.setHeader(STRING_CONTENT_LENGTH_HEADER_NAME, Long.toString(contentLength));
         }
-    }
 
-    private void forwardRequestHeaders(HttpServletRequest req, HttpRequestBase reqBase) {
-        logger.debug("forwardRequestHeaders()");
-        getHeaders(req).forEach(p ->
-                reqBase.setHeader(p.getKey(), p.getValue()));
-        logger.debug("reqBase: {}", reqBase);
+        ResponseCompression.GzipOutputStream gzip = compress ? compression.compress(resp.getOutputStream()) : null;
+        OutputStream output = gzip != null ? gzip : resp.getOutputStream();
+        long copied;
+        try {
+            // the cache records the body as received from the backend, i.e. before it gets compressed
+            ResponseCache.Recorder recorder = cacheKey == null ? null :
+                    cache.record(cacheKey, req, response, headers, contentLength, output);
+            try (InputStream input = body != null ? new ByteArrayInputStream(body) : entity.getContent()) {
+                copied = route.getBuffers().copy(input, recorder == null ? output : recorder, contentLength);
+            }
+            if (gzip != null) {
+                // writes the gzip trailer; the servlet output itself stays open
+                gzip.close();
+            }
+            if (recorder != null) {
+                recorder.commit();
+                logger.debug("{}", cache);
+            }
+        } finally {
+            if (gzip != null) {
+                // returns the deflater if the copy has failed
+                gzip.abandon();
+            }
+        }
+        return copied;
     }
 
-    private List<Pair<String, String>> getHeaders(HttpServletRequest req) {
-        List<Pair<String, String>> list = Collections.list(req.getHeaderNames()).stream()
-                .filter(name -> !name.equalsIgnoreCase(STRING_CONTENT_LENGTH_HEADER_NAME))
-                .map(name ->
-                        Collections.list(req.getHeaders(name)).stream()
-                                .map(v -> name.equalsIgnoreCase(STRING_HOST_HEADER_NAME) ? getHostAndPort(dest) : v)
-                                .map(v -> new Pair<>(name, v)))
-                .flatMap(l -> l)
-                .collect(Collectors.toList());
-
-        logger.debug("request headers are: " + list);
-        return list;
+    private void forwardRequestHeaders(HttpServletRequest req, HttpRequestBase reqBase) {
+        headers.forwardRequestHeaders(req, reqBase);
+        if (logger.isDebugEnabled()) {
+            logger.debug("reqBase: {}, headers: {}", reqBase, Arrays.toString(reqBase.getAllHeaders()));
+        }
     }
 
-    private void redirect(HttpServletRequest req, HttpServletResponse resp, String location) throws IOException {
-        resp.sendRedirect(location.replace(dest.toString(), getContextUrl(req).toString()));
+    private void redirect(HttpServletRequest req, HttpServletResponse resp, Backend backend, String location)
+            throws IOException {
+        resp.sendRedirect(location.replace(backend.getTarget().toString(), getContextUrl(req).toString()));
     }
 
     private String getLocationOrFail(HttpResponse response) throws ServletException {
@@ -325,10 +429,6 @@ class RemoteProxy  implements Proxy {
         return location;
     }
 
-    private String getHostAndPort(URI uri) {
-        return uri.getHost() + (dest.getPort() < 0 ? "" : ":" + dest.getPort());
-    }
-
     private URI getContextUrl(HttpServletRequest req) throws IOException {
         try {
             return new URIBuilder()
@@ -343,36 +443,20 @@ class RemoteProxy  implements Proxy {
     }
 
 
-    private URI getRequestUri(HttpServletRequest req) throws IOException {
-        String pathInfo = req.getPathInfo();
-        pathInfo = pathInfo == null ? "" : pathInfo;
-
-        try {
-            return new URIBuilder()
-                    .setPath(req.getServletPath() + pathInfo)
-                    .setCustomQuery(req.getQueryString())
-                    .build();
-        } catch (URISyntaxException e) {
-            throw new IOException(e);
-        }
+    /**
+     * @return the (still encoded) request path relative to the proxy servlet
+     */
+    static String getRequestPath(HttpServletRequest req) {
+        String uri = req.getRequestURI();
+        int start = req.getContextPath().length() + req.getServletPath().length();
+        return start < uri.length() ? uri.substring(start) : "";
     }
 
-    private URI proxyUrl(URI uri) throws IOException {
-    try {
-            return new URIBuilder()
-                    .setScheme(dest.getScheme())
-                    .setHost(dest.getHost())
-                    .setPort(dest.getPort())
-                    .setPath(asPath(dest.getPath(), pathFilter.apply(uri.getPath())))
-                    .setCustomQuery(uri.getQuery())
-                    .setFragment(uri.getFragment())
-                    .build();
-        } catch (URISyntaxException e) {
+    private static URI proxyUrl(Backend backend, String path, String query) throws IOException {
+        try {
+            return backend.proxyUrl(path, query);
+        } catch (IllegalArgumentException e) {
             throw new IOException(e);
         }
     }
-
-    private static String asPath(String... parts) {
-        return "/" + stream(parts).flatMap(p -> stream(p.split("/"))).filter(string -> !string.isEmpty()).collect(Collectors.joining("/"));
-    }
 }
@@ -26,7 +26,7 @@ import java.io.IOException;
  * @author Olga Melnichuk
  */
 @FunctionalInterface
-public interface RequestTransform<T extends HttpRequestBase> {
-    T apply(HttpServletRequest req) throws BadRequestException, ServletException, IOException;
+interface RequestTransform<T extends HttpRequestBase> {
+    T apply(HttpServletRequest req, Route route) throws BadRequestException, ServletException, IOException;
 }
 
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size bounded LRU cache of successful GET responses. Only responses which the backend explicitly allows
+ * to be cached (Cache-Control max-age / s-maxage) are stored, and never the private ones or the ones setting
+ * cookies, as the key doesn't tell the users apart beyond their session token. Entries are keyed by the request
+ * path and the user session, and matched against the request headers listed in Vary. Bodies are kept in heap
+ * arrays; unlike direct buffers, these are freed as soon as an entry is evicted.
+ */
+class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String VARY_HEADER = "Vary";
+    private static final String AGE_HEADER = "Age";
+
+    private static class Entry {
+        private final String[] varyNames;
+        private final String[] varyValues;
+        private final Header[] headers;
+        private final byte[] body;
+        private final long created;
+        private final long expires;
+
+        Entry(String[] varyNames, String[] varyValues, Header[] headers, byte[] body, long created, long expires) {
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.headers = headers;
+            this.body = body;
+            this.created = created;
+            this.expires = expires;
+        }
+
+        boolean matches(HttpServletRequest req) {
+            for (int i = 0; i < varyNames.length; i++) {
+                String value = req.getHeader(varyNames[i]);
+                if (value == null ? varyValues[i] != null : !value.equals(varyValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int size() {
+            return body.length;
+        }
+    }
+
+    /**
+     * Captures the body of a cacheable response while it is being streamed to the client.
+     * The capture is dropped as soon as the body turns out to be larger than the cache entry limit.
+     */
+    class Recorder extends OutputStream {
+        private final OutputStream output;
+        private final String key;
+        private final String[] varyNames;
+        private final String[] varyValues;
+        private final Header[] headers;
+        private final long maxAge;
+        private byte[] body;
+        private int length;
+
+        private Recorder(OutputStream output, String key, String[] varyNames, String[] varyValues,
+                         Header[] headers, long maxAge, long contentLength) {
+            this.output = output;
+            this.key = key;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.headers = headers;
+            this.maxAge = maxAge;
+            this.body = new byte[(int) contentLength];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            if (body != null && length < body.length) {
+                body[length++] = (byte) b;
+            } else {
+                body = null;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            output.write(b, off, len);
+            if (body != null && body.length - length >= len) {
+                System.arraycopy(b, off, body, length, len);
+                length += len;
+            } else {
+                body = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        /**
+         * Stores the captured body; to be called only after the whole body has been copied.
+         */
+        void commit() {
+            if (body == null || length < body.length) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            put(key, new Entry(varyNames, varyValues, headers, body, now, now + maxAge));
+        }
+    }
+
+    private final long maxSize;
+    private final int maxEntrySize;
+
+    // guards the entries; a lock rather than a monitor, so waiting virtual threads don't pin their carriers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ResponseCache(long maxSize, int maxEntrySize) {
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String key(HttpServletRequest req, String requestPath) {
+        String session = req.getHeader(SESSION_TOKEN_HEADER);
+        return (session == null ? "" : session) + ' ' + requestPath;
+    }
+
+    /**
+     * Sends the cached response if there is a fresh one matching the request.
+     *
+     * @return true if the response has been served from the cache
+     */
+    boolean serve(String key, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!isCacheableRequest(req)) {
+            return false;
+        }
+        Entry entry = get(key, req);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        logger.debug("cache hit: {}", key);
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        HeaderPolicy.writeResponseHeaders(entry.headers, resp, null);
+        resp.setHeader(AGE_HEADER, Long.toString(
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - entry.created)));
+        resp.setContentLength(entry.size());
+
+        // the entries are never modified once stored, so the body is written without copying it
+        OutputStream output = resp.getOutputStream();
+        output.write(entry.body);
+        output.flush();
+        return true;
+    }
+
+    /**
+     * Wraps the client output so the response body gets recorded, if the response may be cached.
+     *
+     * @param headers the response headers which are sent to the client
+     * @return the recorder, or null if the response is not cacheable
+     */
+    Recorder record(String key, HttpServletRequest req, HttpResponse response, Header[] headers,
+                    long contentLength, OutputStream output) {
+        if (!isCacheableRequest(req)
+                || response.getStatusLine().getStatusCode() != HttpServletResponse.SC_OK
+                || contentLength <= 0 || contentLength > maxEntrySize) {
+            return null;
+        }
+        long maxAge = maxAge(response);
+        if (maxAge <= 0) {
+            return null;
+        }
+        List<String> varyNames = new ArrayList<>();
+        if (response.containsHeader("Content-Encoding")) {
+            // a compressed body must only be sent to the clients accepting the same encoding
+            varyNames.add("Accept-Encoding");
+        }
+        for (Header vary : response.getHeaders(VARY_HEADER)) {
+            for (HeaderElement element : vary.getElements()) {
+                if (element.getName().equals("*")) {
+                    return null;
+                }
+                varyNames.add(element.getName());
+            }
+        }
+        String[] names = varyNames.toArray(new String[varyNames.size()]);
+        String[] values = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = req.getHeader(names[i]);
+        }
+        return new Recorder(output, key, names, values, headers, maxAge, contentLength);
+    }
+
+    private static boolean isCacheableRequest(HttpServletRequest req) {
+        if (req.getHeader("If-None-Match") != null || req.getHeader("If-Modified-Since") != null) {
+            return false;
+        }
+        String cacheControl = req.getHeader(CACHE_CONTROL_HEADER);
+        return cacheControl == null ||
+                !(cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+    }
+
+    /**
+     * @return how long the response may be cached in milliseconds, 0 if it may not be cached: a response which
+     * is private or sets a cookie belongs to one user, and the cache key can't tell the users apart
+     */
+    static long maxAge(HttpResponse response) {
+        if (response.containsHeader("Set-Cookie")) {
+            return 0;
+        }
+        long maxAge = 0;
+        for (Header header : response.getHeaders(CACHE_CONTROL_HEADER)) {
+            for (HeaderElement element : header.getElements()) {
+                String name = element.getName().toLowerCase();
+                if (name.equals("no-store") || name.equals("no-cache") || name.equals("private")) {
+                    return 0;
+                }
+                if (name.equals("s-maxage") || (name.equals("max-age") && maxAge == 0)) {
+                    try {
+                        maxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(element.getValue()));
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    private Entry get(String key, HttpServletRequest req) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expires < System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+            return entry.matches(req) ? entry : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        lock.lock();
+        try {
+            remove(key);
+            entries.put(key, entry);
+            size += entry.size();
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                size -= evicted.size();
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache{" +
+                "size=" + getSize() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compression of the proxied responses which the backend sends uncompressed. Compression is applied only
+ * when the client accepts gzip, the content type is in the allowed list and the body is not too small. Partial
+ * content is never compressed, as its range refers to the uncompressed body.
+ * Deflaters are pooled, as creating one allocates a sizeable amount of native memory.
+ */
+class ResponseCompression {
+
+    static final String GZIP = "gzip";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int minSize;
+    private final Set<String> contentTypes;
+    private final BlockingQueue<Deflater> deflaters;
+
+    ResponseCompression(int minSize, Set<String> contentTypes, int maxPooled) {
+        this.minSize = minSize;
+        this.contentTypes = contentTypes;
+        this.deflaters = new ArrayBlockingQueue<>(Math.max(maxPooled, 1));
+    }
+
+    /**
+     * @return true if the proxy should gzip the response body
+     */
+    boolean shouldCompress(HttpServletRequest req, HttpResponse response) {
+        HttpEntity entity = response.getEntity();
+        if (entity == null
+                || response.getStatusLine().getStatusCode() == HttpServletResponse.SC_PARTIAL_CONTENT
+                || response.containsHeader("Content-Range")
+                || response.containsHeader("Content-Encoding")
+                || (entity.getContentLength() >= 0 && entity.getContentLength() < minSize)
+                || !acceptsGzip(req.getHeader("Accept-Encoding"))) {
+            return false;
+        }
+        String contentType = entity.getContentType() == null ? null : entity.getContentType().getValue();
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            return contentTypes.contains(ContentType.parse(contentType).getMimeType().toLowerCase());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    GzipOutputStream compress(OutputStream output) throws IOException {
+        return new GzipOutputStream(output);
+    }
+
+    /**
+     * @return the entity tag of the gzipped representation: a strong tag of the backend's identity body must not
+     * be sent with another encoding of it, so it is weakened
+     */
+    static String compressedETag(String etag) {
+        return etag.startsWith("W/") ? etag : "W/" + etag;
+    }
+
+    /**
+     * @return true if the Accept-Encoding value allows gzip; an explicit gzip coding takes precedence over "*"
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        float gzip = -1;
+        float any = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim();
+            if (name.equalsIgnoreCase(GZIP)) {
+                gzip = quality(params);
+            } else if (name.equals("*")) {
+                any = quality(params);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    /**
+     * @return the q value of a coding, 1 if it has none or it is malformed
+     */
+    private static float quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String[] q = params[i].trim().split("=");
+            if (q.length == 2 && q[0].trim().equals("q")) {
+                try {
+                    return Float.parseFloat(q[1].trim());
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private Deflater borrow() {
+        Deflater deflater = deflaters.poll();
+        return deflater == null ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : deflater;
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a gzip stream (RFC 1952) using a pooled raw deflater. The underlying stream is not closed by
+     * {@link #close()}, only the gzip trailer is written. A stream which is not closed must be abandoned, to
+     * return the deflater to the pool.
+     */
+    class GzipOutputStream extends FilterOutputStream {
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8 * 1024];
+        private boolean finished;
+
+        GzipOutputStream(OutputStream output) throws IOException {
+            super(output);
+            output.write(GZIP_HEADER);
+            this.deflater = borrow();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finished) {
+                // a full buffer means the deflater may have more output pending
+                while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+                    continue;
+                }
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                writeInt((int) crc.getValue());
+                writeInt((int) deflater.getBytesRead());
+                out.flush();
+            } finally {
+                release(deflater);
+            }
+        }
+
+        /**
+         * Returns the deflater without writing the trailer, so a body cut off by a failure doesn't look complete;
+         * does nothing if the stream has been closed.
+         */
+        void abandon() {
+            if (!finished) {
+                finished = true;
+                release(deflater);
+            }
+        }
+
+        private int deflate(int flush) throws IOException {
+            int len = deflater.deflate(buffer, 0, buffer.length, flush);
+            if (len > 0) {
+                out.write(buffer, 0, len);
+            }
+            return len;
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >> 8) & 0xff);
+            out.write((value >> 16) & 0xff);
+            out.write((value >> 24) & 0xff);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The backend response times of a route over a window of recent requests. The 95th percentile is recomputed
+ * every few samples rather than on every read, so reading it costs nothing.
+ */
+class ResponseTimes {
+
+    private static final int SIZE = 512;
+
+    private static final int MIN_SAMPLES = 64;
+
+    private static final int RECOMPUTE_EVERY = 64;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile long p95 = -1;
+
+    void record(long millis) {
+        int n = count.getAndIncrement() & Integer.MAX_VALUE;
+        samples.set(n % SIZE, millis);
+        if (n >= MIN_SAMPLES && n % RECOMPUTE_EVERY == 0) {
+            p95 = percentile(Math.min(n + 1, SIZE), 0.95);
+        }
+    }
+
+    /**
+     * @return the 95th percentile in milliseconds, or -1 if there are too few samples yet
+     */
+    long getP95() {
+        return p95;
+    }
+
+    private long percentile(int n, double p) {
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted[Math.min(n - 1, (int) (p * n))];
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the extra load from retried and hedged calls: every request adds a fraction of a token (the budget
+ * percentage) and every extra call takes a whole one. A small reserve lets the occasional retry through
+ * even when the traffic is low.
+ */
+class RetryBudget {
+
+    private static final long TOKEN = 100;
+
+    private static final long RESERVE = 10 * TOKEN;
+
+    private final long deposit;
+    private final AtomicLong balance = new AtomicLong(RESERVE);
+
+    /**
+     * @param percent the percentage of the requests which may get an extra call
+     */
+    RetryBudget(int percent) {
+        this.deposit = Math.max(0, percent);
+    }
+
+    void onRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= RESERVE) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(RESERVE, current + deposit)));
+    }
+
+    /**
+     * @return true if an extra call may be made
+     */
+    boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+
+/**
+ * A compiled proxy route: the backend nodes a path prefix is sent to, together with the http client and the
+ * buffers used for them.
+ */
+class Route {
+
+    private final String prefix;
+    private final BackendPool backends;
+    private final CloseableHttpClient client;
+    private final BufferPool buffers;
+    private final RouteMetrics metrics;
+    private final ResponseTimes responseTimes = new ResponseTimes();
+
+    Route(String prefix, BackendPool backends, CloseableHttpClient client, BufferPool buffers,
+          RouteMetrics metrics) {
+        this.prefix = prefix;
+        this.metrics = metrics;
+        this.backends = backends;
+        this.client = client;
+        this.buffers = buffers;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    BackendPool getBackends() {
+        return backends;
+    }
+
+    CloseableHttpClient getClient() {
+        return client;
+    }
+
+    BufferPool getBuffers() {
+        return buffers;
+    }
+
+    RouteMetrics getMetrics() {
+        return metrics;
+    }
+
+    ResponseTimes getResponseTimes() {
+        return responseTimes;
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "=" + backends;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Histogram;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The metrics of one proxy route. A request is timed as a whole and in phases: the time to the backend
+ * response headers (time to first byte, which includes any retries) and the time spent copying the body to the
+ * client. Connect times are recorded per connection pool (see HttpClientFactory).
+ */
+class RouteMetrics {
+
+    private static final int MAX_STATUS = 600;
+
+    private final MetricsRegistry registry;
+    private final String route;
+
+    private final Histogram requestTime;
+    private final Histogram firstByteTime;
+    private final Histogram transferTime;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final AtomicReferenceArray<Counter> responses = new AtomicReferenceArray<>(MAX_STATUS);
+
+    RouteMetrics(MetricsRegistry registry, String route) {
+        this.registry = registry;
+        this.route = route;
+        this.requestTime = registry.histogram("proxy_request_seconds",
+                "Time to handle a proxied request", "route", route);
+        this.firstByteTime = registry.histogram("proxy_backend_first_byte_seconds",
+                "Time until the backend response headers are received", "route", route);
+        this.transferTime = registry.histogram("proxy_body_transfer_seconds",
+                "Time to copy the response body to the client", "route", route);
+        this.bytesIn = registry.counter("proxy_request_bytes_total",
+                "Request body bytes received from the clients", "route", route);
+        this.bytesOut = registry.counter("proxy_response_bytes_total",
+                "Response body bytes sent to the clients", "route", route);
+    }
+
+    Histogram getRequestTime() {
+        return requestTime;
+    }
+
+    Histogram getFirstByteTime() {
+        return firstByteTime;
+    }
+
+    Histogram getTransferTime() {
+        return transferTime;
+    }
+
+    void addBytesIn(long bytes) {
+        if (bytes > 0) {
+            bytesIn.add(bytes);
+        }
+    }
+
+    void addBytesOut(long bytes) {
+        if (bytes > 0) {
+            bytesOut.add(bytes);
+        }
+    }
+
+    /**
+     * Counts a response by its status code; the counters are created on first use.
+     */
+    void countResponse(int status) {
+        if (status < 0 || status >= MAX_STATUS) {
+            return;
+        }
+        Counter counter = responses.get(status);
+        if (counter == null) {
+            counter = registry.counter("proxy_responses_total", "Responses sent to the clients",
+                    "route", route, "status", Integer.toString(status));
+            responses.compareAndSet(status, null, counter);
+        }
+        counter.inc();
+    }
+}
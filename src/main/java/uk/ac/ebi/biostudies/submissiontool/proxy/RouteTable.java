@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The proxy routes compiled into a character trie of their path prefixes. A request path is matched against the
+ * longest prefix ending on a path segment boundary, so "/files" matches "/files" and "/files/a" but not "/filesx".
+ * Matching walks the path once and allocates nothing.
+ */
+class RouteTable {
+
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Route route;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int at = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new Node();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return children[at];
+        }
+    }
+
+    private final Node root = new Node();
+
+    RouteTable(List<Route> routes) {
+        routes.forEach(this::add);
+    }
+
+    private void add(Route route) {
+        Node node = root;
+        String prefix = route.getPrefix();
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.addChild(prefix.charAt(i));
+        }
+        node.route = route;
+    }
+
+    /**
+     * @param path the request path relative to the proxy servlet
+     * @return the route for the path, or null if there is none
+     */
+    Route match(String path) {
+        Node slash = root.child('/');
+        Route match = slash == null ? null : slash.route;
+
+        Node node = root;
+        int len = path.length();
+        for (int i = 0; i < len; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.route != null && (i + 1 == len || path.charAt(i + 1) == '/')) {
+                match = node.route;
+            }
+        }
+        return match;
+    }
+}
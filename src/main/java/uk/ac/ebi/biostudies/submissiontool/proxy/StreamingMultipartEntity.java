@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A multipart/form-data entity which is written part by part straight from the incoming request,
+ * so nothing is parsed in advance, held on heap or spooled to disk. The entity can be written only once.
+ */
+class StreamingMultipartEntity extends AbstractHttpEntity {
+
+    private static final char[] BOUNDARY_CHARS =
+            "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DASHES = {'-', '-'};
+
+    private final FileItemIterator items;
+    private final BufferPool buffers;
+    private final byte[] boundary;
+
+    StreamingMultipartEntity(FileItemIterator items, BufferPool buffers) {
+        this.items = items;
+        this.buffers = buffers;
+        String boundary = generateBoundary();
+        this.boundary = boundary.getBytes(StandardCharsets.US_ASCII);
+        setContentType(ContentType.MULTIPART_FORM_DATA.getMimeType() + "; boundary=" + boundary);
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException("Streaming multipart entity can only be written to an output stream");
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(OutputStream output) throws IOException {
+        try {
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                writeBoundary(output);
+                writePartHeaders(output, item);
+                try (InputStream input = item.openStream()) {
+                    buffers.transfer(input, output);
+                }
+                output.write(CRLF);
+            }
+        } catch (FileUploadException e) {
+            throw new IOException(e);
+        }
+        output.write(DASHES);
+        output.write(boundary);
+        output.write(DASHES);
+        output.write(CRLF);
+        output.flush();
+    }
+
+    private void writeBoundary(OutputStream output) throws IOException {
+        output.write(DASHES);
+        output.write(boundary);
+        output.write(CRLF);
+    }
+
+    private static void writePartHeaders(OutputStream output, FileItemStream item) throws IOException {
+        StringBuilder headers = new StringBuilder("Content-Disposition: form-data; name=\"")
+                .append(escape(item.getFieldName()))
+                .append('"');
+        if (!item.isFormField() && item.getName() != null) {
+            headers.append("; filename=\"").append(escape(item.getName())).append('"');
+        }
+        headers.append("\r\n");
+        if (item.getContentType() != null) {
+            headers.append("Content-Type: ").append(item.getContentType()).append("\r\n");
+        }
+        headers.append("\r\n");
+        output.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    private static String generateBoundary() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[32];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+        }
+        return new String(chars);
+    }
+}
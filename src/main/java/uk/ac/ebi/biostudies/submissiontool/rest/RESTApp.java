@@ -36,6 +36,7 @@ public class RESTApp extends ResourceConfig {
         register(LoggingFeature.class);
         register(AuthenticationFilter.class);
         register(ExceptionLogger.class);
+        register(MetricsListener.class);
         register(MultiPartFeature.class);
         register(new AbstractBinder() {
             @Override
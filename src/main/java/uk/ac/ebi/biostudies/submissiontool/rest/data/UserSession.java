@@ -16,25 +16,58 @@
 
 package uk.ac.ebi.biostudies.submissiontool.rest.data;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * @author mdylag
  */
 public final class UserSession {
 
-    private String sessid;
+    /**
+     * The role every user with a valid session has.
+     */
+    public static final String AUTHENTICATED = "AUTHENTICATED";
+
+    private final String sessid;
+    private final String user;
+    private final Set<String> roles;
 
     public UserSession(String sessid) {
+        this(sessid, null, Collections.singleton(AUTHENTICATED));
+    }
+
+    public UserSession(String sessid, String user, Set<String> roles) {
         this.sessid = sessid;
+        this.user = user;
+        this.roles = Collections.unmodifiableSet(roles);
     }
 
     public String id() {
         return sessid;
     }
 
+    /**
+     * @return the user name from the backend profile, null if the session hasn't been validated
+     */
+    public String user() {
+        return user;
+    }
+
+    public Set<String> roles() {
+        return roles;
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
     @Override
     public String toString() {
         return "UserSession{" +
                 "sessid='" + sessid + '\'' +
+                ", user='" + user + '\'' +
+                ", roles=" + roles +
                 '}';
     }
 }
@@ -19,10 +19,13 @@ package uk.ac.ebi.biostudies.submissiontool.rest.providers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.biostudies.submissiontool.SessionAttributes;
+import uk.ac.ebi.biostudies.submissiontool.auth.SessionValidator;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
 import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
 
 import javax.annotation.Priority;
 import javax.annotation.security.RolesAllowed;
+import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -38,18 +41,30 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
+ * Enforces {@link RolesAllowed} on the REST resources.
+ * <p>
+ * In the session mode (the default) the token is taken as it is and the user session is kept in the servlet
+ * session. In the stateless mode, which has to be turned on with PROXY_AUTH_MODE=stateless, the session token is
+ * validated by the backend, with the results cached by the {@link SessionValidator}, and the user session lives
+ * as long as the request.
+ *
  * @author Olga Melnichuk
  */
 @Provider
 @Priority(Priorities.AUTHENTICATION)
 public class AuthenticationFilter implements ContainerRequestFilter {
 
+    private static final String SESSION_MODE = "session";
+
     @Context
     private ResourceInfo resourceInfo;
 
     @Context
     private HttpServletRequest request;
 
+    @Context
+    private ServletContext context;
+
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationFilter.class);
 
     @Override
@@ -60,10 +75,19 @@ public class AuthenticationFilter implements ContainerRequestFilter {
             RolesAllowed rolesAnnotation = method.getAnnotation(RolesAllowed.class);
             Set<String> rolesSet = new HashSet<String>(Arrays.asList(rolesAnnotation.value()));
 
-            UserSession session = getUserSession();
+            UserSession session;
+            try {
+                session = getUserSession();
+            } catch (IOException e) {
+                logger.error("session check failed", e);
+                requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+                return;
+            }
 
-            if (!isUserAllowed(session, rolesSet)) {
+            if (session == null) {
                 requestContext.abortWith(accessDenied());
+            } else if (!isUserAllowed(session, rolesSet)) {
+                requestContext.abortWith(accessForbidden());
             }
         }
     }
@@ -71,15 +95,26 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     private Response accessDenied() {
         return Response.status(Response.Status.UNAUTHORIZED).build();
     }
-/*
+
     private Response accessForbidden() {
         return Response.status(Response.Status.FORBIDDEN).build();
     }
-*/
 
-    private UserSession getUserSession() {
+    private UserSession getUserSession() throws IOException {
         String sessid = getSessionId();
         logger.debug("sessionId=" + sessid);
+        if (SESSION_MODE.equalsIgnoreCase(AppContext.getConfig(context).getAuthMode())) {
+            return getServletUserSession(sessid);
+        }
+        if (sessid == null) {
+            return null;
+        }
+        UserSession session = AppContext.getSessionValidator(context).validate(sessid);
+        SessionAttributes.setRequestUserSession(request, session);
+        return session;
+    }
+
+    private UserSession getServletUserSession(String sessid) {
         if (sessid == null) {
             SessionAttributes.setUserSession(request, null);
             return null;
@@ -95,7 +130,7 @@ public class AuthenticationFilter implements ContainerRequestFilter {
     }
 
     private boolean isUserAllowed(final UserSession userSession, final Set<String> rolesSet) {
-        return userSession != null;
+        return rolesSet.stream().anyMatch(userSession::hasRole);
     }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.providers;
+
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Counter;
+import uk.ac.ebi.biostudies.submissiontool.metrics.Histogram;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.inject.Inject;
+import javax.servlet.ServletContext;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Times the REST requests per resource method. Metrics are labelled with the matched path template rather than
+ * the actual path, so path parameters don't create a metric per value.
+ */
+public class MetricsListener implements ApplicationEventListener {
+
+    private static final int MAX_STATUS = 600;
+
+    private static final String UNMATCHED = "unmatched";
+
+    /**
+     * The methods the unmatched requests are labelled with; any other method is labelled OTHER, so clients
+     * can't create metrics at will.
+     */
+    private static final Set<String> KNOWN_METHODS = new HashSet<>(Arrays.asList(
+            "GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
+
+    private class MethodMetrics {
+        private final String method;
+        private final String path;
+        private final Histogram time;
+        private final AtomicReferenceArray<Counter> responses = new AtomicReferenceArray<>(MAX_STATUS);
+
+        MethodMetrics(String method, String path) {
+            this.method = method;
+            this.path = path;
+            this.time = registry.histogram("rest_request_seconds", "Time to handle a REST request",
+                    "method", method, "path", path);
+        }
+
+        void record(long nanos, int status) {
+            time.recordNanos(nanos);
+            if (status < 0 || status >= MAX_STATUS) {
+                return;
+            }
+            Counter counter = responses.get(status);
+            if (counter == null) {
+                counter = registry.counter("rest_responses_total", "REST responses by status",
+                        "method", method, "path", path, "status", Integer.toString(status));
+                responses.compareAndSet(status, null, counter);
+            }
+            counter.inc();
+        }
+    }
+
+    private class RequestTimer implements RequestEventListener {
+        private final long start = System.nanoTime();
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            if (event.getType() != RequestEvent.Type.FINISHED) {
+                return;
+            }
+            ContainerResponse response = event.getContainerResponse();
+            int status = response != null ? response.getStatus() : 500;
+            metricsFor(event).record(System.nanoTime() - start, status);
+        }
+    }
+
+    private final ConcurrentMap<ResourceMethod, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, MethodMetrics> unmatched = new ConcurrentHashMap<>();
+
+    @Inject
+    private ServletContext context;
+
+    private MetricsRegistry registry;
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        if (event.getType() == ApplicationEvent.Type.INITIALIZATION_START) {
+            registry = AppContext.getMetrics(context);
+        }
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        return registry == null ? null : new RequestTimer();
+    }
+
+    private MethodMetrics metricsFor(RequestEvent event) {
+        ExtendedUriInfo uriInfo = event.getUriInfo();
+        ResourceMethod method = uriInfo.getMatchedResourceMethod();
+        if (method == null) {
+            String httpMethod = event.getContainerRequest().getMethod();
+            return unmatched.computeIfAbsent(KNOWN_METHODS.contains(httpMethod) ? httpMethod : "OTHER",
+                    m -> new MethodMetrics(m, UNMATCHED));
+        }
+        return methods.computeIfAbsent(method,
+                m -> new MethodMetrics(m.getHttpMethod(), templatePath(uriInfo.getMatchedTemplates())));
+    }
+
+    /**
+     * @param templates the matched templates, the most specific first
+     */
+    private static String templatePath(List<UriTemplate> templates) {
+        StringBuilder path = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+            if (template.isEmpty() || template.equals("/")) {
+                continue;
+            }
+            if (!template.startsWith("/")) {
+                path.append('/');
+            }
+            path.append(template.endsWith("/") ? template.substring(0, template.length() - 1) : template);
+        }
+        return path.length() == 0 ? "/" : path.toString();
+    }
+}
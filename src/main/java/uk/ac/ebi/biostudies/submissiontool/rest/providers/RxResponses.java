@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.providers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.subscriptions.SerialSubscription;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumes async responses with the first item of an observable. The subscription is cancelled when the
+ * response times out (the client gets 503) or completes any other way; an observable rejected by the full REST
+ * executor also results in 503, so the load is shed instead of queued.
+ */
+public final class RxResponses {
+
+    private static final Logger logger = LoggerFactory.getLogger(RxResponses.class);
+
+    private RxResponses() {
+    }
+
+    /**
+     * @param timeout how long the response may take, in milliseconds
+     */
+    public static <T> void resume(Observable<T> observable, AsyncResponse async, long timeout) {
+        SerialSubscription subscription = new SerialSubscription();
+        async.setTimeoutHandler(response -> {
+            subscription.unsubscribe();
+            response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+        });
+        async.register((CompletionCallback) error -> subscription.unsubscribe());
+        async.setTimeout(timeout, TimeUnit.MILLISECONDS);
+
+        subscription.set(observable.first().subscribe(async::resume, error -> {
+            if (error instanceof RejectedExecutionException) {
+                logger.warn("rest executor is saturated; rejecting the request");
+                async.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).build());
+            } else {
+                async.resume(error);
+            }
+        }));
+    }
+}
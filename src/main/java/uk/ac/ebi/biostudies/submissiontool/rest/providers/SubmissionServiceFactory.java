@@ -17,8 +17,11 @@
 package uk.ac.ebi.biostudies.submissiontool.rest.providers;
 
 import javax.inject.Inject;
+import javax.servlet.ServletContext;
 import javax.ws.rs.ext.Provider;
 import org.glassfish.hk2.api.Factory;
+import rx.schedulers.Schedulers;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
 import uk.ac.ebi.biostudies.submissiontool.rest.resources.SubmissionService;
 
 /**
@@ -30,8 +33,8 @@ public class SubmissionServiceFactory implements Factory<SubmissionService> {
     private final SubmissionService service;
 
     @Inject
-    public SubmissionServiceFactory() {
-        this.service = new SubmissionService();
+    public SubmissionServiceFactory(ServletContext context) {
+        this.service = new SubmissionService(Schedulers.from(AppContext.getRestExecutor(context)));
     }
 
     @Override
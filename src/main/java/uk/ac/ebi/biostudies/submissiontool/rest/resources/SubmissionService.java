@@ -20,15 +20,27 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
+import rx.Scheduler;
 
+/**
+ * The REST operations; the observables are subscribed on the bounded REST scheduler.
+ */
 public class SubmissionService {
 
     private static final Logger logger = LoggerFactory.getLogger(SubmissionService.class);
 
+    private final Scheduler scheduler;
+
+    public SubmissionService(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public Observable<String> helloRx(String name) {
-        logger.debug("helloRx({})", name);
-        ObjectNode resp = JsonNodeFactory.instance.objectNode();
-        resp.put("message", "Hello " + name + "!");
-        return Observable.from(new String[]{resp.toString()});
+        return Observable.fromCallable(() -> {
+            logger.debug("helloRx({})", name);
+            ObjectNode resp = JsonNodeFactory.instance.objectNode();
+            resp.put("message", "Hello " + name + "!");
+            return resp.toString();
+        }).subscribeOn(scheduler);
     }
 }
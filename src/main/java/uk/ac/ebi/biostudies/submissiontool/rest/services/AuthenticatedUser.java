@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.services;
+
+import uk.ac.ebi.biostudies.submissiontool.SessionAttributes;
+import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Finds out who is behind a request, for the services keeping state per user rather than per request. The backend
+ * is never asked: in the stateless mode the session validated by the authentication filter has the user name, if
+ * the profile has one; in the session mode, where the token is taken as it is, only the token is known.
+ */
+final class AuthenticatedUser {
+
+    private static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    private AuthenticatedUser() {
+    }
+
+    /**
+     * @return the user name of the validated session, or null if it isn't known
+     */
+    static String name(HttpServletRequest request) {
+        UserSession session = SessionAttributes.getUserSession(request);
+        return session == null ? null : session.user();
+    }
+
+    /**
+     * @return the key the user's state is kept under: the user name if it is known, otherwise the session token;
+     * null if the request has neither
+     */
+    static String key(HttpServletRequest request) {
+        String name = name(request);
+        return name != null ? name : request.getHeader(SESSION_TOKEN_HEADER);
+    }
+}
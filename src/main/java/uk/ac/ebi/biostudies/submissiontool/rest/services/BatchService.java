@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ebi.biostudies.submissiontool.context.AppConfig;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.proxy.BatchExecutor;
+
+import javax.inject.Inject;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Executes a batch of proxy requests. The body is a JSON array of items:
+ * {@code {"id": "1", "method": "GET", "path": "/submissions?offset=0", "headers": {...}, "body": ...}},
+ * where the path is relative to the proxy servlet and only the path is required; the headers of the batch
+ * request (the session token) apply to all the items unless overridden.
+ * <p>
+ * The items run concurrently and the response is streamed as newline delimited JSON, one line per item as it
+ * completes: {@code {"id": "1", "status": 200, "headers": {...}, "body": ...}}. JSON bodies are embedded as
+ * they are, text bodies as strings, anything else base64 encoded with {@code "bodyEncoding": "base64"}.
+ * Each item is rate limited and admitted as a request to the proxy servlet of its own, so an item may get
+ * 429 or 503 while the others go through.
+ */
+@Path("/batch")
+public class BatchService {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    private ServletContext context;
+
+    @Context
+    private HttpServletRequest request;
+
+    @Context
+    private HttpServletResponse response;
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON)
+    public Response execute(InputStream body) throws IOException {
+        BatchExecutor executor = BatchExecutor.get(context);
+        if (executor == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("Proxy not initialised").build();
+        }
+        AppConfig config = AppContext.getConfig(context);
+        List<BatchExecutor.Item> items;
+        try {
+            items = parseItems(mapper.readTree(body), config.getBatchMaxItems());
+        } catch (IllegalArgumentException | IOException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+
+        StreamingOutput output = out -> {
+            JsonGenerator json = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+            executor.execute(request, response, items, config.getRestTimeout(), result -> {
+                writeResult(json, result);
+                json.writeRaw('\n');
+                json.flush();
+            });
+            json.close();
+        };
+        return Response.ok(output, NDJSON).build();
+    }
+
+    private static List<BatchExecutor.Item> parseItems(JsonNode node, int maxItems) throws IOException {
+        if (node == null || !node.isArray()) {
+            throw new IllegalArgumentException("A JSON array of requests expected");
+        }
+        if (node.size() > maxItems) {
+            throw new IllegalArgumentException("Too many requests in the batch, at most " + maxItems + " allowed");
+        }
+        List<BatchExecutor.Item> items = new ArrayList<>();
+        for (int i = 0; i < node.size(); i++) {
+            JsonNode item = node.get(i);
+            String path = item.path("path").asText(null);
+            if (path == null || !path.startsWith("/")) {
+                throw new IllegalArgumentException("Request " + i + ": a path starting with '/' expected");
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = item.path("headers").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> header = it.next();
+                headers.put(header.getKey(), header.getValue().asText());
+            }
+            JsonNode body = item.get("body");
+            items.add(new BatchExecutor.Item(
+                    item.path("id").asText(Integer.toString(i)),
+                    item.path("method").asText("GET").toUpperCase(Locale.ROOT),
+                    path,
+                    headers,
+                    body == null || body.isNull() ? null
+                            : body.isTextual() ? body.asText().getBytes(StandardCharsets.UTF_8)
+                            : mapper.writeValueAsBytes(body)));
+        }
+        return items;
+    }
+
+    private static void writeResult(JsonGenerator json, BatchExecutor.Result result) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("id", result.getId());
+        json.writeNumberField("status", result.getStatus());
+        json.writeObjectFieldStart("headers");
+        for (Map.Entry<String, List<String>> header : result.getHeaders().entrySet()) {
+            json.writeStringField(header.getKey(), String.join(", ", header.getValue()));
+        }
+        json.writeEndObject();
+
+        byte[] body = result.getBody();
+        String contentType = firstHeader(result, "Content-Type");
+        String encoding = firstHeader(result, "Content-Encoding");
+        JsonNode tree = encoding == null && isJson(contentType) ? parseJson(body) : null;
+        if (body.length == 0) {
+            json.writeNullField("body");
+        } else if (tree != null) {
+            json.writeFieldName("body");
+            json.writeTree(tree);
+        } else if (encoding == null && (isText(contentType) || isJson(contentType))) {
+            json.writeStringField("body", new String(body, StandardCharsets.UTF_8));
+        } else {
+            json.writeStringField("bodyEncoding", "base64");
+            json.writeFieldName("body");
+            json.writeBinary(body);
+        }
+        json.writeEndObject();
+    }
+
+    private static String firstHeader(BatchExecutor.Result result, String name) {
+        for (Map.Entry<String, List<String>> header : result.getHeaders().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJson(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).matches("application/([\\w.-]+\\+)?json.*");
+    }
+
+    /**
+     * @return the parsed body, or null if it isn't valid JSON
+     */
+    private static JsonNode parseJson(byte[] body) {
+        try {
+            return mapper.readTree(body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isText(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("text/");
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.services;
+
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+
+import javax.inject.Inject;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The application metrics in the Prometheus text format, for the management addresses only
+ * (PROXY_METRICS_ADDRESSES). The address is the one of the connecting client, so a scraper behind a reverse
+ * proxy has to reach the application directly.
+ */
+@Path("/metrics")
+public class MetricsService {
+
+    @Inject
+    private ServletContext context;
+
+    @Context
+    private HttpServletRequest request;
+
+    @GET
+    @Produces(MetricsRegistry.CONTENT_TYPE)
+    public Response getMetrics() {
+        if (!AppContext.getConfig(context).getMetricsAddresses().contains(request.getRemoteAddr())) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        }
+        MetricsRegistry registry = AppContext.getMetrics(context);
+        StreamingOutput output = out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            registry.write(writer);
+            writer.flush();
+        };
+        return Response.ok(output, MetricsRegistry.CONTENT_TYPE).build();
+    }
+}
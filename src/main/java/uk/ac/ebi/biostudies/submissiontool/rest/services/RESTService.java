@@ -18,10 +18,13 @@ package uk.ac.ebi.biostudies.submissiontool.rest.services;
 
 import java.io.IOException;
 import javax.inject.Inject;
+import javax.servlet.ServletContext;
 import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.rest.providers.RxResponses;
 import uk.ac.ebi.biostudies.submissiontool.rest.resources.SubmissionService;
 
 /**
@@ -33,12 +36,15 @@ public class RESTService {
     @Inject
     private SubmissionService service;
 
+    @Inject
+    private ServletContext context;
+
     //@RolesAllowed("AUTHENTICATED")
     @GET
     @Path("/hello/{name}")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public void signup(@PathParam("name") String name, @Suspended AsyncResponse async) throws IOException {
-        service.helloRx(name).subscribe(async::resume, async::resume);
+        RxResponses.resume(service.helloRx(name), async, AppContext.getConfig(context).getRestTimeout());
     }
 }
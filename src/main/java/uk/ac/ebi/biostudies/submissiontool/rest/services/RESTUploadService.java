@@ -16,24 +16,35 @@
 
 package uk.ac.ebi.biostudies.submissiontool.rest.services;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
-import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.upload.StoredFile;
+import uk.ac.ebi.biostudies.submissiontool.upload.UploadStore;
 
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
- * A file upload service (just for test)
+ * Stores the uploaded files (the "file" parts) in the user's directory of the upload store, under the
+ * directory given in the "path" part. Responds with the stored paths, sizes and checksums. The directory is the
+ * user's when the validated session names one (stateless authentication), otherwise the session token's.
+ * Requests get 503 while there is no store (PROXY_STORE_DIR not set).
  * @author Olga Melnichuk
  */
 @Path("/fileUpload")
@@ -42,61 +53,44 @@ public class RESTUploadService {
     @Inject
     private ServletContext context;
 
+    @Context
+    private HttpServletRequest request;
+
     @RolesAllowed("AUTHENTICATED")
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response uploadFile(FormDataMultiPart formParams) {
-        if (this.isOfflineModeOn()) {
-            FormDataBodyPart p = formParams.getField("path");
-            String path = p.getValue();
-            List<FormDataBodyPart> parts = formParams.getFields("file");
-            for (FormDataBodyPart part : parts) {
-                FormDataContentDisposition file = part.getFormDataContentDisposition();
-                String uploadedFileLocation = getUserDir(path).resolve(file.getFileName()).toString();
-                writeToFile(part.getEntityAs(InputStream.class), uploadedFileLocation);
-                System.out.println("File uploaded to : " + uploadedFileLocation);
-            }
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response uploadFile(FormDataMultiPart formParams) throws IOException {
+        UploadStore store = AppContext.getUploadStore(context);
+        if (store == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity("No upload store configured").build();
+        }
+        FormDataBodyPart p = formParams.getField("path");
+        String path = p == null ? null : p.getValue();
+        List<FormDataBodyPart> parts = formParams.getFields("file");
+        if (parts == null || parts.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("No file parts").build();
         }
-        return Response.status(200).entity("all done").build();
-    }
-
-    private boolean isOfflineModeOn() {
-        return false;
-    }
-
-    private java.nio.file.Path getUserDir(String relPath) {
-        //todo
-        return null;
-    }
-
-    // save uploaded file to new location
-    private void writeToFile(InputStream uploadedInputStream, String uploadedFileLocation) {
-        OutputStream out = null;
-        try {
-            int read = 0;
-            byte[] bytes = new byte[1024];
 
-            out = new FileOutputStream(new File(uploadedFileLocation));
-            while ((read = uploadedInputStream.read(bytes)) != -1) {
-                out.write(bytes, 0, read);
-            }
-            out.flush();
-            out.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            closeSilently(out);
-            closeSilently(uploadedInputStream);
+        String user = AuthenticatedUser.key(request);
+        if (user == null) {
+            return Response.status(Response.Status.FORBIDDEN).entity("Unknown user").build();
         }
-    }
 
-    private void closeSilently(Closeable closeable) {
-        try {
-            if (closeable != null) {
-                closeable.close();
+        ArrayNode files = JsonNodeFactory.instance.arrayNode();
+        for (FormDataBodyPart part : parts) {
+            StoredFile file;
+            try (InputStream input = part.getEntityAs(InputStream.class)) {
+                file = store.store(user, path, part.getFormDataContentDisposition().getFileName(), input);
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
             }
-        } catch (IOException e) {
-            // do nothing
+            ObjectNode node = files.addObject();
+            node.put("path", file.getPath().toString());
+            node.put("size", file.getSize());
+            node.put("sha256", file.getSha256());
+            node.put("md5", file.getMd5());
         }
+        return Response.ok(files.toString()).build();
     }
 }
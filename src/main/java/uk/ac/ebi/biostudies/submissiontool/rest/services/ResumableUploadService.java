@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.rest.services;
+
+import uk.ac.ebi.biostudies.submissiontool.context.AppContext;
+import uk.ac.ebi.biostudies.submissiontool.rest.providers.PATCH;
+import uk.ac.ebi.biostudies.submissiontool.upload.ResumableUpload;
+import uk.ac.ebi.biostudies.submissiontool.upload.ResumableUploads;
+
+import javax.annotation.security.RolesAllowed;
+import javax.inject.Inject;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.OPTIONS;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resumable uploads of large files, following the tus protocol (https://tus.io, version 1.0.0, with the
+ * creation and termination extensions):
+ * <ul>
+ * <li>POST /uploads with Upload-Length (and optionally Upload-Metadata with filename and path) creates an
+ * upload and returns its url in Location;</li>
+ * <li>PATCH /uploads/{id} with Upload-Offset writes a chunk of the file at the offset;</li>
+ * <li>HEAD /uploads/{id} returns the Upload-Offset to resume from;</li>
+ * <li>DELETE /uploads/{id} abandons the upload.</li>
+ * </ul>
+ * Unlike plain tus, chunks may be sent at any offset and in parallel; Upload-Offset is the number of bytes
+ * received from the start of the file without gaps. Once the whole file has been received it is posted to
+ * the backend; X-Upload-Status tells whether that is in progress, done or has failed (a failed forward is
+ * retried with an empty PATCH at the end of the file). A user over the quota of unfinished uploads gets 403
+ * on creation. The uploads of a validated user (stateless authentication) may be resumed with a new session
+ * token; otherwise an upload belongs to the token it has been created with.
+ */
+@Path("/uploads")
+public class ResumableUploadService {
+
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_METADATA = "Upload-Metadata";
+    private static final String UPLOAD_STATUS = "X-Upload-Status";
+    private static final String SESSION_TOKEN = "X-Session-Token";
+
+    private static final int PRECONDITION_FAILED = 412;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+
+    @Inject
+    private ServletContext context;
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Context
+    private HttpServletRequest request;
+
+    @OPTIONS
+    public Response options() {
+        return Response.noContent()
+                .header(TUS_RESUMABLE, TUS_VERSION)
+                .header("Tus-Version", TUS_VERSION)
+                .header("Tus-Extension", "creation,termination")
+                .header("Tus-Max-Size", uploads().getMaxSize())
+                .build();
+    }
+
+    @RolesAllowed("AUTHENTICATED")
+    @POST
+    public Response create(@HeaderParam(SESSION_TOKEN) String session,
+                           @HeaderParam(TUS_RESUMABLE) String version,
+                           @HeaderParam(UPLOAD_LENGTH) String length,
+                           @HeaderParam(UPLOAD_METADATA) String metadata) throws IOException {
+        if (!TUS_VERSION.equals(version)) {
+            return tus(Response.status(PRECONDITION_FAILED).header("Tus-Version", TUS_VERSION));
+        }
+        long uploadLength;
+        Map<String, String> parsedMetadata;
+        try {
+            uploadLength = Long.parseLong(length);
+            parsedMetadata = parseMetadata(metadata);
+        } catch (IllegalArgumentException e) {
+            return tus(Response.status(Response.Status.BAD_REQUEST));
+        }
+        if (uploadLength > uploads().getMaxSize()) {
+            return tus(Response.status(PAYLOAD_TOO_LARGE));
+        }
+        ResumableUpload upload;
+        try {
+            upload = uploads().create(session, AuthenticatedUser.name(request), uploadLength, parsedMetadata);
+        } catch (IllegalArgumentException e) {
+            return tus(Response.status(Response.Status.BAD_REQUEST));
+        } catch (ResumableUploads.QuotaExceededException e) {
+            return tus(Response.status(Response.Status.FORBIDDEN).entity(e.getMessage()));
+        }
+        return tus(Response.created(uriInfo.getAbsolutePathBuilder().path(upload.getId()).build()));
+    }
+
+    @RolesAllowed("AUTHENTICATED")
+    @HEAD
+    @Path("{id}")
+    public Response status(@HeaderParam(SESSION_TOKEN) String session, @PathParam("id") String id) {
+        ResumableUpload upload = uploads().get(id, AuthenticatedUser.name(request), session);
+        if (upload == null) {
+            return tus(Response.status(Response.Status.NOT_FOUND));
+        }
+        return tus(Response.ok()
+                .header(UPLOAD_OFFSET, upload.getOffset())
+                .header(UPLOAD_LENGTH, upload.getLength())
+                .header(UPLOAD_STATUS, upload.getStatus().name().toLowerCase())
+                .header("Cache-Control", "no-store"));
+    }
+
+    @RolesAllowed("AUTHENTICATED")
+    @PATCH
+    @Path("{id}")
+    @Consumes("application/offset+octet-stream")
+    public Response write(@HeaderParam(SESSION_TOKEN) String session,
+                          @HeaderParam(TUS_RESUMABLE) String version,
+                          @HeaderParam(UPLOAD_OFFSET) String offset,
+                          @PathParam("id") String id,
+                          InputStream body) throws IOException {
+        if (!TUS_VERSION.equals(version)) {
+            return tus(Response.status(PRECONDITION_FAILED).header("Tus-Version", TUS_VERSION));
+        }
+        ResumableUpload upload = uploads().get(id, AuthenticatedUser.name(request), session);
+        if (upload == null) {
+            return tus(Response.status(Response.Status.NOT_FOUND));
+        }
+        long chunkOffset;
+        try {
+            chunkOffset = Long.parseLong(offset);
+        } catch (NumberFormatException e) {
+            return tus(Response.status(Response.Status.BAD_REQUEST));
+        }
+        try {
+            uploads().write(upload, chunkOffset, body);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return tus(Response.status(Response.Status.CONFLICT)
+                    .header(UPLOAD_OFFSET, upload.getOffset())
+                    .entity(e.getMessage()));
+        }
+        return tus(Response.noContent()
+                .header(UPLOAD_OFFSET, upload.getOffset())
+                .header(UPLOAD_STATUS, upload.getStatus().name().toLowerCase()));
+    }
+
+    @RolesAllowed("AUTHENTICATED")
+    @DELETE
+    @Path("{id}")
+    public Response delete(@HeaderParam(SESSION_TOKEN) String session, @PathParam("id") String id) {
+        ResumableUpload upload = uploads().get(id, AuthenticatedUser.name(request), session);
+        if (upload == null) {
+            return tus(Response.status(Response.Status.NOT_FOUND));
+        }
+        uploads().delete(upload);
+        return tus(Response.noContent());
+    }
+
+    private ResumableUploads uploads() {
+        return AppContext.getUploads(context);
+    }
+
+    private static Response tus(Response.ResponseBuilder builder) {
+        return builder.header(TUS_RESUMABLE, TUS_VERSION).build();
+    }
+
+    /**
+     * Parses the tus metadata: comma separated pairs of a key and a base64 encoded value.
+     *
+     * @throws IllegalArgumentException if a value is not valid base64
+     */
+    static Map<String, String> parseMetadata(String metadata) {
+        Map<String, String> values = new HashMap<>();
+        if (metadata == null) {
+            return values;
+        }
+        for (String pair : metadata.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            values.put(parts[0], parts.length < 2 ? "" :
+                    new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A file being uploaded in chunks. A chunk is written at the offset given by the client with positional
+ * writes, so several chunks of one file may be written at the same time and in any order; the ranges
+ * received so far are tracked, and the upload offset is the end of the contiguous range at the start of
+ * the file. Whatever part of a chunk has been received is kept when the transfer breaks off.
+ * <p>
+ * The chunks being written are counted under the upload's lock: an upload removed meanwhile (deleted, expired
+ * or forwarded) takes no more chunks, and its file is closed and deleted only after the last chunk written has
+ * been, never under a writing thread.
+ */
+public class ResumableUpload {
+
+    public enum Status {
+        RECEIVING, FORWARDING, FORWARDED, FAILED
+    }
+
+    private final String id;
+    private volatile String owner;
+    private final String user;
+    private final String quotaKey;
+    private final long length;
+    private final Map<String, String> metadata;
+    private final Path file;
+    private final FileChannel channel;
+
+    /**
+     * Received byte ranges, start to end (exclusive); adjacent ranges are merged.
+     */
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private Status status = Status.RECEIVING;
+    private int writers;
+    private boolean closed;
+    private boolean deleteOnClose;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    ResumableUpload(String id, String owner, String user, long length, Map<String, String> metadata, Path file,
+                    FileChannel channel) {
+        this.id = id;
+        this.owner = owner;
+        this.user = user;
+        this.quotaKey = user != null ? user : owner;
+        this.length = length;
+        this.metadata = Collections.unmodifiableMap(metadata);
+        this.file = file;
+        this.channel = channel;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the latest session token of the user, which the file is forwarded to the backend with
+     */
+    String getOwner() {
+        return owner;
+    }
+
+    void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @return the validated user name, or null if the user is known by the session token only
+     */
+    String getUser() {
+        return user;
+    }
+
+    /**
+     * @return the key of the user the upload counts against: the user name, or the session token it has been
+     * created with
+     */
+    String getQuotaKey() {
+        return quotaKey;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * @return the number of bytes received from the start of the file without gaps
+     */
+    public synchronized long getOffset() {
+        Long end = ranges.get(0L);
+        return end == null ? 0 : end;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Writes a chunk read from the input at the given offset.
+     *
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the offset is outside the file or the chunk doesn't fit in it
+     * @throws IllegalStateException    if the file has been received completely already, or the upload removed
+     */
+    long write(long offset, InputStream input, byte[] buffer) throws IOException {
+        if (offset < 0 || offset > length) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the upload (length " + length + ")");
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Upload " + id + " has been removed");
+            }
+            if (status != Status.RECEIVING) {
+                throw new IllegalStateException("Upload " + id + " is " + status.name().toLowerCase());
+            }
+            writers++;
+        }
+        lastActivity = System.currentTimeMillis();
+        long position = offset;
+        try {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            for (int n; (n = input.read(buffer, 0, (int) Math.min(buffer.length, length - position))) > 0; ) {
+                chunk.clear().limit(n);
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
+                if (position == length) {
+                    break;
+                }
+            }
+            if (position == length && input.read() >= 0) {
+                throw new IllegalArgumentException("Chunk at " + offset + " exceeds the upload length " + length);
+            }
+        } finally {
+            if (position > offset) {
+                received(offset, position);
+            }
+            lastActivity = System.currentTimeMillis();
+            endWrite();
+        }
+        return position - offset;
+    }
+
+    private void endWrite() throws IOException {
+        synchronized (this) {
+            if (--writers > 0 || !closed) {
+                return;
+            }
+        }
+        closeFile();
+    }
+
+    synchronized boolean isWriting() {
+        return writers > 0;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void received(long start, long end) {
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> next;
+        while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+        }
+        ranges.put(start, end);
+    }
+
+    /**
+     * Moves a completely received upload to the forwarding state; only one caller succeeds.
+     *
+     * @return true if the caller should forward the file
+     */
+    synchronized boolean startForwarding() {
+        if (getOffset() < length || (status != Status.RECEIVING && status != Status.FAILED)) {
+            return false;
+        }
+        status = Status.FORWARDING;
+        return true;
+    }
+
+    synchronized void forwarded(boolean success) {
+        status = success ? Status.FORWARDED : Status.FAILED;
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the file, at once or after the last chunk being written; no chunk is taken afterwards.
+     *
+     * @param delete whether the file is deleted too
+     */
+    void close(boolean delete) throws IOException {
+        synchronized (this) {
+            closed = true;
+            deleteOnClose |= delete;
+            if (writers > 0) {
+                return;
+            }
+        }
+        closeFile();
+    }
+
+    private void closeFile() throws IOException {
+        channel.close();
+        boolean delete;
+        synchronized (this) {
+            delete = deleteOnClose;
+        }
+        if (delete) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ResumableUpload{" +
+                "id=" + id +
+                ", length=" + length +
+                ", offset=" + getOffset() +
+                ", status=" + getStatus() +
+                '}';
+    }
+}
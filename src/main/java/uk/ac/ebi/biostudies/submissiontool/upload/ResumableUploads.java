@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.biostudies.submissiontool.proxy.BufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The resumable uploads in progress. Files are assembled in the upload directory and, once received
+ * completely, posted to the backend as multipart form data (the file, plus the target path if the client
+ * gave one) on behalf of the user who uploaded them. Upload state is kept in memory only; uploads which
+ * see no activity for the expiration time are removed together with their files. A user may have a limited
+ * number of unfinished uploads, of a limited total length.
+ */
+public class ResumableUploads {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUploads.class);
+
+    static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+
+    private final ConcurrentMap<String, ResumableUpload> uploads = new ConcurrentHashMap<>();
+
+    // makes the quota check and the creation of an upload atomic
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Path dir;
+    private final long maxSize;
+    private final int maxPerUser;
+    private final long maxUserSize;
+    private final long expiration;
+    private final URI forwardUrl;
+    private final CloseableHttpClient client;
+    private final ExecutorService forwarder;
+    private final BufferPool buffers;
+
+    public ResumableUploads(Path dir, long maxSize, int maxPerUser, long maxUserSize, long expiration,
+                            URI forwardUrl, CloseableHttpClient client, ExecutorService forwarder,
+                            BufferPool buffers) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxSize = maxSize;
+        this.maxPerUser = maxPerUser;
+        this.maxUserSize = maxUserSize;
+        this.expiration = expiration;
+        this.forwardUrl = forwardUrl;
+        this.client = client;
+        this.forwarder = forwarder;
+        this.buffers = buffers;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param owner the session token of the user
+     * @param user  the validated user name, or null if the user is known by the session token only
+     * @throws IllegalArgumentException if the file is larger than allowed
+     * @throws QuotaExceededException   if the user has too many unfinished uploads, or too much to upload
+     */
+    public ResumableUpload create(String owner, String user, long length, Map<String, String> metadata)
+            throws IOException, QuotaExceededException {
+        if (length < 0 || length > maxSize) {
+            throw new IllegalArgumentException("Upload length must be between 0 and " + maxSize);
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        Path file = dir.resolve(id);
+        ResumableUpload upload;
+        lock.lock();
+        try {
+            checkQuota(user != null ? user : owner, length);
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            upload = new ResumableUpload(id, owner, user, length, metadata, file, channel);
+            uploads.put(id, upload);
+        } finally {
+            lock.unlock();
+        }
+        logger.debug("created {}", upload);
+        if (length == 0) {
+            forward(upload);
+        }
+        return upload;
+    }
+
+    private void checkQuota(String quotaKey, long length) throws QuotaExceededException {
+        int count = 0;
+        long size = length;
+        for (ResumableUpload upload : uploads.values()) {
+            if (upload.getQuotaKey().equals(quotaKey) && !upload.isClosed()) {
+                count++;
+                size += upload.getLength();
+            }
+        }
+        if (count >= maxPerUser) {
+            throw new QuotaExceededException("At most " + maxPerUser + " unfinished uploads allowed");
+        }
+        if (size > maxUserSize) {
+            throw new QuotaExceededException("Unfinished uploads may take at most " + maxUserSize + " bytes");
+        }
+    }
+
+    /**
+     * Finds an upload of the user. An upload created by a validated user is theirs whatever session token they
+     * come back with, so it can be resumed after the token has changed; the latest token is then the one the file
+     * is forwarded with. An upload of a user known by the token only is found with that token.
+     *
+     * @param user  the validated user name, or null if not known
+     * @param owner the session token of the request
+     * @return the upload, or null if there is no such upload of the given user
+     */
+    public ResumableUpload get(String id, String user, String owner) {
+        ResumableUpload upload = uploads.get(id);
+        if (upload == null) {
+            return null;
+        }
+        if (upload.getUser() != null ? !upload.getUser().equals(user) : !upload.getOwner().equals(owner)) {
+            return null;
+        }
+        if (owner != null && !owner.equals(upload.getOwner())) {
+            upload.setOwner(owner);
+        }
+        return upload;
+    }
+
+    /**
+     * Writes a chunk, and starts forwarding the file to the backend when it is complete. A chunk with no data
+     * at the end of the file retries the forwarding which has failed before.
+     *
+     * @return the number of bytes written
+     */
+    public long write(ResumableUpload upload, long offset, InputStream input) throws IOException {
+        long written = 0;
+        if (upload.getStatus() != ResumableUpload.Status.FAILED) {
+            byte[] buffer = buffers.borrow();
+            try {
+                written = upload.write(offset, input, buffer);
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+        forward(upload);
+        return written;
+    }
+
+    public void delete(ResumableUpload upload) {
+        if (uploads.remove(upload.getId(), upload)) {
+            release(upload);
+        }
+    }
+
+    private void forward(ResumableUpload upload) {
+        if (!upload.startForwarding()) {
+            return;
+        }
+        try {
+            forwarder.execute(() -> upload.forwarded(post(upload)));
+        } catch (RejectedExecutionException e) {
+            logger.error("can't forward upload " + upload.getId(), e);
+            upload.forwarded(false);
+        }
+    }
+
+    private boolean post(ResumableUpload upload) {
+        if (forwardUrl == null) {
+            return false;
+        }
+        Map<String, String> metadata = upload.getMetadata();
+        String filename = metadata.getOrDefault("filename", upload.getId());
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        if (metadata.containsKey("path")) {
+            builder.addTextBody("path", metadata.get("path"), ContentType.TEXT_PLAIN);
+        }
+        builder.addBinaryBody("file", upload.getFile().toFile(), ContentType.APPLICATION_OCTET_STREAM, filename);
+
+        HttpPost post = new HttpPost(forwardUrl);
+        post.setHeader(SESSION_TOKEN_HEADER, upload.getOwner());
+        post.setEntity(builder.build());
+        try (CloseableHttpResponse response = client.execute(post)) {
+            int status = response.getStatusLine().getStatusCode();
+            EntityUtils.consumeQuietly(response.getEntity());
+            if (status >= 300) {
+                logger.error("backend refused upload {}: {}", upload.getId(), response.getStatusLine());
+                return false;
+            }
+            logger.debug("forwarded {}", upload);
+            // the backend has the file now; the upload is kept until it expires, so the client can see the status
+            release(upload);
+            return true;
+        } catch (IOException e) {
+            logger.error("failed to forward upload " + upload.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the uploads which have been inactive for the expiration time, and the files left in the upload
+     * directory by a previous run.
+     */
+    public void expire() {
+        long expired = System.currentTimeMillis() - expiration;
+        for (ResumableUpload upload : uploads.values()) {
+            if (upload.getLastActivity() < expired && !upload.isWriting()
+                    && upload.getStatus() != ResumableUpload.Status.FORWARDING) {
+                logger.debug("expired {}", upload);
+                delete(upload);
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (!uploads.containsKey(file.getFileName().toString())
+                        && Files.getLastModifiedTime(file).toMillis() < expired) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("failed to clean up the upload directory " + dir, e);
+        }
+    }
+
+    private static void release(ResumableUpload upload) {
+        try {
+            upload.close(true);
+        } catch (IOException e) {
+            logger.error("failed to remove the file of upload " + upload.getId(), e);
+        }
+    }
+
+    public void close() {
+        uploads.values().forEach(upload -> {
+            try {
+                upload.close(false);
+            } catch (IOException e) {
+                logger.debug("failed to close upload " + upload.getId(), e);
+            }
+        });
+    }
+
+    /**
+     * Thrown when a user may not start another upload.
+     */
+    public static class QuotaExceededException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import java.nio.file.Path;
+
+/**
+ * A file written to the {@link UploadStore}.
+ */
+public class StoredFile {
+
+    private final Path path;
+    private final long size;
+    private final String sha256;
+    private final String md5;
+    private final boolean deduplicated;
+
+    StoredFile(Path path, long size, String sha256, String md5, boolean deduplicated) {
+        this.path = path;
+        this.size = size;
+        this.sha256 = sha256;
+        this.md5 = md5;
+        this.deduplicated = deduplicated;
+    }
+
+    /**
+     * @return the path relative to the user's directory
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * @return true if identical content was stored already, so no new copy has been kept
+     */
+    public boolean isDeduplicated() {
+        return deduplicated;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredFile{" +
+                "path=" + path +
+                ", size=" + size +
+                ", sha256=" + sha256 +
+                ", deduplicated=" + deduplicated +
+                '}';
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The users' uploaded files, stored by content. Every distinct content is kept once, under its SHA-256 in
+ * {@code objects/}; the files in a user's directory under {@code users/} are hard links to these objects, so
+ * identical files uploaded by any number of users take the space of one. The user directories are keyed on
+ * whatever the caller identifies the user by: the user name finds the files again whatever session they have been
+ * uploaded in, a session token only within the session.
+ * <p>
+ * An upload is streamed to a temporary file while its SHA-256 and MD5 are computed, then linked into
+ * place, so a file is never visible half written. The fsync policy decides what survives a crash: with
+ * {@link Fsync#NONE} that is left to the OS, {@link Fsync#DATA} syncs the content before the link, and
+ * {@link Fsync#FULL} also syncs the file metadata and the directories.
+ */
+public class UploadStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadStore.class);
+
+    public enum Fsync {
+        NONE, DATA, FULL;
+
+        public static Fsync forName(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path objects;
+    private final Path users;
+    private final Path tmp;
+    private final Fsync fsync;
+    private final int bufferSize;
+
+    /**
+     * Stores share the lock, the garbage collection takes it exclusively to remove an object, so it never
+     * removes one which is about to be linked.
+     */
+    private final ReadWriteLock objectsLock = new ReentrantReadWriteLock();
+
+    public UploadStore(Path root, Fsync fsync, int bufferSize) throws IOException {
+        this.objects = Files.createDirectories(root.resolve("objects"));
+        this.users = Files.createDirectories(root.resolve("users"));
+        this.tmp = Files.createDirectories(root.resolve("tmp"));
+        this.fsync = fsync;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Stores a file in the user's directory, replacing the file at the same path if there is one.
+     *
+     * @param user     the user name, or another key of the user; the directory name is derived from it, so it may
+     *                 be any string
+     * @param dir      the directory relative to the user's directory; may be null or empty
+     * @param fileName the file name
+     * @throws IllegalArgumentException if the path would be outside the user's directory
+     */
+    public StoredFile store(String user, String dir, String fileName, InputStream input) throws IOException {
+        Path userDir = users.resolve(hex(digest("SHA-256").digest(user.getBytes(StandardCharsets.UTF_8))));
+        Path relative = relativePath(dir, fileName);
+        Path target = userDir.resolve(relative);
+
+        MessageDigest sha256 = digest("SHA-256");
+        MessageDigest md5 = digest("MD5");
+        Path temp = Files.createTempFile(tmp, "upload-", ".tmp");
+        long size = 0;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[bufferSize];
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                for (int n; (n = input.read(buffer)) >= 0; ) {
+                    sha256.update(buffer, 0, n);
+                    md5.update(buffer, 0, n);
+                    wrapped.clear().limit(n);
+                    while (wrapped.hasRemaining()) {
+                        channel.write(wrapped);
+                    }
+                    size += n;
+                }
+                if (fsync != Fsync.NONE) {
+                    channel.force(fsync == Fsync.FULL);
+                }
+            }
+            String hash = hex(sha256.digest());
+            boolean deduplicated;
+            objectsLock.readLock().lock();
+            try {
+                deduplicated = storeObject(temp, hash);
+                link(objectPath(hash), target);
+            } finally {
+                objectsLock.readLock().unlock();
+            }
+            logger.debug("stored {} ({} bytes, sha256 {}{})", target, size, hash, deduplicated ? ", deduplicated" : "");
+            return new StoredFile(relative, size, hash, hex(md5.digest()), deduplicated);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Links the temporary file into the object store, unless the content is there already. Creating the link
+     * fails if the object exists, even if it has just been stored by a concurrent upload, whereas a rename would
+     * silently replace it.
+     *
+     * @return true if the content was stored already
+     */
+    private boolean storeObject(Path temp, String hash) throws IOException {
+        Path object = objectPath(hash);
+        if (Files.exists(object)) {
+            return true;
+        }
+        Files.createDirectories(object.getParent());
+        try {
+            Files.createLink(object, temp);
+        } catch (FileAlreadyExistsException e) {
+            // stored by a concurrent upload of the same content
+            return true;
+        } catch (UnsupportedOperationException e) {
+            // without hard links the users' files are copies anyway; a plain move fails if the object exists
+            try {
+                Files.move(temp, object);
+            } catch (FileAlreadyExistsException exists) {
+                return true;
+            }
+        }
+        syncDirectory(object.getParent());
+        return false;
+    }
+
+    /**
+     * Links the target to the object, atomically replacing an existing target. Copies the object if the file
+     * system doesn't support hard links.
+     */
+    private void link(Path object, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, object);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            logger.debug("hard link failed, copying: " + e);
+            Files.copy(object, temp);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * Removes the objects which are no longer linked from any user directory. The directories are scanned
+     * without the lock, so the stores go on meanwhile; each candidate is checked again under the lock before
+     * it is removed, as it may have been linked since.
+     *
+     * @return the number of objects removed
+     */
+    public int collectGarbage() throws IOException {
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(objects)) {
+            for (Path prefix : prefixes) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(prefix)) {
+                    for (Path object : files) {
+                        if (linkCount(object) == 1) {
+                            candidates.add(object);
+                        }
+                    }
+                }
+            }
+        }
+        int removed = 0;
+        for (Path object : candidates) {
+            objectsLock.writeLock().lock();
+            try {
+                if (Files.exists(object) && linkCount(object) == 1) {
+                    Files.delete(object);
+                    removed++;
+                }
+            } finally {
+                objectsLock.writeLock().unlock();
+            }
+        }
+        return removed;
+    }
+
+    private static int linkCount(Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // without link counts, objects can't be told apart from the copies; keep them
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private void syncDirectory(Path dir) {
+        if (fsync != Fsync.FULL) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not possible on every platform (e.g. Windows)
+            logger.debug("can't sync directory " + dir + ": " + e);
+        }
+    }
+
+    private Path objectPath(String hash) {
+        return objects.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private Path relativePath(String dir, String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("No file name");
+        }
+        Path base = users.getFileSystem().getPath("");
+        Path relative = (dir == null ? base : base.resolve(dir.replaceFirst("^/+", ""))).resolve(fileName)
+                .normalize();
+        if (relative.isAbsolute() || relative.toString().isEmpty() || relative.startsWith("..")
+                || relative.getFileName().toString().startsWith(".")) {
+            throw new IllegalArgumentException("Invalid upload path: " + dir + "/" + fileName);
+        }
+        return relative;
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.admission;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.biostudies.submissiontool.metrics.MetricsRegistry;
+import uk.ac.ebi.biostudies.submissiontool.rest.data.UserSession;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private RateLimiter.Limit limit;
+
+    @Before
+    public void setUp() {
+        // 10 requests per second, up to 5 at once
+        limit = new RateLimiter.Limit("/raw", 10, 5);
+        new RateLimiter(Collections.singletonList(limit), new MetricsRegistry());
+    }
+
+    @Test
+    public void allowsTheBurstAtOnce() {
+        long now = 1000 * INTERVAL;
+        for (int i = 4; i >= 0; i--) {
+            RateLimiter.Decision decision = limit.acquire("a", now);
+            assertTrue(decision.isAllowed());
+            assertEquals(5, decision.getLimit());
+            assertEquals(i, decision.getRemaining());
+        }
+        RateLimiter.Decision rejected = limit.acquire("a", now);
+        assertFalse(rejected.isAllowed());
+        assertEquals(0, rejected.getRemaining());
+        assertEquals(1, rejected.getReset());
+    }
+
+    @Test
+    public void refillsAtTheRate() {
+        long now = 1000 * INTERVAL;
+        for (int i = 0; i < 5; i++) {
+            limit.acquire("a", now);
+        }
+        assertFalse(limit.acquire("a", now + INTERVAL / 2).isAllowed());
+        assertTrue(limit.acquire("a", now + INTERVAL).isAllowed());
+        assertFalse(limit.acquire("a", now + INTERVAL).isAllowed());
+
+        // a bucket left alone fills up to the burst, not beyond
+        long later = now + 100 * INTERVAL;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limit.acquire("a", later).isAllowed());
+        }
+        assertFalse(limit.acquire("a", later).isAllowed());
+    }
+
+    @Test
+    public void keepsABucketPerClient() {
+        long now = 1000 * INTERVAL;
+        for (int i = 0; i < 5; i++) {
+            limit.acquire("a", now);
+        }
+        assertFalse(limit.acquire("a", now).isAllowed());
+        assertTrue(limit.acquire("b", now).isAllowed());
+    }
+
+    @Test
+    public void appliesTheLongestMatchingPrefix() {
+        RateLimiter limiter = RateLimiter.create("/raw=100:200 /raw/files=0 /api=1", new MetricsRegistry());
+        assertNull(limiter.acquire("/raw/files/a.txt", "a"));
+        assertNotNull(limiter.acquire("/raw/submissions", "a"));
+        assertNull(limiter.acquire("/rawx", "a"));
+        assertTrue(limiter.acquire("/api", "a").isAllowed());
+        assertFalse(limiter.acquire("/api", "a").isAllowed());
+    }
+
+    @Test
+    public void hasNoLimitsByDefault() {
+        RateLimiter limiter = RateLimiter.create(null, new MetricsRegistry());
+        assertTrue(limiter.isEmpty());
+        assertNull(limiter.acquire("/raw", "a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedLimits() {
+        RateLimiter.validate("/raw=fast");
+    }
+
+    @Test
+    public void keysClientsByUserOrAddress() {
+        assertEquals("a:10.0.0.1", RateLimiter.clientKey(null, "10.0.0.1"));
+        assertEquals("s:token", RateLimiter.clientKey(new UserSession("token"), "10.0.0.1"));
+        assertEquals("u:alice", RateLimiter.clientKey(
+                new UserSession("token", "alice", Collections.singleton(UserSession.AUTHENTICATED)), "10.0.0.1"));
+    }
+
+    @Test
+    public void keysTokensByHash() {
+        String key = RateLimiter.tokenKey("token");
+        assertTrue(key.startsWith("t:"));
+        assertFalse(key.contains("token"));
+        assertEquals(key, RateLimiter.tokenKey("token"));
+        assertNotEquals(key, RateLimiter.tokenKey("other"));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+
+    private final BufferPool pool = new BufferPool(16 * 1024, 1);
+
+    @Test
+    public void flushesBodyWithoutLengthByThreshold() throws Exception {
+        byte[] body = body(256 * 1024);
+        FlushCounter output = new FlushCounter();
+
+        assertEquals(body.length, pool.copy(new TrickleInput(body, 100), output, -1));
+        assertArrayEquals(body, output.toByteArray());
+        // one flush per 32 KB and the final one, not one per short read (allowing for a slow run)
+        assertTrue("flushes: " + output.flushes, output.flushes >= 8 && output.flushes < 100);
+    }
+
+    @Test
+    public void flushesBodyWithLengthOnceAtTheEnd() throws Exception {
+        byte[] body = body(256 * 1024);
+        FlushCounter output = new FlushCounter();
+
+        assertEquals(body.length, pool.copy(new TrickleInput(body, 100), output, body.length));
+        assertArrayEquals(body, output.toByteArray());
+        assertEquals(1, output.flushes);
+    }
+
+    private static byte[] body(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    /**
+     * Returns at most a few bytes per read, like a backend producing its response slowly.
+     */
+    private static class TrickleInput extends InputStream {
+        private final ByteArrayInputStream input;
+        private final int maxRead;
+
+        TrickleInput(byte[] body, int maxRead) {
+            this.input = new ByteArrayInputStream(body);
+            this.maxRead = maxRead;
+        }
+
+        @Override
+        public int read() {
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return input.read(b, off, Math.min(len, maxRead));
+        }
+    }
+
+    private static class FlushCounter extends ByteArrayOutputStream {
+        int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_TIME = 1000;
+
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        // window 10, at least 4 calls, opens at 50% failed or 100% slow (1s), 2 probes
+        breaker = new CircuitBreaker("test", 10, 4, 50, 1000, 100, OPEN_TIME, 2);
+    }
+
+    private void open(long now) {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire(now));
+            breaker.record(true, 10, now);
+        }
+    }
+
+    @Test
+    public void staysClosedBelowTheMinimumCalls() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire(0));
+            breaker.record(true, 10, 0);
+        }
+        assertTrue(breaker.allows(0));
+        assertEquals(0, breaker.getRetryAfter(0));
+    }
+
+    @Test
+    public void opensOnTheFailureRate() {
+        breaker.record(false, 10, 0);
+        breaker.record(false, 10, 0);
+        breaker.record(true, 10, 0);
+        assertTrue(breaker.allows(0));
+        breaker.record(true, 10, 0);
+
+        assertFalse(breaker.allows(0));
+        assertFalse(breaker.tryAcquire(0));
+        assertEquals(OPEN_TIME - 400, breaker.getRetryAfter(400));
+    }
+
+    @Test
+    public void opensOnTheSlowCallRate() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(false, 1000, 0);
+        }
+        assertFalse(breaker.tryAcquire(0));
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbes() {
+        open(0);
+        assertTrue(breaker.allows(OPEN_TIME));
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+        assertFalse(breaker.tryAcquire(OPEN_TIME));
+
+        breaker.record(false, 10, OPEN_TIME);
+        assertFalse(breaker.tryAcquire(OPEN_TIME));
+        breaker.record(false, 10, OPEN_TIME);
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+
+        // the window starts afresh once closed
+        breaker.record(true, 10, OPEN_TIME);
+        assertTrue(breaker.allows(OPEN_TIME));
+    }
+
+    @Test
+    public void opensAgainOnAFailedProbe() {
+        open(0);
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+        breaker.record(true, 10, OPEN_TIME + 10);
+        assertFalse(breaker.tryAcquire(OPEN_TIME + 10));
+        assertEquals(OPEN_TIME, breaker.getRetryAfter(OPEN_TIME + 10));
+    }
+
+    @Test
+    public void opensAgainWhenProbesAreLost() {
+        open(0);
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+        assertTrue(breaker.tryAcquire(OPEN_TIME));
+        assertFalse(breaker.allows(2 * OPEN_TIME - 1));
+
+        assertFalse(breaker.allows(2 * OPEN_TIME));
+        assertEquals(OPEN_TIME, breaker.getRetryAfter(2 * OPEN_TIME));
+        assertTrue(breaker.tryAcquire(3 * OPEN_TIME));
+    }
+}
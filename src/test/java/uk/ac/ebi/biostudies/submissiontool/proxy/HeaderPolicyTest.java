@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HeaderPolicyTest {
+
+    private final HeaderPolicy policy = new HeaderPolicy(Arrays.asList("JSESSIONID", "proxy-pref"));
+
+    /**
+     * @param headers names and values, alternately
+     */
+    private static HttpServletRequest request(String... headers) {
+        Map<String, List<String>> values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            if (!values.containsKey(headers[i])) {
+                names.add(headers[i]);
+            }
+            values.computeIfAbsent(headers[i], n -> new ArrayList<>()).add(headers[i + 1]);
+        }
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getHeaderNames()).thenAnswer(invocation -> Collections.enumeration(names));
+        when(req.getHeader(anyString())).thenAnswer(invocation -> {
+            List<String> list = values.get((String) invocation.getArguments()[0]);
+            return list == null ? null : list.get(0);
+        });
+        when(req.getHeaders(anyString())).thenAnswer(invocation -> Collections.enumeration(
+                values.getOrDefault((String) invocation.getArguments()[0], Collections.emptyList())));
+        return req;
+    }
+
+    private HttpGet forward(HttpServletRequest req) {
+        HttpGet get = new HttpGet("http://backend/");
+        policy.forwardRequestHeaders(req, get);
+        return get;
+    }
+
+    @Test
+    public void dropsHopByHopRequestHeaders() {
+        HttpGet get = forward(request(
+                "Connection", "keep-alive, X-Private",
+                "Keep-Alive", "timeout=5",
+                "Transfer-Encoding", "chunked",
+                "TE", "trailers",
+                "Upgrade", "h2c",
+                "Host", "www.ebi.ac.uk",
+                "Content-Length", "10",
+                "X-Private", "secret",
+                "Accept", "application/json",
+                "X-Session-Token", "token"));
+
+        assertEquals(2, get.getAllHeaders().length);
+        assertEquals("application/json", get.getFirstHeader("Accept").getValue());
+        assertEquals("token", get.getFirstHeader("X-Session-Token").getValue());
+    }
+
+    @Test
+    public void keepsAllTheValuesOfAHeader() {
+        HttpGet get = forward(request("Accept-Language", "en", "accept-language", "fr"));
+
+        Header[] values = get.getHeaders("Accept-Language");
+        assertEquals(2, values.length);
+        assertEquals("en", values[0].getValue());
+        assertEquals("fr", values[1].getValue());
+    }
+
+    @Test
+    public void stripsTheProxyCookies() {
+        assertEquals("_ga=GA1.3; BIOSTD-SESS=abc", forward(request(
+                "Cookie", "JSESSIONID=9A8B; _ga=GA1.3; proxy-pref=1; BIOSTD-SESS=abc"))
+                .getFirstHeader("Cookie").getValue());
+        assertEquals("_ga=GA1.3", forward(request("Cookie", "_ga=GA1.3;jsessionid=9A8B"))
+                .getFirstHeader("Cookie").getValue());
+        assertEquals("a=1; b=2", forward(request("Cookie", "a=1; b=2"))
+                .getFirstHeader("Cookie").getValue());
+    }
+
+    @Test
+    public void dropsACookieHeaderLeftEmpty() {
+        assertNull(forward(request("Cookie", "JSESSIONID=9A8B; proxy-pref=1")).getFirstHeader("Cookie"));
+    }
+
+    @Test
+    public void dropsHopByHopResponseHeaders() {
+        Header[] headers = {
+                new BasicHeader("Content-Type", "application/json"),
+                new BasicHeader("Connection", "keep-alive, X-Backend-Node"),
+                new BasicHeader("Keep-Alive", "timeout=5"),
+                new BasicHeader("Transfer-Encoding", "chunked"),
+                new BasicHeader("X-Backend-Node", "node1"),
+                new BasicHeader("Set-Cookie", "a=1"),
+                new BasicHeader("Set-Cookie", "b=2")
+        };
+
+        Header[] filtered = HeaderPolicy.filterResponseHeaders(headers);
+        assertArrayEquals(new Header[]{headers[0], headers[5], headers[6]}, filtered);
+    }
+
+    @Test
+    public void returnsTheSameResponseHeadersIfNoneIsDropped() {
+        Header[] headers = {new BasicHeader("Content-Type", "text/plain"), new BasicHeader("ETag", "\"1\"")};
+        assertSame(headers, HeaderPolicy.filterResponseHeaders(headers));
+    }
+
+    @Test
+    public void matchesHeaderNamesCaseInsensitively() {
+        HttpGet get = forward(request("CONNECTION", "close", "keep-alive", "5", "accept", "*/*"));
+        assertFalse(get.containsHeader("Connection"));
+        assertFalse(get.containsHeader("Keep-Alive"));
+        assertTrue(get.containsHeader("Accept"));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseCacheTest {
+
+    /**
+     * @param headers names and values, alternately
+     */
+    private static HttpResponse response(String... headers) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    @Test
+    public void takesTheMaxAge() {
+        assertEquals(60000, ResponseCache.maxAge(response("Cache-Control", "public, max-age=60")));
+        assertEquals(60000, ResponseCache.maxAge(response("Cache-Control", "max-age=60", "Vary", "Accept")));
+    }
+
+    @Test
+    public void prefersTheSharedMaxAge() {
+        assertEquals(10000, ResponseCache.maxAge(response("Cache-Control", "max-age=60, s-maxage=10")));
+        assertEquals(10000, ResponseCache.maxAge(response("Cache-Control", "s-maxage=10, max-age=60")));
+        assertEquals(10000, ResponseCache.maxAge(
+                response("Cache-Control", "s-maxage=10", "Cache-Control", "max-age=60")));
+    }
+
+    @Test
+    public void isZeroWithoutAnExplicitLifetime() {
+        assertEquals(0, ResponseCache.maxAge(response()));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "public")));
+        assertEquals(0, ResponseCache.maxAge(response("Expires", "Thu, 01 Dec 2099 16:00:00 GMT")));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "max-age=soon")));
+    }
+
+    @Test
+    public void isZeroForResponsesNotToBeShared() {
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "max-age=60, no-store")));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "no-cache, max-age=60")));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "private, max-age=60")));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "max-age=60", "Cache-Control", "Private")));
+        assertEquals(0, ResponseCache.maxAge(response("Cache-Control", "max-age=60", "Set-Cookie", "a=1")));
+    }
+}
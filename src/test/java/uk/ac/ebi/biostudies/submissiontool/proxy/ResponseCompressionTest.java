@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressionTest {
+
+    @Test
+    public void acceptsGzip() {
+        assertTrue(ResponseCompression.acceptsGzip("gzip"));
+        assertTrue(ResponseCompression.acceptsGzip("gzip, deflate, br"));
+        assertTrue(ResponseCompression.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(ResponseCompression.acceptsGzip("gzip;q=abc"));
+        assertTrue(ResponseCompression.acceptsGzip("*"));
+        assertTrue(ResponseCompression.acceptsGzip("br, *;q=0.1"));
+    }
+
+    @Test
+    public void refusesGzip() {
+        assertFalse(ResponseCompression.acceptsGzip(null));
+        assertFalse(ResponseCompression.acceptsGzip(""));
+        assertFalse(ResponseCompression.acceptsGzip("identity"));
+        assertFalse(ResponseCompression.acceptsGzip("deflate, br"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip; q=0.0, deflate"));
+        assertFalse(ResponseCompression.acceptsGzip("*;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("x-gzip"));
+    }
+
+    @Test
+    public void prefersAnExplicitGzipToTheWildcard() {
+        assertFalse(ResponseCompression.acceptsGzip("*, gzip;q=0"));
+        assertFalse(ResponseCompression.acceptsGzip("gzip;q=0, *"));
+        assertTrue(ResponseCompression.acceptsGzip("*;q=0, gzip"));
+        assertTrue(ResponseCompression.acceptsGzip("gzip;q=0.2, *;q=0"));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.proxy;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteTableTest {
+
+    private static Route route(String prefix) {
+        return new Route(prefix, null, null, null, null);
+    }
+
+    @Test
+    public void matchesTheLongestPrefixOnASegmentBoundary() {
+        Route files = route("/files");
+        Route upload = route("/files/upload");
+        Route root = route("/");
+        RouteTable table = new RouteTable(Arrays.asList(files, upload, root));
+
+        assertSame(files, table.match("/files"));
+        assertSame(files, table.match("/files/a.txt"));
+        assertSame(upload, table.match("/files/upload"));
+        assertSame(upload, table.match("/files/upload/x"));
+        assertSame(files, table.match("/files/uploads"));
+        assertSame(root, table.match("/filesx"));
+        assertSame(root, table.match("/submissions"));
+        assertSame(root, table.match(""));
+    }
+
+    @Test
+    public void matchesNothingWithoutARootRoute() {
+        Route files = route("/files");
+        RouteTable table = new RouteTable(Collections.singletonList(files));
+
+        assertSame(files, table.match("/files/"));
+        assertNull(table.match("/file"));
+        assertNull(table.match("/submissions"));
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResumableUploadTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("upload-", ".tmp");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private ResumableUpload upload(long length) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new ResumableUpload("id", "token", "user", length, Collections.emptyMap(), file, channel);
+    }
+
+    private static long write(ResumableUpload upload, long offset, String chunk) throws IOException {
+        return upload.write(offset, new ByteArrayInputStream(chunk.getBytes(StandardCharsets.US_ASCII)), new byte[3]);
+    }
+
+    private String content() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void advancesTheOffsetWithContiguousChunks() throws IOException {
+        ResumableUpload upload = upload(10);
+        assertEquals(4, write(upload, 0, "abcd"));
+        assertEquals(4, upload.getOffset());
+        assertEquals(6, write(upload, 4, "efghij"));
+        assertEquals(10, upload.getOffset());
+        assertEquals("abcdefghij", content());
+    }
+
+    @Test
+    public void keepsTheOffsetAtAGapUntilItIsFilled() throws IOException {
+        ResumableUpload upload = upload(10);
+        write(upload, 6, "ghij");
+        assertEquals(0, upload.getOffset());
+        write(upload, 2, "cd");
+        assertEquals(0, upload.getOffset());
+        write(upload, 0, "ab");
+        assertEquals(4, upload.getOffset());
+        write(upload, 4, "ef");
+        assertEquals(10, upload.getOffset());
+        assertEquals("abcdefghij", content());
+    }
+
+    @Test
+    public void mergesOverlappingChunks() throws IOException {
+        ResumableUpload upload = upload(10);
+        write(upload, 0, "abcde");
+        write(upload, 3, "defgh");
+        assertEquals(8, upload.getOffset());
+        write(upload, 1, "bc");
+        assertEquals(8, upload.getOffset());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeOffset() throws IOException {
+        write(upload(10), -1, "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnOffsetPastTheEnd() throws IOException {
+        write(upload(10), 11, "a");
+    }
+
+    @Test
+    public void rejectsAChunkPastTheEndButKeepsWhatFits() throws IOException {
+        ResumableUpload upload = upload(10);
+        write(upload, 0, "abcdefgh");
+        try {
+            write(upload, 8, "ijkl");
+            fail("chunk past the end accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(10, upload.getOffset());
+        assertEquals("abcdefghij", content());
+    }
+
+    @Test
+    public void keepsThePartOfABrokenChunk() throws IOException {
+        ResumableUpload upload = upload(10);
+        InputStream broken = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read == 4) {
+                    throw new IOException("connection reset");
+                }
+                return 'a' + read++;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                b[off] = (byte) read();
+                return 1;
+            }
+        };
+        try {
+            upload.write(0, broken, new byte[8]);
+            fail("broken chunk accepted");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(4, upload.getOffset());
+        assertEquals(6, write(upload, 4, "efghij"));
+        assertEquals("abcdefghij", content());
+    }
+
+    @Test
+    public void writesChunksInParallel() throws Exception {
+        int chunks = 8;
+        int chunkSize = 64 * 1024 + 17;
+        byte[] data = new byte[chunks * chunkSize];
+        new Random(42).nextBytes(data);
+        ResumableUpload upload = upload(data.length);
+
+        ExecutorService executor = Executors.newFixedThreadPool(chunks);
+        try {
+            List<Future<Long>> written = new ArrayList<>();
+            // in reverse order, so the offset only moves when the first chunk is in
+            for (int i = chunks - 1; i >= 0; i--) {
+                int offset = i * chunkSize;
+                written.add(executor.submit(() -> upload.write(offset,
+                        new ByteArrayInputStream(data, offset, chunkSize), new byte[4096])));
+            }
+            for (Future<Long> chunk : written) {
+                assertEquals(chunkSize, (long) chunk.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(data.length, upload.getOffset());
+        assertArrayEquals(data, Files.readAllBytes(file));
+    }
+
+    @Test
+    public void startsForwardingOnceWhenComplete() throws IOException {
+        ResumableUpload upload = upload(4);
+        write(upload, 2, "cd");
+        assertFalse(upload.startForwarding());
+        write(upload, 0, "ab");
+        assertTrue(upload.startForwarding());
+        assertFalse(upload.startForwarding());
+        assertEquals(ResumableUpload.Status.FORWARDING, upload.getStatus());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesChunksOnceForwarding() throws IOException {
+        ResumableUpload upload = upload(2);
+        write(upload, 0, "ab");
+        upload.startForwarding();
+        write(upload, 0, "ab");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesChunksOnceClosed() throws IOException {
+        ResumableUpload upload = upload(10);
+        upload.close(false);
+        write(upload, 0, "ab");
+    }
+
+    @Test
+    public void deletesTheFileOnClose() throws IOException {
+        ResumableUpload upload = upload(10);
+        write(upload, 0, "ab");
+        upload.close(true);
+        assertFalse(Files.exists(file));
+    }
+}
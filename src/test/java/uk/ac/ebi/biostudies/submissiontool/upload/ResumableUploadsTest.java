@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.biostudies.submissiontool.proxy.BufferPool;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ResumableUploadsTest {
+
+    private Path dir;
+    private ResumableUploads uploads;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("uploads-");
+        // at most 2 unfinished uploads of at most 100 bytes per user; nothing is forwarded
+        uploads = new ResumableUploads(dir, 1000, 2, 100, 60000, null, null, null, new BufferPool(1024, 1));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        uploads.close();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private ResumableUpload create(String owner, String user, long length) throws Exception {
+        return uploads.create(owner, user, length, Collections.emptyMap());
+    }
+
+    private void assertOverQuota(String owner, String user, long length) throws Exception {
+        try {
+            create(owner, user, length);
+            fail("quota not enforced");
+        } catch (ResumableUploads.QuotaExceededException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void limitsTheNumberOfUnfinishedUploadsPerUser() throws Exception {
+        create("t1", "alice", 10);
+        create("t2", "alice", 10);
+        assertOverQuota("t3", "alice", 10);
+        create("t4", "bob", 10);
+    }
+
+    @Test
+    public void limitsTheTotalLengthOfUnfinishedUploadsPerUser() throws Exception {
+        create("t1", "alice", 60);
+        assertOverQuota("t1", "alice", 41);
+        create("t1", "alice", 40);
+    }
+
+    @Test
+    public void freesTheQuotaOfDeletedUploads() throws Exception {
+        ResumableUpload first = create("t1", "alice", 10);
+        create("t1", "alice", 10);
+        uploads.delete(first);
+        create("t1", "alice", 10);
+    }
+
+    @Test
+    public void countsUploadsOfUnknownUsersAgainstTheToken() throws Exception {
+        create("t1", null, 10);
+        create("t1", null, 10);
+        assertOverQuota("t1", null, 10);
+        create("t2", null, 10);
+    }
+
+    @Test
+    public void findsTheUploadsOfAUserWithANewToken() throws Exception {
+        ResumableUpload upload = create("t1", "alice", 10);
+        assertSame(upload, uploads.get(upload.getId(), "alice", "t1"));
+        assertSame(upload, uploads.get(upload.getId(), "alice", "t2"));
+        assertEquals("t2", upload.getOwner());
+        assertNull(uploads.get(upload.getId(), "bob", "t1"));
+        assertNull(uploads.get(upload.getId(), null, "t2"));
+    }
+
+    @Test
+    public void findsTheUploadsOfAnUnknownUserWithTheSameTokenOnly() throws Exception {
+        ResumableUpload upload = create("t1", null, 10);
+        assertSame(upload, uploads.get(upload.getId(), null, "t1"));
+        assertNull(uploads.get(upload.getId(), null, "t2"));
+        assertNull(uploads.get("unknown", null, "t1"));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017 European Molecular Biology Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or impl
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package uk.ac.ebi.biostudies.submissiontool.upload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadStoreTest {
+
+    private Path root;
+    private UploadStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("store-");
+        store = new UploadStore(root, UploadStore.Fsync.NONE, 4096);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private StoredFile store(String user, String fileName, String content) throws IOException {
+        return store.store(user, "dir", fileName,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path userFile(String user, String fileName) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(user.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b));
+        }
+        return root.resolve("users").resolve(hex.toString()).resolve("dir").resolve(fileName);
+    }
+
+    private Path object(String sha256) {
+        return root.resolve("objects").resolve(sha256.substring(0, 2)).resolve(sha256.substring(2));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void storesTheSameContentOnce() throws Exception {
+        StoredFile first = store("alice", "a.txt", "same content");
+        StoredFile second = store("bob", "b.txt", "same content");
+
+        assertFalse(first.isDeduplicated());
+        assertTrue(second.isDeduplicated());
+        assertEquals(first.getSha256(), second.getSha256());
+        assertEquals(first.getMd5(), second.getMd5());
+        assertEquals(12, second.getSize());
+        assertEquals("same content", read(userFile("alice", "a.txt")));
+        assertEquals("same content", read(userFile("bob", "b.txt")));
+        assertTrue(Files.isSameFile(object(first.getSha256()), userFile("alice", "a.txt")));
+        assertTrue(Files.isSameFile(object(first.getSha256()), userFile("bob", "b.txt")));
+        try (Stream<Path> tmp = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    public void keepsTheObjectWhileALinkIsLeft() throws Exception {
+        StoredFile file = store("alice", "a.txt", "shared");
+        store("bob", "b.txt", "shared");
+
+        Files.delete(userFile("alice", "a.txt"));
+        assertEquals(0, store.collectGarbage());
+        assertTrue(Files.exists(object(file.getSha256())));
+        assertEquals("shared", read(userFile("bob", "b.txt")));
+
+        Files.delete(userFile("bob", "b.txt"));
+        assertEquals(1, store.collectGarbage());
+        assertFalse(Files.exists(object(file.getSha256())));
+    }
+
+    @Test
+    public void replacingAFileUnlinksTheOldContent() throws Exception {
+        StoredFile old = store("alice", "a.txt", "old");
+        store("alice", "a.txt", "new");
+
+        assertEquals("new", read(userFile("alice", "a.txt")));
+        assertEquals(1, store.collectGarbage());
+        assertFalse(Files.exists(object(old.getSha256())));
+    }
+
+    @Test
+    public void neverRemovesAnObjectBeingLinked() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 200; i++) {
+                String content = "content " + i;
+                StoredFile file = store("alice", "a.txt", content);
+                // the object is garbage now, until bob stores the same content
+                Files.delete(userFile("alice", "a.txt"));
+
+                Future<StoredFile> stored = executor.submit(() -> store("bob", "b.txt", content));
+                Future<Integer> gc = executor.submit(store::collectGarbage);
+                stored.get();
+                gc.get();
+
+                assertEquals(content, read(userFile("bob", "b.txt")));
+                // whichever came first, bob's file is linked to the object, which is there
+                assertTrue(Files.isSameFile(object(file.getSha256()), userFile("bob", "b.txt")));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}